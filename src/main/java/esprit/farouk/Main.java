@@ -1,5 +1,6 @@
 package esprit.farouk;
 
+import esprit.farouk.services.FaceTemplateService;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -26,6 +27,11 @@ public class Main extends Application {
         primaryStage.centerOnScreen();
         primaryStage.show();
 
+        // One-time data migration, kept off the FX thread
+        Thread migration = new Thread(FaceTemplateService::migrateLegacyEmbeddings, "face-template-migration");
+        migration.setDaemon(true);
+        migration.start();
+
         System.out.println("========================================");
         System.out.println("  AgriCloud User Management System");
         System.out.println("========================================");
@@ -0,0 +1,82 @@
+package esprit.farouk.config;
+
+/**
+ * Matching metric for L2-normalized face embeddings.
+ *
+ * Both metrics rank candidates by dot product (for unit vectors the largest dot
+ * product is also the smallest Euclidean distance); they only differ in how the
+ * best score is reported and compared against the threshold.
+ */
+public enum FaceMetric {
+    /** Cosine similarity in [-1, 1], higher = more similar. */
+    COSINE(0.363, -1.0, 1.0),
+    /** Euclidean distance between unit vectors in [0, 2], lower = more similar. */
+    EUCLIDEAN(1.128, 0.0, 2.0);
+
+    private final double defaultThreshold; // SFace reference thresholds (OpenCV zoo)
+    private final double minThreshold;
+    private final double maxThreshold;
+
+    FaceMetric(double defaultThreshold, double minThreshold, double maxThreshold) {
+        this.defaultThreshold = defaultThreshold;
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+    }
+
+    public double getDefaultThreshold() {
+        return defaultThreshold;
+    }
+
+    /**
+     * Converts the dot product of two unit vectors into this metric's score.
+     */
+    public double fromDot(double dot) {
+        if (this == COSINE) {
+            return dot;
+        }
+        return Math.sqrt(Math.max(0.0, 2.0 - 2.0 * dot));
+    }
+
+    /**
+     * Converts this metric's score back into the equivalent dot product of two unit vectors.
+     */
+    public double toDot(double score) {
+        if (this == COSINE) {
+            return score;
+        }
+        return 1.0 - (score * score) / 2.0;
+    }
+
+    /**
+     * Checks whether a score passes the given threshold.
+     */
+    public boolean accepts(double score, double threshold) {
+        return this == COSINE ? score >= threshold : score <= threshold;
+    }
+
+    /**
+     * Validates a threshold for this metric.
+     *
+     * @throws IllegalArgumentException if the threshold is outside the metric's range
+     */
+    public void validateThreshold(double threshold) {
+        if (Double.isNaN(threshold) || threshold < minThreshold || threshold > maxThreshold) {
+            throw new IllegalArgumentException("Threshold for " + name().toLowerCase() + " must be between "
+                    + minThreshold + " and " + maxThreshold + ", got " + threshold);
+        }
+    }
+
+    /**
+     * Parses a metric name (case-insensitive).
+     *
+     * @throws IllegalArgumentException if the name is not a known metric
+     */
+    public static FaceMetric parse(String name) {
+        for (FaceMetric metric : values()) {
+            if (metric.name().equalsIgnoreCase(name.trim())) {
+                return metric;
+            }
+        }
+        throw new IllegalArgumentException("Unknown face metric: " + name + " (expected cosine or euclidean)");
+    }
+}
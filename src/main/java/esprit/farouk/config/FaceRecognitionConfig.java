@@ -0,0 +1,208 @@
+package esprit.farouk.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Face recognition settings.
+ *
+ * Defaults come from /config/face-recognition.properties on the classpath and
+ * can be overridden per machine with JVM system properties of the same name.
+ * Invalid values are reported and replaced by the built-in default so a typo
+ * never disables face login.
+ */
+public class FaceRecognitionConfig {
+    private static final String RESOURCE = "/config/face-recognition.properties";
+
+    public static final String MATCH_METRIC = "face.match.metric";
+    public static final String MATCH_THRESHOLD = "face.match.threshold";
+    public static final String MATCH_CENTROIDS = "face.match.centroids";
+    public static final String MATCH_CENTROID_CANDIDATES = "face.match.centroid_candidates";
+
+    public static final String ENROLL_DUPLICATES = "face.enroll.duplicates";
+
+    public static final String STORE_ENABLED = "face.store.enabled";
+    public static final String STORE_PATH = "face.store.path";
+
+    public static final String CAMERA_SOURCE = "face.camera.source";
+    public static final String CAMERA_REPLAY_SPEED = "face.camera.replay_speed";
+    public static final String CAMERA_REPLAY_LOOP = "face.camera.replay_loop";
+    public static final String CAMERA_REPLAY_FPS = "face.camera.replay_fps";
+    public static final String CAMERA_WIDTH = "face.camera.width";
+    public static final String CAMERA_HEIGHT = "face.camera.height";
+    public static final String CAMERA_FPS = "face.camera.fps";
+    public static final String CAMERA_PIXEL_FORMAT = "face.camera.pixel_format";
+    public static final String CAMERA_IDLE_FPS = "face.camera.idle_fps";
+    public static final String CAMERA_MAX_LOAD = "face.camera.max_load";
+
+    public static final String DNN_BACKEND = "face.dnn.backend";
+    public static final String DNN_TARGET = "face.dnn.target";
+    public static final String DNN_THREADS = "face.dnn.threads";
+
+    public static final String DETECT_WIDTH = "face.detect.width";
+    public static final String DETECT_SCORE_THRESHOLD = "face.detect.score_threshold";
+    public static final String DETECT_NMS_THRESHOLD = "face.detect.nms_threshold";
+    public static final String DETECT_TOP_K = "face.detect.top_k";
+    public static final String DETECT_TRACKING = "face.detect.tracking";
+    public static final String DETECT_REDETECT_INTERVAL = "face.detect.redetect_interval";
+
+    public static final String BESTSHOT_FRAMES = "face.bestshot.frames";
+    public static final String BESTSHOT_SHOTS = "face.bestshot.shots";
+    public static final String BESTSHOT_MIN_QUALITY = "face.bestshot.min_quality";
+
+    public static final String PASSIVE_ENABLED = "face.passive.enabled";
+    public static final String PASSIVE_DETECT_EVERY = "face.passive.detect_every";
+    public static final String PASSIVE_STABLE_MS = "face.passive.stable_ms";
+    public static final String PASSIVE_MIN_QUALITY = "face.passive.min_quality";
+    public static final String PASSIVE_CPU_BUDGET = "face.passive.cpu_budget";
+    public static final String PASSIVE_COOLDOWN_MS = "face.passive.cooldown_ms";
+
+    public static final String KIOSK_DETECT_WIDTH = "face.kiosk.detect_width";
+    public static final String KIOSK_REPEAT_MINUTES = "face.kiosk.repeat_minutes";
+
+    public static final String SERVER_PORT = "face.server.port";
+    public static final String SERVER_WORKERS = "face.server.workers";
+    public static final String SERVER_DETECT_WIDTH = "face.server.detect_width";
+    public static final String SERVER_MAX_BATCH = "face.server.max_batch";
+    public static final String SERVER_BATCH_WINDOW_MS = "face.server.batch_window_ms";
+    public static final String SERVER_QUEUE_CAPACITY = "face.server.queue_capacity";
+    public static final String SERVER_REQUEST_TIMEOUT_MS = "face.server.request_timeout_ms";
+    public static final String SERVER_SYNC_SECONDS = "face.server.sync_seconds";
+
+    public static final String QUANTIZATION = "face.quantization";
+
+    public static final String SEARCH_PARALLEL_MIN_SIZE = "face.search.parallel_min_size";
+    public static final String SEARCH_PARALLELISM = "face.search.parallelism";
+
+    public static final String INDEX_TYPE = "face.index.type";
+    public static final String INDEX_EXACT_MAX_SIZE = "face.index.exact_max_size";
+    public static final String INDEX_RERANK_SIZE = "face.index.rerank_size";
+    public static final String HNSW_M = "face.index.hnsw.m";
+    public static final String HNSW_EF_CONSTRUCTION = "face.index.hnsw.ef_construction";
+    public static final String HNSW_EF_SEARCH = "face.index.hnsw.ef_search";
+
+    private static final Properties properties = loadProperties();
+
+    private static FaceMetric metric;
+    private static double threshold;
+
+    static {
+        metric = FaceMetric.COSINE;
+        try {
+            metric = FaceMetric.parse(getString(MATCH_METRIC, "cosine"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ " + e.getMessage() + ", using cosine");
+        }
+        threshold = getDouble(MATCH_THRESHOLD, metric.getDefaultThreshold());
+        try {
+            metric.validateThreshold(threshold);
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ " + e.getMessage() + ", using " + metric.getDefaultThreshold());
+            threshold = metric.getDefaultThreshold();
+        }
+    }
+
+    public static synchronized FaceMetric getMetric() {
+        return metric;
+    }
+
+    public static synchronized double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Changes the matching metric and threshold at runtime.
+     *
+     * @throws IllegalArgumentException if the threshold is invalid for the metric
+     */
+    public static synchronized void setMatching(FaceMetric newMetric, double newThreshold) {
+        if (newMetric == null) {
+            throw new IllegalArgumentException("Face metric is required");
+        }
+        newMetric.validateThreshold(newThreshold);
+        metric = newMetric;
+        threshold = newThreshold;
+    }
+
+    // ============================================================
+    // Property helpers
+    // ============================================================
+
+    /**
+     * Gets a setting, preferring a JVM system property over the properties file.
+     * Blank values count as unset.
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key, properties.getProperty(key));
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Gets a numeric setting, falling back to the default if it is missing or malformed.
+     */
+    public static double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("✗ Invalid number for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets a setting that must be one of the allowed values (case-insensitive),
+     * falling back to the default otherwise. Returned in lower case.
+     */
+    public static String getChoice(String key, String defaultValue, String... allowed) {
+        String value = getString(key, defaultValue).toLowerCase();
+        for (String option : allowed) {
+            if (option.equals(value)) {
+                return value;
+            }
+        }
+        System.err.println("✗ " + key + " must be one of " + String.join(", ", allowed) + ", got " + value + ", using " + defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * Gets an integer setting, falling back to the default if it is missing,
+     * malformed or outside [min, max].
+     */
+    public static int getInt(String key, int defaultValue, int min, int max) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < min || parsed > max) {
+                System.err.println("✗ " + key + " must be between " + min + " and " + max + ", got " + parsed + ", using " + defaultValue);
+                return defaultValue;
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            System.err.println("✗ Invalid number for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static Properties loadProperties() {
+        Properties props = new Properties();
+        try (InputStream in = FaceRecognitionConfig.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                props.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Failed to read " + RESOURCE + ": " + e.getMessage());
+        }
+        return props;
+    }
+}
@@ -0,0 +1,154 @@
+package esprit.farouk.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.bytedeco.opencv.global.opencv_dnn.*;
+
+/**
+ * How the face models run: OpenCV DNN backend and target device, OpenCV
+ * worker threads, detector input width and detector thresholds.
+ *
+ * fromConfig() reads the face.dnn.* and face.detect.* settings; the
+ * inference benchmark builds its own variants to compare them.
+ */
+public class InferenceSettings {
+    private static final Map<String, Integer> BACKENDS = new LinkedHashMap<>();
+    private static final Map<String, Integer> TARGETS = new LinkedHashMap<>();
+
+    static {
+        BACKENDS.put("default", DNN_BACKEND_DEFAULT);
+        BACKENDS.put("opencv", DNN_BACKEND_OPENCV);
+        BACKENDS.put("openvino", DNN_BACKEND_INFERENCE_ENGINE);
+        BACKENDS.put("cuda", DNN_BACKEND_CUDA);
+        BACKENDS.put("vulkan", DNN_BACKEND_VKCOM);
+
+        TARGETS.put("cpu", DNN_TARGET_CPU);
+        TARGETS.put("opencl", DNN_TARGET_OPENCL);
+        TARGETS.put("opencl_fp16", DNN_TARGET_OPENCL_FP16);
+        TARGETS.put("cuda", DNN_TARGET_CUDA);
+        TARGETS.put("cuda_fp16", DNN_TARGET_CUDA_FP16);
+        TARGETS.put("vulkan", DNN_TARGET_VULKAN);
+    }
+
+    private final String backend;
+    private final String target;
+    private final int threads;
+    private final int detectWidth;
+    private final float scoreThreshold;
+    private final float nmsThreshold;
+    private final int topK;
+
+    /**
+     * @param backend Backend name (see backendNames())
+     * @param target Target name (see targetNames())
+     * @param threads OpenCV worker threads, 0 = OpenCV's default
+     * @param detectWidth Detector input width, 0 = full frame
+     * @param scoreThreshold Minimum detector confidence (0-1)
+     * @param nmsThreshold Overlap above which duplicate boxes are suppressed (0-1)
+     * @param topK Boxes kept before non-maximum suppression
+     * @throws IllegalArgumentException if a name or value is invalid
+     */
+    public InferenceSettings(String backend, String target, int threads, int detectWidth,
+                             float scoreThreshold, float nmsThreshold, int topK) {
+        this.backend = backend.toLowerCase();
+        this.target = target.toLowerCase();
+        if (!BACKENDS.containsKey(this.backend)) {
+            throw new IllegalArgumentException("Unknown DNN backend: " + backend + " (expected " + String.join(", ", BACKENDS.keySet()) + ")");
+        }
+        if (!TARGETS.containsKey(this.target)) {
+            throw new IllegalArgumentException("Unknown DNN target: " + target + " (expected " + String.join(", ", TARGETS.keySet()) + ")");
+        }
+        if (threads < 0 || detectWidth < 0 || topK < 1) {
+            throw new IllegalArgumentException("Threads and detect width must be >= 0 and top K >= 1");
+        }
+        if (!(scoreThreshold >= 0 && scoreThreshold <= 1) || !(nmsThreshold >= 0 && nmsThreshold <= 1)) {
+            throw new IllegalArgumentException("Detector thresholds must be between 0 and 1");
+        }
+        this.threads = threads;
+        this.detectWidth = detectWidth;
+        this.scoreThreshold = scoreThreshold;
+        this.nmsThreshold = nmsThreshold;
+        this.topK = topK;
+    }
+
+    /**
+     * Reads the configured settings; invalid values fall back to the defaults
+     */
+    public static InferenceSettings fromConfig() {
+        String backend = FaceRecognitionConfig.getChoice(FaceRecognitionConfig.DNN_BACKEND, "default", BACKENDS.keySet().toArray(new String[0]));
+        String target = FaceRecognitionConfig.getChoice(FaceRecognitionConfig.DNN_TARGET, "cpu", TARGETS.keySet().toArray(new String[0]));
+        int threads = FaceRecognitionConfig.getInt(FaceRecognitionConfig.DNN_THREADS, 0, 0, 256);
+        int detectWidth = FaceRecognitionConfig.getInt(FaceRecognitionConfig.DETECT_WIDTH, 320, 0, 4096);
+        double score = FaceRecognitionConfig.getDouble(FaceRecognitionConfig.DETECT_SCORE_THRESHOLD, 0.6);
+        double nms = FaceRecognitionConfig.getDouble(FaceRecognitionConfig.DETECT_NMS_THRESHOLD, 0.3);
+        int topK = FaceRecognitionConfig.getInt(FaceRecognitionConfig.DETECT_TOP_K, 5000, 1, 100_000);
+        if (!(score >= 0 && score <= 1)) {
+            System.err.println("✗ " + FaceRecognitionConfig.DETECT_SCORE_THRESHOLD + " must be between 0 and 1, using 0.6");
+            score = 0.6;
+        }
+        if (!(nms >= 0 && nms <= 1)) {
+            System.err.println("✗ " + FaceRecognitionConfig.DETECT_NMS_THRESHOLD + " must be between 0 and 1, using 0.3");
+            nms = 0.3;
+        }
+        return new InferenceSettings(backend, target, threads, detectWidth, (float) score, (float) nms, topK);
+    }
+
+    /**
+     * Same settings with another backend, target, thread count and detector width
+     */
+    public InferenceSettings with(String backend, String target, int threads, int detectWidth) {
+        return new InferenceSettings(backend, target, threads, detectWidth, scoreThreshold, nmsThreshold, topK);
+    }
+
+    public static String[] backendNames() {
+        return BACKENDS.keySet().toArray(new String[0]);
+    }
+
+    public static String[] targetNames() {
+        return TARGETS.keySet().toArray(new String[0]);
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getBackendId() {
+        return BACKENDS.get(backend);
+    }
+
+    public int getTargetId() {
+        return TARGETS.get(target);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getDetectWidth() {
+        return detectWidth;
+    }
+
+    public float getScoreThreshold() {
+        return scoreThreshold;
+    }
+
+    public float getNmsThreshold() {
+        return nmsThreshold;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    @Override
+    public String toString() {
+        return backend + "/" + target +
+                ", threads=" + (threads > 0 ? String.valueOf(threads) : "default") +
+                ", detectWidth=" + (detectWidth > 0 ? String.valueOf(detectWidth) : "full");
+    }
+}
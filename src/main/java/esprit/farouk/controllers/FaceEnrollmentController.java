@@ -1,19 +1,23 @@
 package esprit.farouk.controllers;
 
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.DuplicateFaceCheck;
 import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.services.FaceGallery;
 import esprit.farouk.services.FaceRecognitionService;
 import esprit.farouk.services.UserService;
-import esprit.farouk.utils.CameraUtils;
-import esprit.farouk.utils.FaceUtils;
+import esprit.farouk.utils.CameraFeed;
+import esprit.farouk.utils.CameraPreview;
+import esprit.farouk.utils.EmbeddingMath;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.image.ImageView;
 import javafx.stage.Stage;
-import org.bytedeco.javacv.Frame;
-import org.bytedeco.javacv.FrameGrabber;
 import org.bytedeco.opencv.opencv_core.Mat;
 
 import java.time.LocalDateTime;
@@ -41,13 +45,16 @@ public class FaceEnrollmentController {
     @FXML
     private Button captureButton;
 
+    @FXML
+    private Button autoCaptureButton;
+
     @FXML
     private Button finishButton;
 
     @FXML
     private Button cancelButton;
 
-    private FrameGrabber camera;
+    private CameraFeed camera;
     private FaceRecognitionService faceService;
     private UserService userService;
     private long currentUserId;
@@ -55,6 +62,7 @@ public class FaceEnrollmentController {
     private List<FaceEmbedding> capturedEmbeddings = new ArrayList<>();
     private int captureCount = 0;
     private final int REQUIRED_CAPTURES = 5;
+    private final long AUTO_CAPTURE_MILLIS = 2500;
 
     private String[] instructions = {
         "Look straight at the camera",
@@ -64,8 +72,9 @@ public class FaceEnrollmentController {
         "Tilt your head slightly down"
     };
 
-    private Thread cameraThread;
-    private volatile boolean running = false;
+    private CameraPreview preview;
+    private Thread burstThread;
+    private volatile boolean closing = false;
 
     /**
      * Initializes enrollment dialog for specific user
@@ -90,28 +99,11 @@ public class FaceEnrollmentController {
      */
     private void startCamera() {
         try {
-            camera = CameraUtils.createCameraGrabber(0);
-            running = true;
-
-            cameraThread = new Thread(() -> {
-                try {
-                    while (running) {
-                        Frame frame = camera.grab();
-                        if (frame != null && frame.image != null) {
-                            Mat mat = CameraUtils.frameToMat(frame);
-                            Platform.runLater(() -> {
-                                cameraView.setImage(CameraUtils.matToImage(mat));
-                            });
-                        }
-                        Thread.sleep(33); // ~30 FPS
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            });
-            cameraThread.setDaemon(true);
-            cameraThread.start();
-
+            camera = CameraFeed.fromConfig();
+            camera.start(null, e -> Platform.runLater(() -> showError("Camera error: " + e.getMessage())));
+            // The preview pulls the latest frame on each FX pulse
+            preview = new CameraPreview(cameraView, camera);
+            preview.start();
         } catch (Exception e) {
             showError("Failed to start camera: " + e.getMessage());
         }
@@ -127,18 +119,27 @@ public class FaceEnrollmentController {
         }
 
         try {
-            Frame frame = camera.grab();
-            Mat mat = CameraUtils.frameToMat(frame);
+            float[] rawEmbedding;
+            // Latest frame from the capture thread, held only while the face models read it
+            try (CameraFeed.CapturedFrame frame = camera != null ? camera.acquireLatest() : null) {
+                if (frame == null) {
+                    showError("Camera is not ready yet. Please try again.");
+                    return;
+                }
+                Mat mat = frame.getMat();
 
-            // Detect face
-            Mat faces = faceService.detectFace(mat);
-            if (faces == null || faces.rows() == 0) {
-                showError("No face detected. Please position your face clearly.");
-                return;
+                // Detect face
+                Mat faces = faceService.detectFace(mat);
+                if (faces == null || faces.rows() == 0) {
+                    showError("No face detected. Please position your face clearly.");
+                    return;
+                }
+
+                rawEmbedding = faceService.generateEmbedding(mat, faces);
             }
 
-            // Generate embedding
-            float[] embedding = faceService.generateEmbedding(mat, faces);
+            // Embedding is stored L2-normalized so matching is a plain dot product
+            float[] embedding = EmbeddingMath.normalize(rawEmbedding);
             FaceEmbedding faceEmbedding = new FaceEmbedding(embedding, LocalDateTime.now());
             capturedEmbeddings.add(faceEmbedding);
 
@@ -159,7 +160,68 @@ public class FaceEnrollmentController {
     }
 
     /**
-     * Saves all captured embeddings to database
+     * Captures all templates automatically: frames are sampled and embedded in the
+     * background while the user turns their head, and the most diverse good
+     * captures replace any manual ones.
+     */
+    @FXML
+    private void handleAutoCapture() {
+        if (camera == null || !camera.isRunning()) {
+            showError("Camera is not ready yet. Please try again.");
+            return;
+        }
+
+        captureButton.setDisable(true);
+        autoCaptureButton.setDisable(true);
+        finishButton.setDisable(true);
+        instructionLabel.setText("Look at the camera and slowly turn your head left, right, up and down");
+        statusLabel.setStyle("");
+        statusLabel.setText("Capturing...");
+        progressBar.setProgress(0);
+
+        burstThread = new Thread(() -> {
+            try {
+                List<float[]> embeddings = faceService.captureDiverseShots(camera, REQUIRED_CAPTURES, AUTO_CAPTURE_MILLIS,
+                        candidates -> Platform.runLater(() ->
+                                progressBar.setProgress(Math.min(1.0, (double) candidates / (REQUIRED_CAPTURES * 3)))));
+
+                Platform.runLater(() -> {
+                    autoCaptureButton.setDisable(false);
+                    if (embeddings.size() < REQUIRED_CAPTURES) {
+                        captureButton.setDisable(captureCount >= REQUIRED_CAPTURES);
+                        finishButton.setDisable(captureCount < REQUIRED_CAPTURES);
+                        updateUI();
+                        showError("Not enough clear captures. Please face the camera in good light and try again.");
+                        return;
+                    }
+
+                    capturedEmbeddings.clear();
+                    LocalDateTime now = LocalDateTime.now();
+                    for (float[] embedding : embeddings) {
+                        capturedEmbeddings.add(new FaceEmbedding(embedding, now));
+                    }
+                    captureCount = REQUIRED_CAPTURES;
+                    updateUI();
+                    finishButton.setDisable(false);
+                    statusLabel.setText("All captures complete! Click Finish to save.");
+                    statusLabel.setStyle("-fx-text-fill: #16a34a;");
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    autoCaptureButton.setDisable(false);
+                    captureButton.setDisable(captureCount >= REQUIRED_CAPTURES);
+                    showError("Capture failed: " + e.getMessage());
+                });
+                e.printStackTrace();
+            }
+        }, "face-burst-enrollment");
+        burstThread.setDaemon(true);
+        burstThread.start();
+    }
+
+    /**
+     * Checks the captured face against the other accounts in the background
+     * (the first check may load the whole gallery), then saves the embeddings
      */
     @FXML
     private void handleFinish() {
@@ -168,24 +230,96 @@ public class FaceEnrollmentController {
             return;
         }
 
+        String policy = FaceRecognitionConfig.getChoice(FaceRecognitionConfig.ENROLL_DUPLICATES, "block", "block", "warn", "off");
+        if ("off".equals(policy)) {
+            saveEnrollment();
+            return;
+        }
+
+        captureButton.setDisable(true);
+        autoCaptureButton.setDisable(true);
+        finishButton.setDisable(true);
+        statusLabel.setStyle("");
+        statusLabel.setText("Checking for existing enrollments...");
+
+        List<float[]> embeddings = new ArrayList<>();
+        for (FaceEmbedding captured : capturedEmbeddings) {
+            embeddings.add(captured.getEmbedding());
+        }
+        Thread checkThread = new Thread(() -> {
+            try {
+                // The resident gallery is already in sync with the database; no reload needed
+                FaceGallery.getInstance().ensureLoaded(userService);
+                DuplicateFaceCheck check = faceService.checkDuplicateIdentity(currentUserId, embeddings);
+                Platform.runLater(() -> {
+                    if (!closing) {
+                        handleDuplicateCheck(policy, check);
+                    }
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    enableAfterCheck();
+                    showError("Failed to enroll face: " + e.getMessage());
+                });
+                e.printStackTrace();
+            }
+        }, "face-duplicate-check");
+        checkThread.setDaemon(true);
+        checkThread.start();
+    }
+
+    /**
+     * Applies face.enroll.duplicates to the check result: a match blocks the
+     * enrollment, asks the user to confirm, or is ignored. Runs on the FX thread.
+     */
+    private void handleDuplicateCheck(String policy, DuplicateFaceCheck check) {
+        if (check.isDuplicate()) {
+            if ("block".equals(policy)) {
+                enableAfterCheck();
+                showError("This face is already enrolled under another account. Please contact an administrator.");
+                return;
+            }
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+            alert.setTitle("Possible Duplicate");
+            alert.setHeaderText("This face looks like one already enrolled under another account.");
+            alert.setContentText("Face login may then pick either account. Save anyway?");
+            if (alert.showAndWait().filter(button -> button == ButtonType.OK).isEmpty()) {
+                enableAfterCheck();
+                statusLabel.setText("Enrollment not saved.");
+                return;
+            }
+        }
+        saveEnrollment();
+    }
+
+    /**
+     * Saves all captured embeddings to database
+     */
+    private void saveEnrollment() {
         try {
-            String embeddingsJson = FaceUtils.embeddingsToJson(capturedEmbeddings);
-            boolean success = userService.enrollFaceEmbeddings(currentUserId, embeddingsJson);
+            boolean success = userService.enrollFaceEmbeddings(currentUserId, capturedEmbeddings);
 
             if (success) {
                 showSuccess("Face recognition enrolled successfully!");
                 cleanup();
                 closeDialog();
             } else {
+                enableAfterCheck();
                 showError("Failed to save face data to database.");
             }
 
         } catch (Exception e) {
+            enableAfterCheck();
             showError("Failed to enroll face: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    private void enableAfterCheck() {
+        autoCaptureButton.setDisable(false);
+        finishButton.setDisable(false);
+    }
+
     /**
      * Cancels enrollment and closes dialog
      */
@@ -229,15 +363,22 @@ public class FaceEnrollmentController {
      * Cleanup camera resources
      */
     private void cleanup() {
-        running = false;
-        if (cameraThread != null) {
+        closing = true;
+        if (burstThread != null && burstThread.isAlive()) {
+            // The burst uses the face models; let it stop before they are released
+            burstThread.interrupt();
             try {
-                cameraThread.join(1000);
+                burstThread.join(1000);
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
             }
         }
-        CameraUtils.releaseGrabber(camera);
+        if (preview != null) {
+            preview.stop();
+        }
+        if (camera != null) {
+            camera.stop();
+        }
         if (faceService != null) {
             faceService.dispose();
         }
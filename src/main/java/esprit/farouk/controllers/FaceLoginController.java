@@ -1,9 +1,14 @@
 package esprit.farouk.controllers;
 
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.FaceMatch;
 import esprit.farouk.models.User;
+import esprit.farouk.services.FaceGallery;
 import esprit.farouk.services.FaceRecognitionService;
+import esprit.farouk.services.PassiveFaceWatcher;
 import esprit.farouk.services.UserService;
-import esprit.farouk.utils.CameraUtils;
+import esprit.farouk.utils.CameraFeed;
+import esprit.farouk.utils.CameraPreview;
 import esprit.farouk.utils.SessionManager;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -11,21 +16,22 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.image.ImageView;
 import javafx.stage.Stage;
-import org.bytedeco.javacv.Frame;
-import org.bytedeco.javacv.FrameGrabber;
-import org.bytedeco.opencv.opencv_core.Mat;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Controller for face login screen.
  * Handles face scanning and authentication.
  */
 public class FaceLoginController {
+    private static final long BEST_SHOT_TIMEOUT_MS = 1500;
 
     @FXML
     private ImageView cameraView;
@@ -33,6 +39,12 @@ public class FaceLoginController {
     @FXML
     private Label statusLabel;
 
+    @FXML
+    private ComboBox<String> accountComboBox;
+
+    @FXML
+    private CheckBox handsFreeCheckBox;
+
     @FXML
     private ProgressIndicator progressIndicator;
 
@@ -42,22 +54,41 @@ public class FaceLoginController {
     @FXML
     private Button usePasswordButton;
 
-    private FrameGrabber camera;
+    private CameraFeed camera;
     private FaceRecognitionService faceService;
     private UserService userService;
-    private Thread cameraThread;
-    private volatile boolean running = false;
+    private CameraPreview preview;
+    private PassiveFaceWatcher passiveWatcher;
+    private final AtomicBoolean faceServiceBusy = new AtomicBoolean(false); // held while a thread uses faceService
+    private volatile String claimedEmail = "";
 
     @FXML
     public void initialize() {
         this.faceService = new FaceRecognitionService();
         this.userService = new UserService();
         progressIndicator.setVisible(false);
+        accountComboBox.getItems().setAll(SessionManager.getRecentFaceAccounts());
+        // Read by the scan threads, which must not touch the control itself
+        accountComboBox.getEditor().textProperty().addListener((obs, oldText, newText) ->
+                claimedEmail = newText == null ? "" : newText.trim());
+
+        // Warm up the face gallery in the background so the first scan does not wait on the database
+        Thread galleryLoader = new Thread(() -> FaceGallery.getInstance().ensureLoaded(userService));
+        galleryLoader.setDaemon(true);
+        galleryLoader.start();
 
         try {
             faceService.initialize();
             startCamera();
             statusLabel.setText("Position your face in the frame and click Scan Face");
+            if (camera != null && camera.isRunning()) {
+                passiveWatcher = new PassiveFaceWatcher(camera, faceService, faceServiceBusy, this::handsFreeScan);
+                handsFreeCheckBox.setSelected(Boolean.parseBoolean(
+                        FaceRecognitionConfig.getString(FaceRecognitionConfig.PASSIVE_ENABLED, "false")));
+                handleHandsFreeToggle();
+            } else {
+                handsFreeCheckBox.setDisable(true);
+            }
         } catch (Exception e) {
             showError("Failed to initialize: " + e.getMessage());
             e.printStackTrace();
@@ -69,28 +100,11 @@ public class FaceLoginController {
      */
     private void startCamera() {
         try {
-            camera = CameraUtils.createCameraGrabber(0);
-            running = true;
-
-            cameraThread = new Thread(() -> {
-                try {
-                    while (running) {
-                        Frame frame = camera.grab();
-                        if (frame != null && frame.image != null) {
-                            Mat mat = CameraUtils.frameToMat(frame);
-                            Platform.runLater(() -> {
-                                cameraView.setImage(CameraUtils.matToImage(mat));
-                            });
-                        }
-                        Thread.sleep(33); // ~30 FPS
-                    }
-                } catch (Exception e) {
-                    Platform.runLater(() -> showError("Camera error: " + e.getMessage()));
-                }
-            });
-            cameraThread.setDaemon(true);
-            cameraThread.start();
-
+            camera = CameraFeed.fromConfig();
+            camera.start(null, e -> Platform.runLater(() -> showError("Camera error: " + e.getMessage())));
+            // The preview pulls the latest frame on each FX pulse
+            preview = new CameraPreview(cameraView, camera);
+            preview.start();
         } catch (Exception e) {
             showError("Failed to start camera: " + e.getMessage());
             scanButton.setDisable(true);
@@ -98,92 +112,164 @@ public class FaceLoginController {
     }
 
     /**
-     * Scans face and attempts authentication
+     * Scans face and attempts authentication.
      */
     @FXML
     private void handleScanFace() {
-        scanButton.setDisable(true);
-        progressIndicator.setVisible(true);
-        statusLabel.setText("Scanning face...");
-
+        String email = claimedEmail;
         // Run face recognition in background thread
-        new Thread(() -> {
-            try {
-                // Get all enrolled users
-                List<User> enrolledUsers = userService.getAllFaceEnabledUsers();
+        new Thread(() -> scanFace(email)).start();
+    }
+
+    /**
+     * Turns hands-free login on or off
+     */
+    @FXML
+    private void handleHandsFreeToggle() {
+        if (passiveWatcher == null) {
+            return;
+        }
+        if (handsFreeCheckBox.isSelected()) {
+            passiveWatcher.start();
+            statusLabel.setText("Hands-free: look at the camera to log in");
+        } else {
+            passiveWatcher.stop();
+            statusLabel.setText("Position your face in the frame and click Scan Face");
+        }
+    }
+
+    /**
+     * Called on the hands-free watcher thread once a steady face is in view
+     */
+    private boolean handsFreeScan() {
+        return scanFace(claimedEmail);
+    }
 
-                if (enrolledUsers.isEmpty()) {
+    /**
+     * Runs one scan on the calling background thread and reports the result in the UI.
+     * With an account entered, the face is verified against that account only (1:1);
+     * otherwise it is identified among all enrolled users (1:N).
+     *
+     * @return true if the user was logged in
+     */
+    private boolean scanFace(String claimedEmail) {
+        if (!faceServiceBusy.compareAndSet(false, true)) {
+            return false; // another scan is running and reports its own result
+        }
+        Platform.runLater(() -> {
+            scanButton.setDisable(true);
+            progressIndicator.setVisible(true);
+            statusLabel.setText("Scanning face...");
+        });
+
+        try {
+            User claimedUser = null;
+            if (!claimedEmail.isEmpty()) {
+                // 1:1 - only the claimed account's templates are compared
+                claimedUser = userService.getByEmail(claimedEmail);
+                if (claimedUser == null || claimedUser.getFaceEnrolledAt() == null) {
                     Platform.runLater(() -> {
-                        showError("No enrolled faces found in the system.\nPlease enroll your face in Profile Settings first.");
+                        showError("No face enrolled for this account.\nUse password login or enroll your face in Profile Settings.");
                         scanButton.setDisable(false);
                         progressIndicator.setVisible(false);
                     });
-                    return;
+                    return false;
                 }
+            } else {
+                // 1:N - enrolled faces come from the resident gallery (loaded once, kept in sync by UserService)
+                FaceGallery gallery = FaceGallery.getInstance();
+                gallery.ensureLoaded(userService);
 
-                // Capture frame
-                Frame frame = camera.grab();
-                Mat mat = CameraUtils.frameToMat(frame);
-
-                // Detect face
-                Mat faces = faceService.detectFace(mat);
-                if (faces == null || faces.rows() == 0) {
+                if (gallery.userCount() == 0) {
                     Platform.runLater(() -> {
-                        showError("No face detected. Please ensure your face is clearly visible.");
+                        showError("No enrolled faces found in the system.\nPlease enroll your face in Profile Settings first.");
                         scanButton.setDisable(false);
                         progressIndicator.setVisible(false);
                     });
-                    return;
+                    return false;
                 }
+            }
 
-                System.out.println("Detection result: " + faces.rows() + ", Faces found: " + faces.rows());
-
-                // Generate embedding
-                float[] capturedEmbedding = faceService.generateEmbedding(mat, faces);
-
-                // Authenticate
-                User matchedUser = faceService.authenticateByFace(capturedEmbedding, enrolledUsers);
+            if (camera == null || !camera.isRunning()) {
+                Platform.runLater(() -> {
+                    showError("Camera is not ready yet. Please try again.");
+                    scanButton.setDisable(false);
+                    progressIndicator.setVisible(false);
+                });
+                return false;
+            }
 
+            // Best few shots from the live stream (the grabber itself is never touched here)
+            long scanStarted = System.nanoTime();
+            List<float[]> capturedEmbeddings = faceService.captureBestShots(camera, BEST_SHOT_TIMEOUT_MS);
+            if (capturedEmbeddings.isEmpty()) {
                 Platform.runLater(() -> {
-                    if (matchedUser != null) {
-                        // Check if user is blocked
-                        if ("blocked".equals(matchedUser.getStatus())) {
-                            showError("Your account has been blocked. Please contact support.");
-                            scanButton.setDisable(false);
-                            progressIndicator.setVisible(false);
-                            return;
-                        }
+                    showError("No face detected. Please ensure your face is clearly visible.");
+                    scanButton.setDisable(false);
+                    progressIndicator.setVisible(false);
+                });
+                return false;
+            }
 
-                        // Login successful
-                        SessionManager.setCurrentUser(matchedUser);
-                        showSuccess("Face recognized! Logging in...");
-
-                        // Navigate to dashboard after brief delay
-                        new Thread(() -> {
-                            try {
-                                Thread.sleep(1000);
-                                Platform.runLater(this::navigateToDashboard);
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-                        }).start();
-
-                    } else {
-                        showError("Face not recognized. Please try again or use password login.");
+            // Verify the claimed account, or identify and then load only the matched user's account
+            User matchedUser;
+            if (claimedUser != null) {
+                matchedUser = faceService.verifyFace(claimedUser.getId(), capturedEmbeddings) != null ? claimedUser : null;
+            } else {
+                FaceMatch match = faceService.authenticateByFace(capturedEmbeddings);
+                matchedUser = match != null ? userService.getById(match.getUserId()) : null;
+            }
+            System.out.println(String.format("Face scan took %.0f ms (%s)", (System.nanoTime() - scanStarted) / 1_000_000.0,
+                    matchedUser != null ? "recognized" : "not recognized"));
+
+            Platform.runLater(() -> {
+                if (matchedUser != null) {
+                    // Only active accounts may log in (the database fallback of verifyFace does not filter them)
+                    if (!"active".equals(matchedUser.getStatus())) {
+                        showError("blocked".equals(matchedUser.getStatus())
+                                ? "Your account has been blocked. Please contact support."
+                                : "Your account is not active. Please contact support.");
                         scanButton.setDisable(false);
                         progressIndicator.setVisible(false);
+                        return;
                     }
-                });
 
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    showError("Authentication failed: " + e.getMessage());
+                    // Login successful
+                    SessionManager.setCurrentUser(matchedUser);
+                    if (!claimedEmail.isEmpty()) {
+                        SessionManager.rememberFaceAccount(matchedUser.getEmail());
+                    }
+                    showSuccess("Face recognized! Logging in...");
+
+                    // Navigate to dashboard after brief delay
+                    new Thread(() -> {
+                        try {
+                            Thread.sleep(1000);
+                            Platform.runLater(this::navigateToDashboard);
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    }).start();
+
+                } else {
+                    showError("Face not recognized. Please try again or use password login.");
                     scanButton.setDisable(false);
                     progressIndicator.setVisible(false);
-                });
-                e.printStackTrace();
-            }
-        }).start();
+                }
+            });
+            return matchedUser != null && "active".equals(matchedUser.getStatus());
+
+        } catch (Exception e) {
+            Platform.runLater(() -> {
+                showError("Authentication failed: " + e.getMessage());
+                scanButton.setDisable(false);
+                progressIndicator.setVisible(false);
+            });
+            e.printStackTrace();
+            return false;
+        } finally {
+            faceServiceBusy.set(false);
+        }
     }
 
     /**
@@ -239,19 +325,34 @@ public class FaceLoginController {
     }
 
     /**
-     * Cleanup camera resources
+     * Stops the watcher and camera, then releases the models once no scan uses them
      */
     private void cleanup() {
-        running = false;
-        if (cameraThread != null) {
-            try {
-                cameraThread.join(1000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        if (passiveWatcher != null) {
+            passiveWatcher.stop();
+        }
+        if (preview != null) {
+            preview.stop();
+        }
+        if (camera != null) {
+            camera.stop(); // a scan still waiting for frames gives up sooner
         }
-        CameraUtils.releaseGrabber(camera);
         if (faceService != null) {
+            // Take the busy flag for good: a running scan finishes first, and none can start after
+            long deadline = System.currentTimeMillis() + BEST_SHOT_TIMEOUT_MS + 2000;
+            while (!faceServiceBusy.compareAndSet(false, true)) {
+                if (System.currentTimeMillis() >= deadline) {
+                    // Releasing the models under a running scan would crash in native code; leak them instead
+                    System.err.println("✗ Face scan still running; face models are not released");
+                    return;
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
             faceService.dispose();
         }
     }
@@ -0,0 +1,243 @@
+package esprit.farouk.controllers;
+
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.FaceMatch;
+import esprit.farouk.models.User;
+import esprit.farouk.services.CheckInService;
+import esprit.farouk.services.FaceGallery;
+import esprit.farouk.services.FaceRecognitionService;
+import esprit.farouk.services.UserService;
+import esprit.farouk.utils.CameraFeed;
+import esprit.farouk.utils.CameraPreview;
+import javafx.application.Platform;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.image.ImageView;
+import javafx.stage.Stage;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller for the shift check-in kiosk.
+ * Identifies everyone in front of the camera at once and records a check-in per worker.
+ *
+ * A background thread takes the newest frame, detects every face, embeds them
+ * in one batch, identifies them against the gallery in parallel and logs a
+ * check-in for each recognized user not already checked in within
+ * face.kiosk.repeat_minutes. Throughput is shown in faces per second.
+ */
+public class KioskController {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int MAX_LISTED = 50;
+    private static final long THROUGHPUT_WINDOW_MS = 5000;
+
+    @FXML
+    private ImageView cameraView;
+
+    @FXML
+    private Label statusLabel;
+
+    @FXML
+    private Label throughputLabel;
+
+    @FXML
+    private ListView<String> checkInList;
+
+    @FXML
+    private Button backButton;
+
+    private CameraFeed camera;
+    private CameraPreview preview;
+    private FaceRecognitionService faceService;
+    private UserService userService;
+    private CheckInService checkInService;
+    private Thread kioskThread;
+    private volatile boolean running = false;
+
+    private final int detectWidth = FaceRecognitionConfig.getInt(FaceRecognitionConfig.KIOSK_DETECT_WIDTH, 640, 0, 4096);
+    private final long repeatMillis = FaceRecognitionConfig.getInt(FaceRecognitionConfig.KIOSK_REPEAT_MINUTES, 240, 0, 24 * 60) * 60_000L;
+    private final Map<Long, Long> lastCheckIns = new HashMap<>(); // user ID -> millis, kiosk thread only
+    private final Map<Long, String> userNames = new HashMap<>();
+
+    @FXML
+    public void initialize() {
+        this.faceService = new FaceRecognitionService();
+        this.userService = new UserService();
+        this.checkInService = new CheckInService();
+
+        try {
+            faceService.initialize();
+            camera = CameraFeed.fromConfig();
+            camera.start(null, e -> Platform.runLater(() -> showError("Camera error: " + e.getMessage())));
+            preview = new CameraPreview(cameraView, camera);
+            preview.start();
+
+            running = true;
+            kioskThread = new Thread(this::runKiosk, "kiosk-checkin");
+            kioskThread.setDaemon(true);
+            kioskThread.start();
+            statusLabel.setText("Loading enrolled faces...");
+        } catch (Exception e) {
+            showError("Failed to start kiosk: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Kiosk loop: one batch of faces per frame, on the newest frame available
+     */
+    private void runKiosk() {
+        FaceGallery gallery = FaceGallery.getInstance();
+        gallery.ensureLoaded(userService);
+        Platform.runLater(() -> statusLabel.setText("Ready: " + gallery.userCount() + " enrolled workers. Stand in front of the camera."));
+
+        long afterSequence = 0;
+        long windowStart = System.currentTimeMillis();
+        int windowFaces = 0;
+        int windowFrames = 0;
+        long windowProcessingNanos = 0;
+
+        while (running) {
+            try {
+                List<FaceMatch> matches;
+                int faceCount;
+                long started;
+                try (CameraFeed.CapturedFrame frame = camera.acquireNext(afterSequence, 1000)) {
+                    if (frame == null) {
+                        continue;
+                    }
+                    afterSequence = frame.getSequence();
+                    started = System.nanoTime();
+
+                    Mat faces = faceService.detectFaces(frame.getMat(), detectWidth);
+                    faceCount = faces != null ? faces.rows() : 0;
+                    matches = faceCount > 0 ? faceService.identifyAll(faceService.generateEmbeddings(frame.getMat(), faces)) : List.of();
+                }
+                windowProcessingNanos += System.nanoTime() - started;
+                windowFaces += faceCount;
+                windowFrames++;
+
+                for (FaceMatch match : matches) {
+                    if (match != null) {
+                        checkIn(match);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - windowStart >= THROUGHPUT_WINDOW_MS) {
+                    double seconds = (now - windowStart) / 1000.0;
+                    String throughput = String.format("%.1f faces/s, %.1f frames/s, %.0f ms per frame",
+                            windowFaces / seconds, windowFrames / seconds,
+                            windowFrames > 0 ? windowProcessingNanos / 1_000_000.0 / windowFrames : 0.0);
+                    System.out.println("Kiosk throughput: " + throughput);
+                    Platform.runLater(() -> throughputLabel.setText(throughput));
+                    windowStart = now;
+                    windowFaces = 0;
+                    windowFrames = 0;
+                    windowProcessingNanos = 0;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("✗ Kiosk frame failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Records a check-in unless the user already checked in within the repeat window
+     */
+    private void checkIn(FaceMatch match) {
+        long userId = match.getUserId();
+        long now = System.currentTimeMillis();
+        Long last = lastCheckIns.get(userId);
+        if (last == null) {
+            // First sighting since the kiosk started: the database knows about earlier check-ins
+            LocalDateTime lastCheckIn = checkInService.getLastCheckIn(userId);
+            last = lastCheckIn != null ? java.sql.Timestamp.valueOf(lastCheckIn).getTime() : 0L;
+            lastCheckIns.put(userId, last);
+        }
+        if (now - last < repeatMillis) {
+            return;
+        }
+
+        if (checkInService.recordCheckIn(userId, match.getScore())) {
+            lastCheckIns.put(userId, now);
+            String name = userNames.computeIfAbsent(userId, id -> {
+                User user = userService.getById(id);
+                return user != null ? user.getName() : "User #" + id;
+            });
+            String entry = LocalDateTime.now().format(TIME_FORMAT) + "  ✓ " + name;
+            System.out.println("Kiosk check-in: " + name + " (user ID " + userId + ", score " + match.getScore() + ")");
+            Platform.runLater(() -> {
+                checkInList.getItems().add(0, entry);
+                if (checkInList.getItems().size() > MAX_LISTED) {
+                    checkInList.getItems().remove(MAX_LISTED);
+                }
+                statusLabel.setText("Welcome, " + name + "!");
+                statusLabel.setStyle("-fx-text-fill: #16a34a; -fx-font-size: 16px; -fx-font-weight: bold;");
+            });
+        }
+    }
+
+    /**
+     * Returns to the login screen
+     */
+    @FXML
+    private void handleBack() {
+        cleanup();
+        try {
+            Parent root = FXMLLoader.load(getClass().getResource("/fxml/login.fxml"));
+            Stage stage = (Stage) backButton.getScene().getWindow();
+            Scene scene = new Scene(root, 800, 600);
+            scene.getStylesheets().add(getClass().getResource("/css/style.css").toExternalForm());
+            stage.setScene(scene);
+            stage.setTitle("AgriCloud - Login");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Shows error message
+     */
+    private void showError(String message) {
+        statusLabel.setText(message);
+        statusLabel.setStyle("-fx-text-fill: #dc2626; -fx-font-size: 14px;");
+    }
+
+    /**
+     * Stops the kiosk loop, then releases camera and models
+     */
+    private void cleanup() {
+        running = false;
+        if (kioskThread != null) {
+            kioskThread.interrupt();
+            try {
+                kioskThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (preview != null) {
+            preview.stop();
+        }
+        if (camera != null) {
+            camera.stop();
+        }
+        if (faceService != null) {
+            faceService.dispose();
+        }
+    }
+}
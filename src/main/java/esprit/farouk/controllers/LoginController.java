@@ -167,6 +167,23 @@ public class LoginController {
         }
     }
 
+    @FXML
+    private void handleKiosk() {
+        try {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/kiosk.fxml"));
+            Parent root = loader.load();
+
+            Stage stage = (Stage) loginButton.getScene().getWindow();
+            Scene scene = new Scene(root, 900, 700);
+            scene.getStylesheets().add(getClass().getResource("/css/style.css").toExternalForm());
+            stage.setScene(scene);
+            stage.setTitle("AgriCloud - Check-in Kiosk");
+        } catch (Exception e) {
+            showError("Failed to load check-in kiosk: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     @FXML
     private void handleGuestLogin() {
         // TODO: Implement guest login
@@ -0,0 +1,86 @@
+package esprit.farouk.models;
+
+/**
+ * A face found in an image: its box in image coordinates, the detector
+ * confidence and its 128D embedding.
+ */
+public class DetectedFace {
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private float confidence;
+    private float[] embedding;
+
+    public DetectedFace() {
+    }
+
+    public DetectedFace(int x, int y, int width, int height, float confidence) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.confidence = confidence;
+    }
+
+    // Getters and Setters
+    public int getX() {
+        return x;
+    }
+
+    public void setX(int x) {
+        this.x = x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public void setY(int y) {
+        this.y = y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(float confidence) {
+        this.confidence = confidence;
+    }
+
+    public float[] getEmbedding() {
+        return embedding;
+    }
+
+    public void setEmbedding(float[] embedding) {
+        this.embedding = embedding;
+    }
+
+    @Override
+    public String toString() {
+        return "DetectedFace{" +
+                "x=" + x +
+                ", y=" + y +
+                ", width=" + width +
+                ", height=" + height +
+                ", confidence=" + confidence +
+                ", embedding=" + (embedding != null ? embedding.length + "D" : "none") +
+                '}';
+    }
+}
@@ -0,0 +1,78 @@
+package esprit.farouk.models;
+
+/**
+ * Result of checking new enrollment captures against every other enrolled user.
+ * Holds the closest and second-closest other users (scores averaged over the
+ * captures, in the configured metric) and the margin between them.
+ */
+public class DuplicateFaceCheck {
+    private FaceMatch bestMatch;
+    private FaceMatch secondMatch;
+    private double margin;
+    private boolean duplicate;
+
+    public DuplicateFaceCheck() {
+    }
+
+    public DuplicateFaceCheck(FaceMatch bestMatch, FaceMatch secondMatch, double margin, boolean duplicate) {
+        this.bestMatch = bestMatch;
+        this.secondMatch = secondMatch;
+        this.margin = margin;
+        this.duplicate = duplicate;
+    }
+
+    // Getters and Setters
+    /**
+     * Closest other user, or null if nobody else is enrolled
+     */
+    public FaceMatch getBestMatch() {
+        return bestMatch;
+    }
+
+    public void setBestMatch(FaceMatch bestMatch) {
+        this.bestMatch = bestMatch;
+    }
+
+    /**
+     * Second-closest other user, or null
+     */
+    public FaceMatch getSecondMatch() {
+        return secondMatch;
+    }
+
+    public void setSecondMatch(FaceMatch secondMatch) {
+        this.secondMatch = secondMatch;
+    }
+
+    /**
+     * How much closer the best match is than the second, in metric units (always >= 0); NaN without a second match
+     */
+    public double getMargin() {
+        return margin;
+    }
+
+    public void setMargin(double margin) {
+        this.margin = margin;
+    }
+
+    /**
+     * True if the best match passes the recognition threshold, i.e. the face would log in as that user
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    public void setDuplicate(boolean duplicate) {
+        this.duplicate = duplicate;
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateFaceCheck{" +
+                "bestMatch=" + bestMatch +
+                ", secondMatch=" + secondMatch +
+                ", margin=" + margin +
+                ", duplicate=" + duplicate +
+                '}';
+    }
+}
@@ -1,5 +1,7 @@
 package esprit.farouk.models;
 
+import esprit.farouk.utils.EmbeddingMath;
+
 import java.time.LocalDateTime;
 
 /**
@@ -22,7 +24,8 @@ public class FaceEmbedding {
     /**
      * Calculates Euclidean distance between this embedding and another.
      * Lower distance means more similar faces.
-     * Typical threshold for same person: < 0.6
+     * For L2-normalized SFace embeddings the same-person threshold is about 1.128
+     * (equivalent to a cosine similarity of 0.363).
      *
      * @param other The embedding to compare with
      * @return Euclidean distance between embeddings
@@ -32,17 +35,7 @@ public class FaceEmbedding {
             return Double.MAX_VALUE;
         }
 
-        if (this.embedding.length != other.embedding.length) {
-            throw new IllegalArgumentException("Embeddings must have same dimension");
-        }
-
-        double sum = 0.0;
-        for (int i = 0; i < this.embedding.length; i++) {
-            double diff = this.embedding[i] - other.embedding[i];
-            sum += diff * diff;
-        }
-
-        return Math.sqrt(sum);
+        return EmbeddingMath.euclideanDistance(this.embedding, other.embedding);
     }
 
     // Getters and Setters
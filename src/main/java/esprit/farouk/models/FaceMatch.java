@@ -0,0 +1,44 @@
+package esprit.farouk.models;
+
+/**
+ * Result of matching a captured face embedding against the enrolled gallery.
+ * Holds the matched user ID and the score of their closest template, expressed
+ * in the configured metric (cosine similarity or Euclidean distance).
+ */
+public class FaceMatch {
+    private long userId;
+    private double score;
+
+    public FaceMatch() {
+    }
+
+    public FaceMatch(long userId, double score) {
+        this.userId = userId;
+        this.score = score;
+    }
+
+    // Getters and Setters
+    public long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(long userId) {
+        this.userId = userId;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return "FaceMatch{" +
+                "userId=" + userId +
+                ", score=" + score +
+                '}';
+    }
+}
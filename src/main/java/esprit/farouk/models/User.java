@@ -20,7 +20,6 @@ public class User {
     private String oauthId; // OAuth user ID from provider
 
     // Face recognition fields
-    private String faceEmbeddings; // JSON array of face embeddings
     private LocalDateTime faceEnrolledAt; // Timestamp when face was enrolled
 
     // Transient field for display (from JOIN with roles table)
@@ -99,9 +98,6 @@ public class User {
     public String getRoleName() { return roleName; }
     public void setRoleName(String roleName) { this.roleName = roleName; }
 
-    public String getFaceEmbeddings() { return faceEmbeddings; }
-    public void setFaceEmbeddings(String faceEmbeddings) { this.faceEmbeddings = faceEmbeddings; }
-
     public LocalDateTime getFaceEnrolledAt() { return faceEnrolledAt; }
     public void setFaceEnrolledAt(LocalDateTime faceEnrolledAt) { this.faceEnrolledAt = faceEnrolledAt; }
 
@@ -0,0 +1,87 @@
+package esprit.farouk.services;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * Records shift check-ins made at the face recognition kiosk in the check_ins table.
+ *
+ * The table is created on first use.
+ */
+public class CheckInService {
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS check_ins (" +
+            "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+            "user_id BIGINT NOT NULL, " +
+            "checked_in_at DATETIME NOT NULL, " +
+            "score DOUBLE NOT NULL, " +
+            "INDEX idx_check_ins_user (user_id, checked_in_at))";
+
+    private static volatile boolean schemaReady = false;
+
+    private Connection connection;
+
+    public CheckInService() {
+        this.connection = DatabaseConnection.getConnection();
+        ensureSchema();
+    }
+
+    /**
+     * Records a check-in.
+     *
+     * @param userId Identified user
+     * @param score Face match score in the configured metric
+     * @return true if the check-in was saved
+     */
+    public boolean recordCheckIn(long userId, double score) {
+        String sql = "INSERT INTO check_ins (user_id, checked_in_at, score) VALUES (?, ?, ?)";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            stmt.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.setDouble(3, score);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            System.err.println("✗ Failed to record check-in: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Gets the time of a user's latest check-in, or null if they never checked in
+     */
+    public LocalDateTime getLastCheckIn(long userId) {
+        String sql = "SELECT MAX(checked_in_at) AS last_check_in FROM check_ins WHERE user_id = ?";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next() && rs.getTimestamp("last_check_in") != null) {
+                return rs.getTimestamp("last_check_in").toLocalDateTime();
+            }
+        } catch (SQLException e) {
+            System.err.println("✗ Failed to get last check-in: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private void ensureSchema() {
+        if (schemaReady || connection == null) {
+            return;
+        }
+        synchronized (CheckInService.class) {
+            if (schemaReady) {
+                return;
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(CREATE_TABLE_SQL);
+                schemaReady = true;
+            } catch (SQLException e) {
+                System.err.println("✗ Failed to prepare check_ins table: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+}
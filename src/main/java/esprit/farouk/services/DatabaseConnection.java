@@ -34,6 +34,15 @@ public class DatabaseConnection {
         return connection;
     }
 
+    /**
+     * Opens a separate connection for transactional work. The shared connection
+     * above is used by several threads at once, so a transaction on it would
+     * also commit or roll back their statements. The caller closes it.
+     */
+    public static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+    }
+
     public static void closeConnection() {
         try {
             if (connection != null && !connection.isClosed()) {
@@ -0,0 +1,149 @@
+package esprit.farouk.services;
+
+import esprit.farouk.utils.EmbeddingMath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the most diverse good captures of a face out of a burst, for enrollment.
+ *
+ * Two captures are far apart when their embeddings differ or their head poses
+ * differ; enrolling captures spread over both gives templates that still match
+ * when the user later stands a little differently. A bounded pool of candidates
+ * is kept while the burst runs: when it is full, the candidate that adds the
+ * least (quality times distance to its nearest neighbour) is dropped. The final
+ * choice is greedy: start from the best-quality capture, then repeatedly add the
+ * candidate with the highest quality times distance to the captures already chosen.
+ */
+public class DiverseCaptureSelector {
+    /** Weight of the pose distance against the embedding distance (1 - cosine) */
+    private static final double POSE_WEIGHT = 1.0;
+
+    private final int poolSize;
+    private final List<Candidate> pool = new ArrayList<>();
+
+    /**
+     * One capture of the burst
+     */
+    public static final class Candidate {
+        private final float[] embedding;
+        private final double yaw;
+        private final double pitch;
+        private final double quality;
+
+        /**
+         * @param embedding L2-normalized embedding
+         * @param yaw       See FaceQualityScorer.pose
+         * @param pitch     See FaceQualityScorer.pose
+         * @param quality   Image quality in [0, 1]
+         */
+        public Candidate(float[] embedding, double yaw, double pitch, double quality) {
+            this.embedding = embedding;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.quality = quality;
+        }
+
+        public float[] getEmbedding() {
+            return embedding;
+        }
+
+        public double getYaw() {
+            return yaw;
+        }
+
+        public double getPitch() {
+            return pitch;
+        }
+
+        public double getQuality() {
+            return quality;
+        }
+    }
+
+    /**
+     * @param poolSize Candidates kept while the burst runs
+     */
+    public DiverseCaptureSelector(int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    /**
+     * Adds a candidate, dropping the least useful one if the pool is full.
+     */
+    public void offer(Candidate candidate) {
+        pool.add(candidate);
+        if (pool.size() <= poolSize) {
+            return;
+        }
+        int weakest = 0;
+        double weakestValue = Double.MAX_VALUE;
+        for (int i = 0; i < pool.size(); i++) {
+            double nearest = Double.MAX_VALUE;
+            for (int j = 0; j < pool.size(); j++) {
+                if (i != j) {
+                    nearest = Math.min(nearest, distance(pool.get(i), pool.get(j)));
+                }
+            }
+            double value = pool.get(i).quality * nearest;
+            if (value < weakestValue) {
+                weakestValue = value;
+                weakest = i;
+            }
+        }
+        pool.remove(weakest);
+    }
+
+    /**
+     * Number of candidates in the pool
+     */
+    public int size() {
+        return pool.size();
+    }
+
+    /**
+     * Chooses up to count diverse candidates, best quality first.
+     */
+    public List<Candidate> select(int count) {
+        List<Candidate> remaining = new ArrayList<>(pool);
+        List<Candidate> chosen = new ArrayList<>();
+        if (remaining.isEmpty() || count <= 0) {
+            return chosen;
+        }
+
+        Candidate best = remaining.get(0);
+        for (Candidate candidate : remaining) {
+            if (candidate.quality > best.quality) {
+                best = candidate;
+            }
+        }
+        chosen.add(best);
+        remaining.remove(best);
+
+        while (chosen.size() < count && !remaining.isEmpty()) {
+            Candidate next = null;
+            double nextValue = -1;
+            for (Candidate candidate : remaining) {
+                double nearest = Double.MAX_VALUE;
+                for (Candidate picked : chosen) {
+                    nearest = Math.min(nearest, distance(candidate, picked));
+                }
+                double value = candidate.quality * nearest;
+                if (value > nextValue) {
+                    nextValue = value;
+                    next = candidate;
+                }
+            }
+            chosen.add(next);
+            remaining.remove(next);
+        }
+        return chosen;
+    }
+
+    private static double distance(Candidate a, Candidate b) {
+        double embeddingDistance = 1.0 - EmbeddingMath.dot(a.embedding, 0, b.embedding, 0, a.embedding.length);
+        double poseDistance = Math.hypot(a.yaw - b.yaw, a.pitch - b.pitch);
+        return embeddingDistance + POSE_WEIGHT * poseDistance;
+    }
+}
@@ -0,0 +1,222 @@
+package esprit.farouk.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary on-disk snapshot of the face gallery, so startup does not have to
+ * read every user's templates from the database.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header  64 bytes  magic, version, dimension, count, id CRC32, vector CRC32,
+ *                     embedding model version (24 bytes ASCII, zero-padded), header CRC32
+ *   ids     count x (long userId, long faceEnrolledAt epoch millis)
+ *   vectors count x dimension floats (L2-normalized), starting on a 64-byte boundary
+ * </pre>
+ * The file is memory-mapped for reading and the float block is bulk-copied into
+ * the gallery matrix. Writes go to a temporary file that is fsync'ed and then
+ * atomically renamed, and every section is checksummed, so a crash mid-write
+ * leaves either the old snapshot or an invalid one that is ignored. A snapshot
+ * written with another embedding model is ignored too, since its vectors are
+ * not comparable with the current model's.
+ */
+public class FaceEmbeddingStore {
+    private static final int MAGIC = 0x47464741; // "AGFG"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int MODEL_OFFSET = 32;
+    private static final int MODEL_BYTES = 24;
+    private static final int HEADER_CRC_OFFSET = MODEL_OFFSET + MODEL_BYTES;
+    private static final int ID_ENTRY_SIZE = 16;
+
+    private final Path path;
+    private final String modelVersion;
+
+    /**
+     * @param path Snapshot file
+     * @param modelVersion Embedding model the stored vectors come from (see FaceTemplateService.MODEL_VERSION)
+     */
+    public FaceEmbeddingStore(Path path, String modelVersion) {
+        if (modelVersion.getBytes(StandardCharsets.US_ASCII).length > MODEL_BYTES) {
+            throw new IllegalArgumentException("Model version longer than " + MODEL_BYTES + " bytes: " + modelVersion);
+        }
+        this.path = path;
+        this.modelVersion = modelVersion;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Snapshot contents: parallel per-template arrays plus the vector matrix.
+     */
+    public static class Snapshot {
+        public final int count;
+        public final long[] userIds;
+        public final long[] enrolledAt;
+        public final float[] vectors;
+
+        Snapshot(int count, long[] userIds, long[] enrolledAt, float[] vectors) {
+            this.count = count;
+            this.userIds = userIds;
+            this.enrolledAt = enrolledAt;
+            this.vectors = vectors;
+        }
+    }
+
+    /**
+     * Reads the snapshot.
+     *
+     * @return Snapshot, or null if the file is missing, from another format version, model or dimension, or corrupt
+     */
+    public Snapshot load(int dimension) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                System.err.println("✗ Face store truncated, ignoring: " + path);
+                return null;
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int magic = header.getInt(0);
+            int version = header.getInt(4);
+            int storedDimension = header.getInt(8);
+            int count = header.getInt(12);
+            long idCrc = header.getLong(16);
+            long vectorCrc = header.getLong(24);
+            long headerCrc = header.getLong(HEADER_CRC_OFFSET);
+
+            if (magic != MAGIC || version != VERSION || storedDimension != dimension || count < 0) {
+                System.err.println("✗ Face store has unsupported format, ignoring: " + path);
+                return null;
+            }
+            if (headerCrc != crc(header.duplicate().position(0).limit(HEADER_CRC_OFFSET))) {
+                System.err.println("✗ Face store header checksum mismatch, ignoring: " + path);
+                return null;
+            }
+            String storedModel = readModel(header);
+            if (!modelVersion.equals(storedModel)) {
+                System.err.println("✗ Face store was written with model " + storedModel + ", current model is "
+                        + modelVersion + ", ignoring: " + path);
+                return null;
+            }
+
+            long idBytes = (long) count * ID_ENTRY_SIZE;
+            long vectorOffset = vectorOffset(count);
+            long vectorBytes = (long) count * dimension * Float.BYTES;
+            if (fileSize != vectorOffset + vectorBytes || vectorBytes > Integer.MAX_VALUE) {
+                System.err.println("✗ Face store size mismatch, ignoring: " + path);
+                return null;
+            }
+
+            MappedByteBuffer ids = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, idBytes);
+            MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, vectorOffset, vectorBytes);
+            if (idCrc != crc(ids.duplicate()) || vectorCrc != crc(block.duplicate())) {
+                System.err.println("✗ Face store checksum mismatch, ignoring: " + path);
+                return null;
+            }
+
+            long[] userIds = new long[count];
+            long[] enrolledAt = new long[count];
+            ByteBuffer idBuffer = ids.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                userIds[i] = idBuffer.getLong(i * ID_ENTRY_SIZE);
+                enrolledAt[i] = idBuffer.getLong(i * ID_ENTRY_SIZE + 8);
+            }
+
+            // One bulk copy of the whole float block, no per-value decoding
+            float[] vectors = new float[count * dimension];
+            block.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vectors);
+
+            return new Snapshot(count, userIds, enrolledAt, vectors);
+        } catch (IOException e) {
+            System.err.println("✗ Failed to read face store: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Atomically replaces the snapshot with the given templates.
+     *
+     * @param count Number of templates
+     * @param userIds Owning user of each template
+     * @param enrolledAt face_enrolled_at (epoch millis) of each template's user, 0 if unknown
+     * @param vectors Matrix holding count rows of the given dimension
+     */
+    public void save(int count, long[] userIds, long[] enrolledAt, float[] vectors, int dimension) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer ids = ByteBuffer.allocate(count * ID_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                ids.putLong(userIds[i]);
+                ids.putLong(enrolledAt[i]);
+            }
+            ids.flip();
+
+            ByteBuffer block = ByteBuffer.allocateDirect(count * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            block.asFloatBuffer().put(vectors, 0, count * dimension);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count);
+            header.putLong(crc(ids.duplicate())).putLong(crc(block.duplicate()));
+            header.put(modelVersion.getBytes(StandardCharsets.US_ASCII)); // rest of the field stays zero
+            header.putLong(HEADER_CRC_OFFSET, crc(header.duplicate().position(0).limit(HEADER_CRC_OFFSET)));
+            header.position(0).limit(HEADER_SIZE);
+
+            writeFully(channel, header, 0);
+            writeFully(channel, ids, HEADER_SIZE);
+            writeFully(channel, block, vectorOffset(count));
+            channel.force(true);
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String readModel(ByteBuffer header) {
+        byte[] bytes = new byte[MODEL_BYTES];
+        header.duplicate().position(MODEL_OFFSET).get(bytes);
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private static long vectorOffset(int count) {
+        long end = HEADER_SIZE + (long) count * ID_ENTRY_SIZE;
+        return (end + 63) & ~63L;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+}
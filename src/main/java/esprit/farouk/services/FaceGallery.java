@@ -0,0 +1,1032 @@
+package esprit.farouk.services;
+
+import esprit.farouk.config.FaceMetric;
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.models.FaceMatch;
+import esprit.farouk.utils.EmbeddingMath;
+import esprit.farouk.utils.EmbeddingQuantizer;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resident in-memory gallery of all enrolled face embeddings.
+ *
+ * Templates are stored L2-normalized in one contiguous float matrix (one 128D
+ * row per slot) with a parallel array of owning user IDs, so matching is a
+ * single dot product per template. The gallery is kept up to date by
+ * UserService whenever a user is enrolled, un-enrolled, blocked or deleted,
+ * so a face login never touches the database.
+ *
+ * At startup the gallery is restored from the binary FaceEmbeddingStore
+ * snapshot and then synced against face_enrolled_at, so only users enrolled or
+ * removed since the last run are read from the database.
+ *
+ * Small galleries are scanned exactly. Above face.index.exact_max_size templates
+ * (or always, with face.index.type=hnsw) an HNSW graph over the same matrix
+ * proposes candidates that are then re-ranked exactly. The graph is built on a
+ * background thread from a copy of the matrix while searches keep using the
+ * exact scan (or the previous graph), and is swapped in with the changes made
+ * during the build replayed onto it. With face.quantization
+ * set to int8 or fp16 (and centroids off) the exact scan runs over compact codes
+ * kept next to the float matrix and only the best rerank_size candidates are
+ * scored in full precision.
+ *
+ * For exact search each user also has a centroid: the normalized mean of their
+ * templates. The first pass scans the centroids (one row per user instead of
+ * one per capture) and only the face.match.centroid_candidates closest users
+ * are then compared capture by capture. Centroids are derived data and are
+ * recomputed whenever a user is put or restored.
+ *
+ * Exact scans of at least face.search.parallel_min_size templates are split into
+ * cache-sized blocks that are scanned on a ForkJoin pool; each block keeps its
+ * own top candidates and the partial results are merged.
+ */
+public class FaceGallery {
+    public static final int DIMENSION = 128;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long FREE_SLOT = -1L;
+    private static final int SCAN_BLOCK_SLOTS = 1024; // 512 KB of float rows per leaf task, sized for L2
+    private static final int INDEX_REPLAY_CHUNK = 256; // changes replayed onto a finished graph per lock hold
+
+    private static FaceGallery instance;
+
+    // Lock order: loadLock, then lock. Nothing synchronizes on the gallery itself,
+    // so code holding the read or write lock never waits on a monitor.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loadLock = new Object(); // serializes ensureLoaded() and reload()
+
+    private float[] vectors = new float[INITIAL_CAPACITY * DIMENSION]; // slot i = [i*DIMENSION, (i+1)*DIMENSION)
+    private long[] slotUserIds = new long[INITIAL_CAPACITY];            // FREE_SLOT for unused slots
+    private int slotCount = 0;                                          // high-water mark of used slots
+    private int[] freeSlots = new int[INITIAL_CAPACITY];                // stack of reusable slots
+    private int freeCount = 0;
+    private final Map<Long, int[]> userSlots = new HashMap<>();
+    private int[] usersByTemplateCount = new int[8]; // [n] = users with n templates, for the running maximum
+    private int maxTemplates = 0;                    // most templates any user has
+    private final Map<Long, Long> userEnrolledAt = new HashMap<>(); // face_enrolled_at millis, 0 = unknown
+    private volatile boolean loaded = false;
+
+    private final FaceEmbeddingStore store;
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(
+            daemonThreads("face-gallery-saver")); // the thread starts with the first save
+
+    private final String indexType = FaceRecognitionConfig.getChoice(FaceRecognitionConfig.INDEX_TYPE, "auto", "auto", "exact", "hnsw");
+    private final int exactMaxSize = FaceRecognitionConfig.getInt(FaceRecognitionConfig.INDEX_EXACT_MAX_SIZE, 20000, 0, Integer.MAX_VALUE);
+    private final int rerankSize = FaceRecognitionConfig.getInt(FaceRecognitionConfig.INDEX_RERANK_SIZE, 10, 1, 1000);
+    private final int hnswM = FaceRecognitionConfig.getInt(FaceRecognitionConfig.HNSW_M, 16, 2, 128);
+    private final int hnswEfConstruction = FaceRecognitionConfig.getInt(FaceRecognitionConfig.HNSW_EF_CONSTRUCTION, 200, hnswM, 4096);
+    private final int hnswEfSearch = FaceRecognitionConfig.getInt(FaceRecognitionConfig.HNSW_EF_SEARCH, 64, 1, 4096);
+    private HnswIndex index; // null until the gallery is large enough to need it and the first build finished
+    private BitSet slotsChangedDuringBuild; // non-null while a background build runs
+    private int indexGeneration = 0;        // bumped by clear() so a build of discarded contents is dropped
+    private final ExecutorService indexBuilder = Executors.newSingleThreadExecutor(
+            daemonThreads("face-index-builder")); // the thread starts with the first build
+
+    private final String quantization; // "none" while the centroid pass is on, see resolveQuantization()
+    private byte[] int8Codes = new byte[0];   // slot-major like vectors, used when quantization = int8
+    private float[] int8Scales = new float[0];
+    private short[] fp16Codes = new short[0]; // used when quantization = fp16
+
+    private final boolean centroidsEnabled = Boolean.parseBoolean(FaceRecognitionConfig.getString(FaceRecognitionConfig.MATCH_CENTROIDS, "true"));
+    private final int centroidCandidates = FaceRecognitionConfig.getInt(FaceRecognitionConfig.MATCH_CENTROID_CANDIDATES, 10, 1, 1000);
+    private float[] centroids = new float[INITIAL_CAPACITY * DIMENSION]; // row r = centroid of centroidUserIds[r]
+    private long[] centroidUserIds = new long[INITIAL_CAPACITY];         // FREE_SLOT for unused rows
+    private int centroidCount = 0;                                       // high-water mark of used rows
+    private int[] freeCentroidRows = new int[INITIAL_CAPACITY];
+    private int freeCentroidCount = 0;
+    private final Map<Long, Integer> userCentroidRows = new HashMap<>();
+
+    private final int parallelMinSize = FaceRecognitionConfig.getInt(FaceRecognitionConfig.SEARCH_PARALLEL_MIN_SIZE, 10000, 0, Integer.MAX_VALUE);
+    private final int parallelism = resolveParallelism();
+    private final ForkJoinPool searchPool = parallelism > 1 ? createSearchPool(parallelism) : null; // workers start with the first parallel scan
+
+    private FaceGallery() {
+        boolean storeEnabled = Boolean.parseBoolean(FaceRecognitionConfig.getString(FaceRecognitionConfig.STORE_ENABLED, "true"));
+        this.store = storeEnabled
+                ? new FaceEmbeddingStore(Paths.get(FaceRecognitionConfig.getString(FaceRecognitionConfig.STORE_PATH, "data/face_gallery.bin")),
+                        FaceTemplateService.MODEL_VERSION)
+                : null;
+        this.quantization = resolveQuantization(centroidsEnabled);
+        ensureCodeCapacity(INITIAL_CAPACITY);
+    }
+
+    /**
+     * The quantized codes only serve the full per-capture scan, which the centroid
+     * pass replaces, so the two are exclusive: with centroids on no codes are kept.
+     */
+    private static String resolveQuantization(boolean centroidsEnabled) {
+        String configured = FaceRecognitionConfig.getChoice(FaceRecognitionConfig.QUANTIZATION, "none", "none", "int8", "fp16");
+        if (centroidsEnabled && !"none".equals(configured)) {
+            System.err.println("✗ " + FaceRecognitionConfig.QUANTIZATION + "=" + configured + " is ignored while "
+                    + FaceRecognitionConfig.MATCH_CENTROIDS + "=true; set " + FaceRecognitionConfig.MATCH_CENTROIDS
+                    + "=false to scan quantized codes instead of centroids");
+            return "none";
+        }
+        return configured;
+    }
+
+    /**
+     * Gets the shared gallery instance
+     */
+    public static synchronized FaceGallery getInstance() {
+        if (instance == null) {
+            instance = new FaceGallery();
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the gallery if it has not been loaded yet: restores the on-disk
+     * snapshot when there is a valid one, then syncs it with the database.
+     */
+    public void ensureLoaded(UserService userService) {
+        if (!loaded) {
+            FaceTemplateService.migrateLegacyEmbeddings(); // no-op once done; legacy users have no templates before
+            synchronized (loadLock) {
+                if (!loaded) {
+                    restoreSnapshot();
+                    boolean changed = syncFromDatabase(userService);
+                    loaded = true;
+                    if (changed) {
+                        scheduleSave();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the current contents and rebuilds the gallery from the database
+     */
+    public void reload(UserService userService) {
+        synchronized (loadLock) {
+            lock.writeLock().lock();
+            try {
+                clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            syncFromDatabase(userService);
+            loaded = true;
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Brings the gallery in line with the database using face_enrolled_at:
+     * users whose enrollment time changed (or who are missing) are re-read,
+     * users no longer enrolled or active are dropped. Only changed users'
+     * templates are fetched.
+     */
+    public void sync(UserService userService) {
+        if (syncFromDatabase(userService)) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * @return Whether any user was updated or removed
+     */
+    private boolean syncFromDatabase(UserService userService) {
+        Map<Long, Long> current = userService.getFaceEnrollmentTimes();
+        if (current == null) {
+            return false; // database unreachable: keep serving what we have rather than dropping everyone
+        }
+        List<Long> changed = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Long, Long> entry : current.entrySet()) {
+                if (!entry.getValue().equals(userEnrolledAt.get(entry.getKey()))) {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (Long userId : userSlots.keySet()) {
+                if (!current.containsKey(userId)) {
+                    removed.add(userId);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<Long, List<FaceEmbedding>> fetched = changed.isEmpty() ? Map.of() : userService.getFaceTemplatesByIds(changed);
+
+        lock.writeLock().lock();
+        try {
+            for (Long userId : removed) {
+                removeUserLocked(userId);
+            }
+            for (Map.Entry<Long, List<FaceEmbedding>> entry : fetched.entrySet()) {
+                putUserLocked(entry.getKey(), entry.getValue(), current.get(entry.getKey()));
+            }
+            maintainIndexLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (!loaded || !fetched.isEmpty() || !removed.isEmpty()) {
+            // Periodic syncs (see FaceIdentificationServer) only log when something changed
+            System.out.println("✓ Face gallery synced: " + userCount() + " users, " + size() + " templates ("
+                    + fetched.size() + " updated, " + removed.size() + " removed)");
+        }
+        return !fetched.isEmpty() || !removed.isEmpty();
+    }
+
+    /**
+     * Adds or replaces all templates of a user
+     */
+    public void putUser(long userId, List<FaceEmbedding> embeddings) {
+        lock.writeLock().lock();
+        try {
+            // Exact DB timestamp is not known here; 0 makes the next sync re-read this user once
+            putUserLocked(userId, embeddings, 0L);
+            maintainIndexLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Removes all templates of a user (no-op if the user is not in the gallery)
+     */
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            removeUserLocked(userId);
+            maintainIndexLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Finds the enrolled template closest to the query embedding.
+     *
+     * @param query Captured 128D embedding, already L2-normalized
+     * @param metric Metric used to report the score
+     * @return Closest user and their score, or null if the gallery is empty
+     */
+    public FaceMatch findNearest(float[] query, FaceMetric metric) {
+        if (query.length != DIMENSION) {
+            throw new IllegalArgumentException("Embeddings must have same dimension");
+        }
+
+        lock.readLock().lock();
+        try {
+            long bestUserId = FREE_SLOT;
+            float bestDot = -Float.MAX_VALUE;
+
+            if (useIndex()) {
+                // Approximate candidates from the graph, then exact re-ranking on the full-precision rows
+                for (int slot : index.search(query, vectors, rerankSize, hnswEfSearch)) {
+                    float dot = EmbeddingMath.dot(query, 0, vectors, slot * DIMENSION, DIMENSION);
+                    if (dot > bestDot) {
+                        bestDot = dot;
+                        bestUserId = slotUserIds[slot];
+                    }
+                }
+            } else if (centroidsEnabled && userCentroidRows.size() > centroidCandidates) {
+                // First pass over one centroid per user, then every capture of the closest users
+                TopSlots topUsers = scanExact(query, centroidCandidates, true);
+                for (int i = 0; i < topUsers.count; i++) {
+                    long userId = centroidUserIds[topUsers.slots[i]];
+                    for (int slot : userSlots.get(userId)) {
+                        float dot = EmbeddingMath.dot(query, 0, vectors, slot * DIMENSION, DIMENSION);
+                        if (dot > bestDot) {
+                            bestDot = dot;
+                            bestUserId = userId;
+                        }
+                    }
+                }
+            } else {
+                boolean quantized = !"none".equals(quantization);
+                TopSlots top = scanExact(query, quantized ? rerankSize : 1, false);
+                for (int i = 0; i < top.count; i++) {
+                    int slot = top.slots[i];
+                    // Quantized scores are approximate, so the candidates are re-ranked on the float rows
+                    float dot = quantized ? EmbeddingMath.dot(query, 0, vectors, slot * DIMENSION, DIMENSION) : top.scores[i];
+                    if (dot > bestDot) {
+                        bestDot = dot;
+                        bestUserId = slotUserIds[slot];
+                    }
+                }
+            }
+
+            if (bestUserId == FREE_SLOT) {
+                return null;
+            }
+            return new FaceMatch(bestUserId, metric.fromDot(bestDot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the enrolled users closest to the query embedding, one result per user.
+     * Candidates come from the same first stage as findNearest (graph, centroids or
+     * scan), and every template of each candidate is then compared exactly, so the
+     * cost stays close to one login search even for large galleries.
+     *
+     * @param query Captured 128D embedding, already L2-normalized
+     * @param metric Metric used to report the scores
+     * @param count Number of users wanted
+     * @param excludeUserId User left out of the results (e.g. the one enrolling), or -1
+     * @return Up to count users with their best score, closest first
+     */
+    public List<FaceMatch> findNearestUsers(float[] query, FaceMetric metric, int count, long excludeUserId) {
+        if (query.length != DIMENSION) {
+            throw new IllegalArgumentException("Embeddings must have same dimension");
+        }
+
+        lock.readLock().lock();
+        try {
+            int wanted = count + 1; // the excluded user may take one of the places
+            Set<Long> candidates = new LinkedHashSet<>();
+            if (useIndex()) {
+                int k = Math.max(rerankSize, wanted * maxTemplatesPerUser());
+                for (int slot : index.search(query, vectors, k, Math.max(hnswEfSearch, k))) {
+                    candidates.add(slotUserIds[slot]);
+                }
+            } else if (centroidsEnabled && userCentroidRows.size() > centroidCandidates) {
+                TopSlots topUsers = scanExact(query, Math.max(centroidCandidates, wanted), true);
+                for (int i = 0; i < topUsers.count; i++) {
+                    candidates.add(centroidUserIds[topUsers.slots[i]]);
+                }
+            } else {
+                // One user can hold several of the top slots, so keep enough to see wanted distinct users
+                TopSlots top = scanExact(query, wanted * maxTemplatesPerUser(), false);
+                for (int i = 0; i < top.count; i++) {
+                    candidates.add(slotUserIds[top.slots[i]]);
+                }
+            }
+            candidates.remove(excludeUserId);
+
+            List<FaceMatch> matches = new ArrayList<>();
+            for (long userId : candidates) {
+                float bestDot = -Float.MAX_VALUE;
+                for (int slot : userSlots.get(userId)) {
+                    bestDot = Math.max(bestDot, EmbeddingMath.dot(query, 0, vectors, slot * DIMENSION, DIMENSION));
+                }
+                matches.add(new FaceMatch(userId, bestDot));
+            }
+            matches.sort(Comparator.comparingDouble(FaceMatch::getScore).reversed());
+            if (matches.size() > count) {
+                matches = new ArrayList<>(matches.subList(0, count));
+            }
+            for (FaceMatch match : matches) {
+                match.setScore(metric.fromDot(match.getScore()));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int maxTemplatesPerUser() {
+        return Math.max(1, maxTemplates);
+    }
+
+    /**
+     * Keeps the running maximum of templates per user in step with userSlots
+     * (+1 when a user with count templates is added, -1 when removed)
+     */
+    private void countTemplatesLocked(int count, int delta) {
+        if (count >= usersByTemplateCount.length) {
+            usersByTemplateCount = Arrays.copyOf(usersByTemplateCount, Math.max(count + 1, usersByTemplateCount.length * 2));
+        }
+        usersByTemplateCount[count] += delta;
+        if (delta > 0) {
+            maxTemplates = Math.max(maxTemplates, count);
+        } else {
+            while (maxTemplates > 0 && usersByTemplateCount[maxTemplates] == 0) {
+                maxTemplates--;
+            }
+        }
+    }
+
+    /**
+     * Scans every live slot (float rows, or the quantized codes when enabled), or
+     * every live centroid row, and returns the k with the highest dot product.
+     * Large scans run in parallel blocks.
+     */
+    private TopSlots scanExact(float[] query, int k, boolean centroidRows) {
+        int rows = centroidRows ? centroidCount : slotCount;
+        int live = centroidRows ? userCentroidRows.size() : slotCount - freeCount;
+        if (parallelism > 1 && live >= parallelMinSize) {
+            return searchPool.invoke(new ScanTask(query, 0, rows, k, centroidRows));
+        }
+        return centroidRows ? scanCentroidRange(query, 0, rows, k) : scanRange(query, 0, rows, k);
+    }
+
+    private TopSlots scanCentroidRange(float[] query, int from, int to, int k) {
+        TopSlots top = new TopSlots(k);
+        for (int row = from; row < to; row++) {
+            if (centroidUserIds[row] != FREE_SLOT) {
+                top.offer(row, EmbeddingMath.dot(query, 0, centroids, row * DIMENSION, DIMENSION));
+            }
+        }
+        return top;
+    }
+
+    private TopSlots scanRange(float[] query, int from, int to, int k) {
+        TopSlots top = new TopSlots(k);
+        boolean int8 = "int8".equals(quantization);
+        boolean fp16 = "fp16".equals(quantization);
+
+        for (int slot = from; slot < to; slot++) {
+            if (slotUserIds[slot] == FREE_SLOT) {
+                continue;
+            }
+            // Unit vectors: the largest dot product is both the best cosine and the smallest distance
+            int offset = slot * DIMENSION;
+            float score = int8 ? EmbeddingQuantizer.dotInt8(query, int8Codes, offset, DIMENSION) * int8Scales[slot]
+                    : fp16 ? EmbeddingQuantizer.dotFloat16(query, fp16Codes, offset, DIMENSION)
+                    : EmbeddingMath.dot(query, 0, vectors, offset, DIMENSION);
+            top.offer(slot, score);
+        }
+        return top;
+    }
+
+    private static ForkJoinPool createSearchPool(int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("face-search-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static int resolveParallelism() {
+        int configured = FaceRecognitionConfig.getInt(FaceRecognitionConfig.SEARCH_PARALLELISM, 0, 0, 256);
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Compares the query only against one user's templates (1:1 verification).
+     * Cost does not depend on the gallery size.
+     *
+     * @param userId Claimed user
+     * @param query Captured 128D embedding, already L2-normalized
+     * @param metric Metric used to report the score
+     * @return Best score over the user's templates, or null if the user is not in the gallery
+     */
+    public FaceMatch verifyUser(long userId, float[] query, FaceMetric metric) {
+        if (query.length != DIMENSION) {
+            throw new IllegalArgumentException("Embeddings must have same dimension");
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] slots = userSlots.get(userId);
+            if (slots == null) {
+                return null;
+            }
+            float bestDot = -Float.MAX_VALUE;
+            for (int slot : slots) {
+                bestDot = Math.max(bestDot, EmbeddingMath.dot(query, 0, vectors, slot * DIMENSION, DIMENSION));
+            }
+            return new FaceMatch(userId, metric.fromDot(bestDot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a user currently has templates in the gallery
+     */
+    public boolean containsUser(long userId) {
+        lock.readLock().lock();
+        try {
+            return userSlots.containsKey(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of templates currently in the gallery
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotCount - freeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of users currently in the gallery
+     */
+    public int userCount() {
+        lock.readLock().lock();
+        try {
+            return userSlots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Whether searches currently go through the HNSW index (false while the first build runs)
+     */
+    public boolean isIndexed() {
+        lock.readLock().lock();
+        try {
+            return useIndex();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether a background HNSW build or rebuild is running
+     */
+    public boolean isIndexBuilding() {
+        lock.readLock().lock();
+        try {
+            return slotsChangedDuringBuild != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ============================================================
+    // On-disk snapshot
+    // ============================================================
+
+    /**
+     * Replaces the gallery contents with the on-disk snapshot, if there is a valid one.
+     */
+    private void restoreSnapshot() {
+        if (store == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        FaceEmbeddingStore.Snapshot snapshot = store.load(DIMENSION);
+        if (snapshot == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            clear();
+            // Adopt the snapshot arrays directly as the gallery matrix
+            vectors = snapshot.vectors;
+            slotUserIds = snapshot.userIds;
+            slotCount = snapshot.count;
+            ensureCodeCapacity(slotCount);
+
+            Map<Long, int[]> grouped = new HashMap<>();
+            for (int slot = 0; slot < slotCount; slot++) {
+                long userId = slotUserIds[slot];
+                int[] slots = grouped.get(userId);
+                slots = slots == null ? new int[1] : Arrays.copyOf(slots, slots.length + 1);
+                slots[slots.length - 1] = slot;
+                grouped.put(userId, slots);
+                userEnrolledAt.put(userId, snapshot.enrolledAt[slot]);
+                encodeSlot(slot);
+            }
+            userSlots.putAll(grouped);
+            for (int[] slots : grouped.values()) {
+                countTemplatesLocked(slots.length, 1);
+            }
+            for (Long userId : grouped.keySet()) {
+                putCentroidLocked(userId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        System.out.println("✓ Face gallery restored from " + store.getPath() + ": " + snapshot.count
+                + " templates in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Writes the snapshot shortly after a change, coalescing bursts of changes into one write.
+     * Changes made before the gallery is loaded are not saved: the gallery is still
+     * (nearly) empty then and would overwrite a full snapshot; the load itself syncs
+     * them from the database and saves.
+     */
+    private void scheduleSave() {
+        if (store == null || !loaded || !savePending.compareAndSet(false, true)) {
+            return;
+        }
+        saver.schedule(this::saveSnapshot, 2, TimeUnit.SECONDS);
+    }
+
+    private void saveSnapshot() {
+        savePending.set(false);
+
+        int count;
+        long[] ids;
+        long[] times;
+        float[] compact;
+        lock.readLock().lock();
+        try {
+            count = slotCount - freeCount;
+            ids = new long[count];
+            times = new long[count];
+            compact = new float[count * DIMENSION];
+            int row = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                long userId = slotUserIds[slot];
+                if (userId == FREE_SLOT) {
+                    continue;
+                }
+                ids[row] = userId;
+                times[row] = userEnrolledAt.getOrDefault(userId, 0L);
+                System.arraycopy(vectors, slot * DIMENSION, compact, row * DIMENSION, DIMENSION);
+                row++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            store.save(count, ids, times, compact, DIMENSION);
+        } catch (IOException e) {
+            System.err.println("✗ Failed to save face store: " + e.getMessage());
+        }
+    }
+
+    // ============================================================
+    // Internal slot management (callers hold the write lock)
+    // ============================================================
+
+    private void putUserLocked(long userId, List<FaceEmbedding> embeddings, long enrolledAt) {
+        removeUserLocked(userId);
+        if (embeddings == null || embeddings.isEmpty()) {
+            return;
+        }
+
+        int[] slots = new int[embeddings.size()];
+        int used = 0;
+        for (FaceEmbedding embedding : embeddings) {
+            float[] values = embedding.getEmbedding();
+            if (values == null || values.length != DIMENSION) {
+                continue; // Skip corrupt templates instead of failing the whole user
+            }
+            int slot = allocateSlot();
+            System.arraycopy(values, 0, vectors, slot * DIMENSION, DIMENSION);
+            EmbeddingMath.normalizeInPlace(vectors, slot * DIMENSION, DIMENSION);
+            encodeSlot(slot);
+            slotUserIds[slot] = userId;
+            if (index != null) {
+                index.insert(slot, vectors);
+            }
+            if (slotsChangedDuringBuild != null) {
+                slotsChangedDuringBuild.set(slot);
+            }
+            slots[used++] = slot;
+        }
+
+        if (used > 0) {
+            userSlots.put(userId, Arrays.copyOf(slots, used));
+            countTemplatesLocked(used, 1);
+            userEnrolledAt.put(userId, enrolledAt);
+            putCentroidLocked(userId);
+        }
+    }
+
+    /**
+     * Stores the normalized mean of a user's (normalized) templates in a centroid row
+     */
+    private void putCentroidLocked(long userId) {
+        Integer existing = userCentroidRows.get(userId);
+        int row;
+        if (existing != null) {
+            row = existing;
+        } else if (freeCentroidCount > 0) {
+            row = freeCentroidRows[--freeCentroidCount];
+        } else {
+            if (centroidCount == centroidUserIds.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, centroidUserIds.length * 2);
+                centroidUserIds = Arrays.copyOf(centroidUserIds, capacity);
+                centroids = Arrays.copyOf(centroids, capacity * DIMENSION);
+            }
+            row = centroidCount++;
+        }
+
+        int offset = row * DIMENSION;
+        Arrays.fill(centroids, offset, offset + DIMENSION, 0f);
+        for (int slot : userSlots.get(userId)) {
+            int slotOffset = slot * DIMENSION;
+            for (int i = 0; i < DIMENSION; i++) {
+                centroids[offset + i] += vectors[slotOffset + i];
+            }
+        }
+        EmbeddingMath.normalizeInPlace(centroids, offset, DIMENSION);
+        centroidUserIds[row] = userId;
+        userCentroidRows.put(userId, row);
+    }
+
+    private void removeUserLocked(long userId) {
+        int[] slots = userSlots.remove(userId);
+        userEnrolledAt.remove(userId);
+        Integer centroidRow = userCentroidRows.remove(userId);
+        if (centroidRow != null) {
+            centroidUserIds[centroidRow] = FREE_SLOT;
+            if (freeCentroidCount == freeCentroidRows.length) {
+                freeCentroidRows = Arrays.copyOf(freeCentroidRows, freeCentroidRows.length * 2);
+            }
+            freeCentroidRows[freeCentroidCount++] = centroidRow;
+        }
+        if (slots == null) {
+            return;
+        }
+        countTemplatesLocked(slots.length, -1);
+        for (int slot : slots) {
+            slotUserIds[slot] = FREE_SLOT;
+            if (index != null) {
+                index.markDeleted(slot);
+            }
+            if (slotsChangedDuringBuild != null) {
+                slotsChangedDuringBuild.set(slot);
+            }
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == slotUserIds.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, slotUserIds.length * 2);
+            slotUserIds = Arrays.copyOf(slotUserIds, capacity);
+            vectors = Arrays.copyOf(vectors, capacity * DIMENSION);
+            ensureCodeCapacity(capacity);
+        }
+        return slotCount++;
+    }
+
+    private void ensureCodeCapacity(int capacity) {
+        if ("int8".equals(quantization) && int8Scales.length < capacity) {
+            int8Codes = Arrays.copyOf(int8Codes, capacity * DIMENSION);
+            int8Scales = Arrays.copyOf(int8Scales, capacity);
+        } else if ("fp16".equals(quantization) && fp16Codes.length < capacity * DIMENSION) {
+            fp16Codes = Arrays.copyOf(fp16Codes, capacity * DIMENSION);
+        }
+    }
+
+    private void encodeSlot(int slot) {
+        int offset = slot * DIMENSION;
+        if ("int8".equals(quantization)) {
+            int8Scales[slot] = EmbeddingQuantizer.quantizeInt8(vectors, offset, DIMENSION, int8Codes, offset);
+        } else if ("fp16".equals(quantization)) {
+            EmbeddingQuantizer.quantizeFloat16(vectors, offset, DIMENSION, fp16Codes, offset);
+        }
+    }
+
+    private void clear() {
+        Arrays.fill(slotUserIds, 0, slotCount, FREE_SLOT);
+        slotCount = 0;
+        freeCount = 0;
+        userSlots.clear();
+        Arrays.fill(usersByTemplateCount, 0);
+        maxTemplates = 0;
+        userEnrolledAt.clear();
+        Arrays.fill(centroidUserIds, 0, centroidCount, FREE_SLOT);
+        centroidCount = 0;
+        freeCentroidCount = 0;
+        userCentroidRows.clear();
+        index = null;
+        slotsChangedDuringBuild = null;
+        indexGeneration++;
+    }
+
+    private boolean useIndex() {
+        return index != null && ("hnsw".equals(indexType) || slotCount - freeCount > exactMaxSize);
+    }
+
+    /**
+     * Starts a background HNSW build once the gallery needs the index, or when
+     * tombstones from removed users make up a large part of the graph. Only the
+     * matrix copy is made under the write lock.
+     */
+    private void maintainIndexLocked() {
+        int live = slotCount - freeCount;
+        boolean wanted = "hnsw".equals(indexType) || ("auto".equals(indexType) && live > exactMaxSize);
+        if (!wanted || slotsChangedDuringBuild != null) {
+            return;
+        }
+        if (index != null && index.deletedCount() <= Math.max(1000, live / 4)) {
+            return;
+        }
+
+        float[] snapshot = Arrays.copyOf(vectors, slotCount * DIMENSION);
+        int[] liveSlots = new int[live];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotUserIds[slot] != FREE_SLOT) {
+                liveSlots[count++] = slot;
+            }
+        }
+        int generation = indexGeneration;
+        slotsChangedDuringBuild = new BitSet();
+        indexBuilder.execute(() -> buildIndex(snapshot, liveSlots, generation));
+    }
+
+    private void buildIndex(float[] snapshot, int[] liveSlots, int generation) {
+        long start = System.currentTimeMillis();
+        HnswIndex built = new HnswIndex(DIMENSION, hnswM, hnswEfConstruction);
+        try {
+            for (int slot : liveSlots) {
+                built.insert(slot, snapshot);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("✗ Face index build failed: " + e.getMessage());
+            e.printStackTrace();
+            built = null;
+        }
+        long buildMillis = System.currentTimeMillis() - start;
+
+        // Bring the graph up to date with the slots put or removed during the build: large backlogs in
+        // chunks under the read lock (searches continue), the last few with the swap under the write lock
+        int replayed = 0;
+        while (built != null) {
+            BitSet changed;
+            lock.writeLock().lock();
+            try {
+                if (generation != indexGeneration) {
+                    return; // the gallery was cleared meanwhile
+                }
+                changed = slotsChangedDuringBuild;
+                if (changed.cardinality() <= INDEX_REPLAY_CHUNK) {
+                    replayed += replayChanges(built, changed, 0, Integer.MAX_VALUE);
+                    index = built;
+                    slotsChangedDuringBuild = null;
+                    System.out.println("✓ Face index built: " + liveSlots.length + " templates in " + buildMillis
+                            + " ms (" + replayed + " changes replayed)");
+                    maintainIndexLocked();
+                    return;
+                }
+                slotsChangedDuringBuild = new BitSet();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            for (int from = changed.nextSetBit(0); from >= 0; from = changed.nextSetBit(from)) {
+                lock.readLock().lock();
+                try {
+                    if (generation != indexGeneration) {
+                        return;
+                    }
+                    int next = replayChanges(built, changed, from, INDEX_REPLAY_CHUNK);
+                    replayed += next;
+                    from = nextAfter(changed, from, next);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (generation == indexGeneration) {
+                slotsChangedDuringBuild = null; // failed build: keep the exact scan or the old graph
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies up to limit changed slots, starting at from, to a graph that is not
+     * in use yet: live slots are (re-)inserted, freed ones tombstoned.
+     * The caller holds the read or write lock.
+     *
+     * @return Number of slots applied
+     */
+    private int replayChanges(HnswIndex graph, BitSet changed, int from, int limit) {
+        int applied = 0;
+        for (int slot = changed.nextSetBit(from); slot >= 0 && applied < limit; slot = changed.nextSetBit(slot + 1)) {
+            if (slot < slotCount && slotUserIds[slot] != FREE_SLOT) {
+                graph.insert(slot, vectors);
+            } else {
+                graph.markDeleted(slot);
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Position just after the count-th set bit from the given one
+     */
+    private static int nextAfter(BitSet bits, int from, int count) {
+        int slot = from;
+        for (int i = 1; i < count; i++) {
+            slot = bits.nextSetBit(slot + 1);
+        }
+        return slot + 1;
+    }
+
+    /**
+     * Splits a slot range in halves until it fits in one cache-sized block, scans
+     * the blocks and merges their top lists. Runs while the caller holds the read lock.
+     */
+    private class ScanTask extends RecursiveTask<TopSlots> {
+        private final float[] query;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final boolean centroidRows;
+
+        ScanTask(float[] query, int from, int to, int k, boolean centroidRows) {
+            this.query = query;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.centroidRows = centroidRows;
+        }
+
+        @Override
+        protected TopSlots compute() {
+            if (to - from <= SCAN_BLOCK_SLOTS) {
+                return centroidRows ? scanCentroidRange(query, from, to, k) : scanRange(query, from, to, k);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(query, from, mid, k, centroidRows);
+            left.fork();
+            TopSlots right = new ScanTask(query, mid, to, k, centroidRows).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Small sorted list of the k best-scoring slots (best first).
+     */
+    private static class TopSlots {
+        final int[] slots;
+        final float[] scores;
+        int count;
+
+        TopSlots(int k) {
+            slots = new int[k];
+            scores = new float[k];
+        }
+
+        void offer(int slot, float score) {
+            if (count == slots.length && score <= scores[count - 1]) {
+                return;
+            }
+            int i = count < slots.length ? count++ : count - 1;
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                slots[i] = slots[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            slots[i] = slot;
+        }
+
+        TopSlots merge(TopSlots other) {
+            for (int i = 0; i < other.count; i++) {
+                offer(other.slots[i], other.scores[i]);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package esprit.farouk.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.DetectedFace;
+import esprit.farouk.models.FaceMatch;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_COLOR;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
+
+/**
+ * Headless face identification service shared by several kiosks and desktops,
+ * so they all use one warm set of models and one resident gallery.
+ *
+ * POST /identify with a JPEG or PNG image as the request body returns every
+ * face found, with the matched user (or null) as JSON. GET /metrics returns
+ * queue depth, batch sizes and latency.
+ *
+ * Requests are queued and batched: when a model instance is free, the
+ * dispatcher takes every request waiting (up to face.server.max_batch), waits
+ * up to face.server.batch_window_ms for more, and hands the batch to that
+ * instance, which embeds all faces of all images in one forward pass. Each
+ * worker owns one instance from a FaceServicePool. When the queue is full,
+ * new requests are refused with 503 and Retry-After instead of piling up.
+ *
+ * The gallery is re-synced with the database every face.server.sync_seconds,
+ * so users enrolled, blocked or deleted from the desktop app (another
+ * process) are picked up without a restart.
+ *
+ * The server listens on 127.0.0.1 only.
+ */
+public class FaceIdentificationServer {
+    private static final int MAX_IMAGE_BYTES = 10 * 1024 * 1024;
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private final int port;
+    private final int workers;
+    private final int detectWidth = FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_DETECT_WIDTH, 640, 0, 4096);
+    private final int maxBatch = FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_MAX_BATCH, 16, 1, 256);
+    private final long batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(
+            FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_BATCH_WINDOW_MS, 10, 0, 1000));
+    private final int queueCapacity = FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_QUEUE_CAPACITY, 64, 1, 100_000);
+    private final long requestTimeoutMillis = FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_REQUEST_TIMEOUT_MS, 5000, 100, 600_000);
+    private final int syncSeconds = FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_SYNC_SECONDS, 10, 0, 86_400);
+
+    private final BlockingQueue<PendingRequest> queue = new ArrayBlockingQueue<>(queueCapacity);
+    private final Gson gson = new Gson();
+
+    private HttpServer server;
+    private FaceServicePool pool;
+    private ExecutorService batchExecutor;
+    private ExecutorService handlerExecutor;
+    private ScheduledExecutorService syncExecutor;
+    private volatile long lastSyncMillis;
+    private Thread dispatcher;
+    private volatile boolean running = false;
+
+    // Metrics
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRequests = new LongAdder();
+    private final LongAdder facesProcessed = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public FaceIdentificationServer() {
+        this(FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_PORT, 8765, 1, 65535),
+                FaceRecognitionConfig.getInt(FaceRecognitionConfig.SERVER_WORKERS, 0, 0, 256));
+    }
+
+    /**
+     * @param port Local port to listen on
+     * @param workers Model instances (0 = one per available processor)
+     */
+    public FaceIdentificationServer(int port, int workers) {
+        this.port = port;
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Loads the models and the gallery, then starts listening.
+     *
+     * @throws Exception if the models cannot be loaded or the port is taken
+     */
+    public void start() throws Exception {
+        pool = new FaceServicePool(workers);
+        UserService userService = new UserService();
+        FaceGallery.getInstance().ensureLoaded(userService);
+        lastSyncMillis = System.currentTimeMillis();
+        if (syncSeconds > 0) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(daemonThreads("face-server-sync"));
+            syncExecutor.scheduleWithFixedDelay(() -> syncGallery(userService), syncSeconds, syncSeconds, TimeUnit.SECONDS);
+        }
+
+        batchExecutor = Executors.newFixedThreadPool(workers, daemonThreads("face-server-worker"));
+        // Handlers only wait for their batch; the queue bound keeps their number in check
+        handlerExecutor = Executors.newCachedThreadPool(daemonThreads("face-server-http"));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/identify", this::handleIdentify);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(handlerExecutor);
+
+        running = true;
+        dispatcher = new Thread(this::dispatchBatches, "face-server-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        server.start();
+
+        System.out.println("✓ Face identification server listening on http://127.0.0.1:" + port
+                + " (" + workers + " worker(s), batches of up to " + maxBatch + ", queue " + queueCapacity + ")");
+    }
+
+    /**
+     * Stops accepting requests, fails the ones still queued and releases the models
+     */
+    public void stop() {
+        running = false;
+        if (server != null) {
+            server.stop(0);
+        }
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+        List<PendingRequest> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        for (PendingRequest request : abandoned) {
+            request.result.completeExceptionally(new IllegalStateException("Server stopped"));
+        }
+        boolean batchesDone = true;
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+            try {
+                batchesDone = batchExecutor.awaitTermination(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batchesDone = false;
+            }
+        }
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdownNow();
+        }
+        if (pool != null) {
+            if (batchesDone) {
+                pool.close();
+            } else {
+                // Disposing services a batch still uses would crash in native code; leave them to the process exit
+                System.err.println("✗ Face batches still running after " + requestTimeoutMillis
+                        + " ms; face services are not released");
+            }
+        }
+        System.out.println("✓ Face identification server stopped. " + metrics());
+    }
+
+    /**
+     * Picks up changes made by other processes; a failed sync is retried at the next interval
+     */
+    private void syncGallery(UserService userService) {
+        try {
+            FaceGallery.getInstance().sync(userService);
+            lastSyncMillis = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            System.err.println("✗ Face gallery sync failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
+    }
+
+    // ============================================================
+    // Batching
+    // ============================================================
+
+    /**
+     * Forms a batch each time a model instance is free: everything already
+     * queued, plus whatever arrives within the batch window
+     */
+    private void dispatchBatches() {
+        while (running) {
+            FaceRecognitionService service = null;
+            try {
+                service = pool.acquire();
+                List<PendingRequest> batch = new ArrayList<>(maxBatch);
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - batch.size());
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingRequest next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+
+                FaceRecognitionService worker = service;
+                service = null;
+                batchExecutor.execute(() -> {
+                    try {
+                        processBatch(worker, batch);
+                    } finally {
+                        pool.release(worker);
+                    }
+                });
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("✗ Face server dispatch failed: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                if (service != null) {
+                    pool.release(service);
+                }
+            }
+        }
+    }
+
+    private void processBatch(FaceRecognitionService service, List<PendingRequest> batch) {
+        long started = System.nanoTime();
+        List<PendingRequest> accepted = new ArrayList<>(batch.size());
+        List<Mat> images = new ArrayList<>(batch.size());
+        try {
+            for (PendingRequest request : batch) {
+                if (request.result.isDone()) {
+                    continue; // the client already timed out
+                }
+                queueWaitNanos.add(started - request.enqueuedAtNanos);
+                Mat image = decode(request.body);
+                if (image == null) {
+                    request.result.completeExceptionally(new IllegalArgumentException("Body is not a readable image"));
+                    continue;
+                }
+                accepted.add(request);
+                images.add(image);
+            }
+            if (accepted.isEmpty()) {
+                return;
+            }
+
+            List<List<DetectedFace>> detected = service.detectAndEmbed(images, detectWidth);
+            List<float[]> embeddings = new ArrayList<>();
+            for (List<DetectedFace> faces : detected) {
+                for (DetectedFace face : faces) {
+                    embeddings.add(face.getEmbedding());
+                }
+            }
+            List<FaceMatch> matches = embeddings.isEmpty() ? List.of() : service.identifyAll(embeddings);
+
+            long processed = System.nanoTime() - started;
+            int next = 0;
+            for (int i = 0; i < accepted.size(); i++) {
+                JsonArray faces = new JsonArray();
+                for (DetectedFace face : detected.get(i)) {
+                    faces.add(toJson(face, matches.get(next++)));
+                }
+                JsonObject response = new JsonObject();
+                response.add("faces", faces);
+                response.addProperty("batchSize", accepted.size());
+                response.addProperty("processingMillis", processed / 1_000_000.0);
+                accepted.get(i).result.complete(gson.toJson(response));
+            }
+
+            batches.increment();
+            batchedRequests.add(accepted.size());
+            facesProcessed.add(embeddings.size());
+            processingNanos.add(processed);
+        } catch (RuntimeException e) {
+            System.err.println("✗ Face server batch failed: " + e.getMessage());
+            e.printStackTrace();
+            for (PendingRequest request : accepted) {
+                request.result.completeExceptionally(e);
+            }
+        } finally {
+            for (Mat image : images) {
+                image.close();
+            }
+        }
+    }
+
+    private static Mat decode(byte[] body) {
+        try (Mat encoded = new Mat(body)) {
+            Mat image = imdecode(encoded, IMREAD_COLOR);
+            if (image == null || image.empty()) {
+                if (image != null) {
+                    image.close();
+                }
+                return null;
+            }
+            return image;
+        }
+    }
+
+    private static JsonObject toJson(DetectedFace face, FaceMatch match) {
+        JsonObject json = new JsonObject();
+        json.addProperty("x", face.getX());
+        json.addProperty("y", face.getY());
+        json.addProperty("width", face.getWidth());
+        json.addProperty("height", face.getHeight());
+        json.addProperty("confidence", face.getConfidence());
+        json.addProperty("userId", match != null ? match.getUserId() : null);
+        json.addProperty("score", match != null ? match.getScore() : null);
+        return json;
+    }
+
+    // ============================================================
+    // HTTP handlers
+    // ============================================================
+
+    private void handleIdentify(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "POST an image to /identify");
+                return;
+            }
+            requests.increment();
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readNBytes(MAX_IMAGE_BYTES + 1);
+            }
+            if (body.length == 0) {
+                sendError(exchange, 400, "Empty body");
+                return;
+            }
+            if (body.length > MAX_IMAGE_BYTES) {
+                sendError(exchange, 413, "Image larger than " + MAX_IMAGE_BYTES + " bytes");
+                return;
+            }
+
+            PendingRequest request = new PendingRequest(body);
+            if (!running || !queue.offer(request)) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Server busy, retry later");
+                return;
+            }
+            maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+
+            try {
+                sendJson(exchange, 200, request.result.get(requestTimeoutMillis, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                request.result.cancel(false);
+                timedOut.increment();
+                sendError(exchange, 504, "Timed out after " + requestTimeoutMillis + " ms");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    sendError(exchange, 400, e.getCause().getMessage());
+                } else {
+                    failed.increment();
+                    sendError(exchange, 500, "Identification failed: " + e.getCause().getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "Server stopping");
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendJson(exchange, 200, gson.toJson(metrics()));
+        }
+    }
+
+    /**
+     * Current queue depth, throughput counters and average latencies
+     */
+    public JsonObject metrics() {
+        long batchCount = batches.sum();
+        long batched = batchedRequests.sum();
+        JsonObject json = new JsonObject();
+        json.addProperty("queueDepth", queue.size());
+        json.addProperty("maxQueueDepth", maxQueueDepth.get());
+        json.addProperty("queueCapacity", queueCapacity);
+        json.addProperty("workers", workers);
+        json.addProperty("idleWorkers", pool != null ? pool.idleCount() : 0);
+        json.addProperty("requests", requests.sum());
+        json.addProperty("rejected", rejected.sum());
+        json.addProperty("timedOut", timedOut.sum());
+        json.addProperty("failed", failed.sum());
+        json.addProperty("batches", batchCount);
+        json.addProperty("averageBatchSize", batchCount > 0 ? (double) batched / batchCount : 0.0);
+        json.addProperty("faces", facesProcessed.sum());
+        json.addProperty("averageQueueMillis", batched > 0 ? queueWaitNanos.sum() / 1_000_000.0 / batched : 0.0);
+        json.addProperty("averageBatchMillis", batchCount > 0 ? processingNanos.sum() / 1_000_000.0 / batchCount : 0.0);
+        json.addProperty("gallerySyncedSecondsAgo", lastSyncMillis > 0 ? (System.currentTimeMillis() - lastSyncMillis) / 1000 : -1);
+        return json;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("error", message);
+        sendJson(exchange, status, gson.toJson(json));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * An image waiting for its batch, completed with the JSON response
+     */
+    private static class PendingRequest {
+        private final byte[] body;
+        private final long enqueuedAtNanos = System.nanoTime();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private PendingRequest(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    /**
+     * Runs the service until the process is stopped.
+     * Optional args: port, workers (default from face-recognition.properties).
+     */
+    public static void main(String[] args) {
+        FaceIdentificationServer server = args.length > 0
+                ? new FaceIdentificationServer(Integer.parseInt(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 0)
+                : new FaceIdentificationServer();
+        try {
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "face-server-shutdown"));
+        } catch (Exception e) {
+            System.err.println("✗ Failed to start face identification server: " + e.getMessage());
+            e.printStackTrace();
+            server.stop();
+            System.exit(1);
+        }
+    }
+}
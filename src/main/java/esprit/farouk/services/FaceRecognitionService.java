@@ -1,75 +1,295 @@
 package esprit.farouk.services;
 
+import esprit.farouk.config.FaceMetric;
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.config.InferenceSettings;
+import esprit.farouk.models.DetectedFace;
+import esprit.farouk.models.DuplicateFaceCheck;
 import esprit.farouk.models.FaceEmbedding;
-import esprit.farouk.models.User;
-import esprit.farouk.utils.FaceUtils;
+import esprit.farouk.models.FaceMatch;
+import esprit.farouk.utils.CameraFeed;
+import esprit.farouk.utils.EmbeddingMath;
+import esprit.farouk.utils.FaceQualityScorer;
+import esprit.farouk.utils.NativeMemoryMetrics;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.FrameGrabber;
 import org.bytedeco.javacv.OpenCVFrameConverter;
 import org.bytedeco.opencv.opencv_core.*;
+import org.bytedeco.opencv.opencv_dnn.Net;
 import org.bytedeco.opencv.opencv_objdetect.FaceDetectorYN;
 import org.bytedeco.opencv.opencv_objdetect.FaceRecognizerSF;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_32F;
+import static org.bytedeco.opencv.global.opencv_core.setNumThreads;
+import static org.bytedeco.opencv.global.opencv_dnn.blobFromImages;
+import static org.bytedeco.opencv.global.opencv_dnn.readNetFromONNX;
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
 
 /**
  * Face recognition service using OpenCV DNN models.
  * Handles face detection, feature extraction, and authentication.
+ *
+ * The native buffers of each pipeline stage (detections, aligned crop, feature)
+ * are allocated once and reused for every frame, and released by dispose().
+ * An instance is therefore not thread-safe; each controller owns its own.
  */
 public class FaceRecognitionService {
     private static final String DETECTION_MODEL_PATH = "models/face_detection_yunet_2023mar.onnx";
     private static final String RECOGNITION_MODEL_PATH = "models/face_recognition_sface_2021dec.onnx";
-    private static final double RECOGNITION_THRESHOLD = 7.0; // Euclidean distance threshold (higher = more lenient)
+
+    // Tracking: the region searched around the last face, relative to its size, and its detector input
+    private static final double ROI_MARGIN = 0.5;
+    private static final int ROI_DETECT_SIZE = 160;
+    private static final int MIN_ROI_SIZE = 32;
+    private static final long TRACK_MAX_AGE_NANOS = 500_000_000L;
+
+    // Best-shot capture stops early once every kept shot is at least this good
+    private static final double GOOD_SHOT_QUALITY = 0.7;
+
+    // Burst enrollment: candidates kept, minimum spacing of embeddings, and the largest head turn accepted
+    private static final int ENROLL_POOL_SIZE = 24;
+    // Other users looked up per capture by the duplicate check
+    private static final int DUPLICATE_CANDIDATES = 3;
+    private static final long ENROLL_EMBED_INTERVAL_MS = 80;
+    private static final double ENROLL_MAX_POSE = 0.35;
 
     private FaceDetectorYN faceDetector;
     private FaceRecognizerSF faceRecognizer;
+    private Net recognitionNet; // SFace as a plain network, loaded on the first batch
+    private boolean batchEmbedding = true;
     private OpenCVFrameConverter.ToMat converter;
 
+    private InferenceSettings settings;
+    private int detectWidth;
+    private final boolean trackingEnabled = Boolean.parseBoolean(FaceRecognitionConfig.getString(FaceRecognitionConfig.DETECT_TRACKING, "true"));
+    private final int redetectInterval = FaceRecognitionConfig.getInt(FaceRecognitionConfig.DETECT_REDETECT_INTERVAL, 10, 1, 1000);
+    private final int bestShotFrames = FaceRecognitionConfig.getInt(FaceRecognitionConfig.BESTSHOT_FRAMES, 10, 1, 100);
+    private final int bestShotCount = FaceRecognitionConfig.getInt(FaceRecognitionConfig.BESTSHOT_SHOTS, 3, 1, 10);
+    private final double minShotQuality = FaceRecognitionConfig.getDouble(FaceRecognitionConfig.BESTSHOT_MIN_QUALITY, 0.2);
+
+    // Last tracked face box in frame coordinates (width 0 = nothing tracked)
+    private int trackedX;
+    private int trackedY;
+    private int trackedWidth;
+    private int trackedHeight;
+    private long trackedAtNanos;
+    private int framesSinceFullDetection;
+
+    // Reused per-stage buffers; OpenCV only reallocates them when the shape changes
+    private final Mat scaled = new Mat();
+    private final Mat detections = new Mat();
+    private final Mat faces = new Mat();
+    private final Mat alignedFace = new Mat();
+    private final Mat feature = new Mat();
+    private final Mat faceRow = new Mat(1, 15, CV_32F);
+    private final List<Mat> alignedBatch = new ArrayList<>();
+    private final Mat batchBlob = new Mat();
+    private final FaceQualityScorer qualityScorer = new FaceQualityScorer();
+    private int inputWidth = -1;
+    private int inputHeight = -1;
+    private FaceTemplateService templateService; // created on the first 1:1 verification without a loaded gallery
+
     /**
-     * Initializes face detection and recognition models.
+     * Initializes face detection and recognition models with the configured inference settings.
      *
      * @throws Exception if models cannot be loaded
      */
     public void initialize() throws Exception {
-        System.out.println("Loading face recognition models...");
+        initialize(InferenceSettings.fromConfig());
+    }
+
+    /**
+     * Initializes face detection and recognition models.
+     *
+     * @param settings DNN backend and target, threads, detector input width and thresholds
+     * @throws Exception if models cannot be loaded
+     */
+    public void initialize(InferenceSettings settings) throws Exception {
+        System.out.println("Loading face recognition models (" + settings + ")...");
+        this.settings = settings;
+        this.detectWidth = settings.getDetectWidth();
+        if (settings.getThreads() > 0) {
+            setNumThreads(settings.getThreads());
+        }
 
         // Initialize face detector (YuNet)
-        faceDetector = FaceDetectorYN.create(
-                DETECTION_MODEL_PATH,
-                "",
-                new Size(320, 320)
-        );
-        faceDetector.setScoreThreshold(0.6f);
-        faceDetector.setNMSThreshold(0.3f);
+        faceDetector = createDetector(settings);
 
         // Initialize face recognizer (SFace)
-        faceRecognizer = FaceRecognizerSF.create(RECOGNITION_MODEL_PATH, "");
+        faceRecognizer = createRecognizer(settings);
 
         converter = new OpenCVFrameConverter.ToMat();
 
         System.out.println("Face recognition models loaded successfully");
     }
 
+    /**
+     * Creates a YuNet detector; its input size is set per frame
+     */
+    static FaceDetectorYN createDetector(InferenceSettings settings) {
+        try (Size initialSize = new Size(320, 320)) {
+            return FaceDetectorYN.create(
+                    DETECTION_MODEL_PATH,
+                    "",
+                    initialSize,
+                    settings.getScoreThreshold(),
+                    settings.getNmsThreshold(),
+                    settings.getTopK(),
+                    settings.getBackendId(),
+                    settings.getTargetId()
+            );
+        }
+    }
+
+    /**
+     * Creates an SFace recognizer
+     */
+    static FaceRecognizerSF createRecognizer(InferenceSettings settings) {
+        return FaceRecognizerSF.create(RECOGNITION_MODEL_PATH, "", settings.getBackendId(), settings.getTargetId());
+    }
+
     /**
      * Detects face in the given frame.
      *
+     * The detector runs on a copy downscaled to face.detect.width, and the boxes
+     * and landmarks are mapped back to full resolution for alignment. While a
+     * face is being tracked, the next frames only search a small region around
+     * the last box; the whole frame is searched again every
+     * face.detect.redetect_interval frames, when the face is lost, or when the
+     * last detection is too old to belong to the same stream.
+     *
      * @param frame Input image as Mat
-     * @return Mat containing face coordinates, or null if no face detected
+     * @return Mat containing face coordinates, or null if no face detected.
+     *         The Mat belongs to this service and is overwritten by the next call.
      */
     public Mat detectFace(Mat frame) {
         if (faceDetector == null) {
             throw new IllegalStateException("Face detector not initialized");
         }
 
-        faceDetector.setInputSize(new Size(frame.cols(), frame.rows()));
-        Mat faces = new Mat();
-        faceDetector.detect(frame, faces);
+        long now = System.nanoTime();
+        boolean tracked = trackingEnabled && trackedWidth > 0
+                && framesSinceFullDetection < redetectInterval
+                && now - trackedAtNanos < TRACK_MAX_AGE_NANOS;
+        if (tracked && detectInRoi(frame)) {
+            framesSinceFullDetection++;
+        } else if (detectInRegion(frame, 0, 0, frame.cols(), frame.rows(), detectWidth, detectWidth)) {
+            framesSinceFullDetection = 0;
+        } else {
+            resetTracking();
+            return null;
+        }
+        trackFirstFace(now);
+        return faces;
+    }
+
+    /**
+     * Forgets the tracked face so the next detection searches the whole frame.
+     * Call when switching to another camera or stream.
+     */
+    public void resetTracking() {
+        trackedWidth = 0;
+        trackedHeight = 0;
+    }
+
+    /**
+     * Searches a square around the last box, about twice the face size, downscaled to ROI_DETECT_SIZE.
+     */
+    private boolean detectInRoi(Mat frame) {
+        int side = (int) (Math.max(trackedWidth, trackedHeight) * (1 + 2 * ROI_MARGIN));
+        int centerX = trackedX + trackedWidth / 2;
+        int centerY = trackedY + trackedHeight / 2;
+        int x = Math.max(0, centerX - side / 2);
+        int y = Math.max(0, centerY - side / 2);
+        int width = Math.min(frame.cols(), centerX + side / 2) - x;
+        int height = Math.min(frame.rows(), centerY + side / 2) - y;
+        if (width < MIN_ROI_SIZE || height < MIN_ROI_SIZE) {
+            return false;
+        }
+        return detectInRegion(frame, x, y, width, height, ROI_DETECT_SIZE, ROI_DETECT_SIZE);
+    }
+
+    /**
+     * Runs the detector on one region of the frame, scaled down to fit maxWidth x maxHeight
+     * (0 = no scaling), and writes the detections into faces in frame coordinates.
+     *
+     * @return true if at least one face was found
+     */
+    private boolean detectInRegion(Mat frame, int x, int y, int width, int height, int maxWidth, int maxHeight) {
+        boolean whole = x == 0 && y == 0 && width == frame.cols() && height == frame.rows();
+        double scale = 1.0;
+        if (maxWidth > 0 && maxHeight > 0) {
+            scale = Math.min(1.0, Math.min((double) maxWidth / width, (double) maxHeight / height));
+        }
+        int inputCols = Math.max(1, (int) Math.round(width * scale));
+        int inputRows = Math.max(1, (int) Math.round(height * scale));
+
+        try (Rect rect = new Rect(x, y, width, height);
+             Mat region = whole ? null : new Mat(frame, rect)) { // header over the frame's pixels, no copy
+            Mat source = whole ? frame : region;
+            Mat input = source;
+            if (inputCols != width || inputRows != height) {
+                try (Size size = new Size(inputCols, inputRows)) {
+                    resize(source, scaled, size, 0, 0, INTER_AREA);
+                }
+                input = scaled;
+            }
+
+            // The detector must be told the exact input size; it only changes between full and ROI passes
+            if (inputCols != inputWidth || inputRows != inputHeight) {
+                try (Size inputSize = new Size(inputCols, inputRows)) {
+                    faceDetector.setInputSize(inputSize);
+                }
+                inputWidth = inputCols;
+                inputHeight = inputRows;
+            }
+            faceDetector.detect(input, detections);
+        }
+        if (detections.rows() == 0) {
+            return false;
+        }
 
-        if (faces.rows() > 0) {
-            return faces;
+        // Columns 0-13 are x, y, w, h and five landmark (x, y) pairs; column 14 is the score
+        detections.copyTo(faces);
+        double inverseX = (double) width / inputCols;
+        double inverseY = (double) height / inputRows;
+        try (FloatIndexer indexer = faces.createIndexer()) {
+            for (int row = 0; row < faces.rows(); row++) {
+                for (int col = 0; col < 14; col++) {
+                    boolean isX = col % 2 == 0;
+                    boolean isSize = col == 2 || col == 3;
+                    double value = indexer.get(row, col) * (isX ? inverseX : inverseY);
+                    if (!isSize) {
+                        value += isX ? x : y;
+                    }
+                    indexer.put(row, col, (float) value);
+                }
+            }
         }
+        return true;
+    }
 
-        return null;
+    private void trackFirstFace(long now) {
+        try (FloatIndexer indexer = faces.createIndexer()) {
+            trackedX = (int) indexer.get(0, 0);
+            trackedY = (int) indexer.get(0, 1);
+            trackedWidth = (int) indexer.get(0, 2);
+            trackedHeight = (int) indexer.get(0, 3);
+        }
+        trackedAtNanos = now;
     }
 
     /**
@@ -85,30 +305,378 @@ public class FaceRecognitionService {
         }
 
         // Extract face coordinates from first row
-        org.bytedeco.javacpp.FloatPointer facePtr = new org.bytedeco.javacpp.FloatPointer(faceBox.data());
-        int x = (int) facePtr.get(0);
-        int y = (int) facePtr.get(1);
-        int w = (int) facePtr.get(2);
-        int h = (int) facePtr.get(3);
+        try (FloatPointer facePtr = new FloatPointer(faceBox.data())) {
+            int x = (int) facePtr.get(0);
+            int y = (int) facePtr.get(1);
+            int w = (int) facePtr.get(2);
+            int h = (int) facePtr.get(3);
 
-        System.out.println("Face detected at: x=" + x + ", y=" + y + ", w=" + w + ", h=" + h);
+            System.out.println("Face detected at: x=" + x + ", y=" + y + ", w=" + w + ", h=" + h);
+        }
 
         // Align face
-        Mat alignedFace = new Mat();
         faceRecognizer.alignCrop(frame, faceBox, alignedFace);
 
         // Extract features (128D embedding)
-        Mat feature = new Mat();
         faceRecognizer.feature(alignedFace, feature);
 
-        // Convert Mat to float array
+        // Copy out of the reused feature buffer
         float[] embedding = new float[128];
-        org.bytedeco.javacpp.FloatPointer embPtr = new org.bytedeco.javacpp.FloatPointer(feature.data());
-        embPtr.get(embedding);
+        try (FloatPointer embPtr = new FloatPointer(feature.data())) {
+            embPtr.get(embedding);
+        }
 
         return embedding;
     }
 
+    /**
+     * Detects every face in the frame on a full pass (no tracking, which only
+     * follows one face), scaled down to at most maxWidth pixels wide.
+     *
+     * @param maxWidth Detector input width (0 = full resolution); larger finds smaller faces
+     * @return Mat with one row per face in frame coordinates, or null if none.
+     *         The Mat belongs to this service and is overwritten by the next call.
+     */
+    public Mat detectFaces(Mat frame, int maxWidth) {
+        if (faceDetector == null) {
+            throw new IllegalStateException("Face detector not initialized");
+        }
+        return detectInRegion(frame, 0, 0, frame.cols(), frame.rows(), maxWidth, maxWidth) ? faces : null;
+    }
+
+    /**
+     * Generates the embeddings of every detected face of a frame.
+     *
+     * Each face is aligned with FaceRecognizerSF.alignCrop, then all crops go
+     * through the SFace network in one forward pass, with the same preprocessing
+     * as FaceRecognizerSF.feature. If the network rejects a batch (the ONNX
+     * export may pin the batch size to 1), this falls back to one pass per face
+     * for the rest of the session.
+     *
+     * @param frame Input frame
+     * @param faceBoxes One detection row per face (see detectFaces)
+     * @return 128D embeddings, in the order of the rows
+     */
+    public List<float[]> generateEmbeddings(Mat frame, Mat faceBoxes) {
+        if (faceRecognizer == null) {
+            throw new IllegalStateException("Face recognizer not initialized");
+        }
+        int count = faceBoxes.rows();
+        alignFaces(frame, faceBoxes, 0);
+        return embedAligned(count);
+    }
+
+    /**
+     * Detects and embeds every face of several images. All faces of all images
+     * go through the recognition network in one batch, so a batch of requests
+     * costs one forward pass instead of one per face.
+     *
+     * @param frames Input images
+     * @param maxWidth Detector input width (0 = full resolution)
+     * @return One list per image, with the faces in detection order
+     */
+    public List<List<DetectedFace>> detectAndEmbed(List<Mat> frames, int maxWidth) {
+        if (faceRecognizer == null) {
+            throw new IllegalStateException("Face recognizer not initialized");
+        }
+        List<List<DetectedFace>> results = new ArrayList<>(frames.size());
+        List<DetectedFace> all = new ArrayList<>();
+        for (Mat frame : frames) {
+            List<DetectedFace> found = new ArrayList<>();
+            Mat boxes = detectFaces(frame, maxWidth);
+            if (boxes != null) {
+                // Align right away: the next detection overwrites the boxes
+                alignFaces(frame, boxes, all.size());
+                try (FloatIndexer indexer = boxes.createIndexer()) {
+                    for (int row = 0; row < boxes.rows(); row++) {
+                        found.add(new DetectedFace((int) indexer.get(row, 0), (int) indexer.get(row, 1),
+                                (int) indexer.get(row, 2), (int) indexer.get(row, 3), indexer.get(row, 14)));
+                    }
+                }
+            }
+            all.addAll(found);
+            results.add(found);
+        }
+
+        if (!all.isEmpty()) {
+            List<float[]> embeddings = embedAligned(all.size());
+            for (int i = 0; i < all.size(); i++) {
+                all.get(i).setEmbedding(embeddings.get(i));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Aligns each detected face into the batch buffers, starting at the given slot
+     */
+    private void alignFaces(Mat frame, Mat faceBoxes, int firstSlot) {
+        int count = faceBoxes.rows();
+        while (alignedBatch.size() < firstSlot + count) {
+            alignedBatch.add(new Mat());
+        }
+        for (int i = 0; i < count; i++) {
+            try (Mat box = faceBoxes.row(i)) {
+                faceRecognizer.alignCrop(frame, box, alignedBatch.get(firstSlot + i));
+            }
+        }
+    }
+
+    /**
+     * Embeds the first count aligned faces, batched when the network allows it
+     */
+    private List<float[]> embedAligned(int count) {
+        List<float[]> embeddings = new ArrayList<>(count);
+        if (count > 1 && batchEmbedding) {
+            try {
+                embedBatch(count, embeddings);
+                return embeddings;
+            } catch (RuntimeException e) {
+                System.err.println("✗ Batched SFace inference failed, embedding faces one by one: " + e.getMessage());
+                batchEmbedding = false;
+                embeddings.clear();
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            faceRecognizer.feature(alignedBatch.get(i), feature);
+            float[] embedding = new float[128];
+            try (FloatPointer embPtr = new FloatPointer(feature.data())) {
+                embPtr.get(embedding);
+            }
+            embeddings.add(embedding);
+        }
+        return embeddings;
+    }
+
+    private void embedBatch(int count, List<float[]> embeddings) {
+        if (recognitionNet == null) {
+            recognitionNet = readNetFromONNX(RECOGNITION_MODEL_PATH);
+            recognitionNet.setPreferableBackend(settings.getBackendId());
+            recognitionNet.setPreferableTarget(settings.getTargetId());
+        }
+        try (MatVector images = new MatVector(count);
+             Size size = new Size(112, 112);
+             Scalar mean = new Scalar(0.0)) {
+            for (int i = 0; i < count; i++) {
+                images.put(i, alignedBatch.get(i));
+            }
+            // Same as FaceRecognizerSF.feature: 112x112, no scaling or mean, BGR to RGB
+            try (Mat blob = blobFromImages(images, 1.0, size, mean, true, false, CV_32F)) {
+                blob.copyTo(batchBlob);
+            }
+        }
+        recognitionNet.setInput(batchBlob);
+        try (Mat output = recognitionNet.forward();
+             FloatIndexer indexer = output.createIndexer()) {
+            if (output.rows() != count || output.total() != (long) count * 128) {
+                throw new IllegalStateException("unexpected output shape " + output.rows() + "x" + output.cols());
+            }
+            for (int i = 0; i < count; i++) {
+                float[] embedding = new float[128];
+                for (int d = 0; d < embedding.length; d++) {
+                    embedding[d] = indexer.get(i, d);
+                }
+                embeddings.add(embedding);
+            }
+        }
+    }
+
+    /**
+     * Identifies several faces against the resident gallery at once; the
+     * searches run in parallel since the gallery allows concurrent readers.
+     *
+     * @param embeddings Embeddings from camera
+     * @return One entry per embedding: the match if it passes the recognition threshold, otherwise null
+     */
+    public List<FaceMatch> identifyAll(List<float[]> embeddings) {
+        FaceMetric metric = FaceRecognitionConfig.getMetric();
+        double threshold = FaceRecognitionConfig.getThreshold();
+        FaceGallery gallery = FaceGallery.getInstance();
+
+        return embeddings.parallelStream()
+                .map(embedding -> {
+                    FaceMatch match = gallery.findNearest(EmbeddingMath.normalize(embedding), metric);
+                    return match != null && metric.accepts(match.getScore(), threshold) ? match : null;
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Detects the first face of a frame and copies its detection row out of the
+     * service's reused buffer.
+     *
+     * @return x, y, w, h, five landmark (x, y) pairs and the score, or null if no face was detected
+     */
+    public float[] detectPrimaryFace(Mat frame) {
+        Mat detected = detectFace(frame);
+        if (detected == null) {
+            return null;
+        }
+        float[] detection = new float[15];
+        try (FloatIndexer indexer = detected.createIndexer()) {
+            for (int col = 0; col < detection.length; col++) {
+                detection[col] = indexer.get(0, col);
+            }
+        }
+        return detection;
+    }
+
+    /**
+     * Scores how usable a detected face is for recognition (see FaceQualityScorer).
+     *
+     * @return Quality in [0, 1]
+     */
+    public double scoreFace(Mat frame, float[] detection) {
+        return qualityScorer.score(frame, detection);
+    }
+
+    /**
+     * Picks the best shots of a face from the live stream and embeds only those.
+     *
+     * Up to face.bestshot.frames new frames are taken from the camera as they are
+     * captured. Each one goes through detection (tracked frames only search around
+     * the face) and FaceQualityScorer; only the face.bestshot.shots best frames
+     * above face.bestshot.min_quality are kept referenced, the others are released
+     * at once. Capture stops early when every kept shot is already good, and only
+     * the kept shots reach the recognition model.
+     *
+     * @param camera        Running camera
+     * @param timeoutMillis Maximum time spent collecting frames
+     * @return Embeddings of the best shots, best first; empty if no usable face was seen
+     */
+    public List<float[]> captureBestShots(CameraFeed camera, long timeoutMillis) throws InterruptedException {
+        List<BestShot> shots = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long afterSequence = camera.lastSequence();
+        int framesSeen = 0;
+        int framesWithFace = 0;
+
+        try {
+            while (framesSeen < bestShotFrames) {
+                long remaining = deadline - System.currentTimeMillis();
+                CameraFeed.CapturedFrame frame = remaining > 0 ? camera.acquireNext(afterSequence, remaining) : null;
+                if (frame == null) {
+                    break;
+                }
+                afterSequence = frame.getSequence();
+                framesSeen++;
+
+                float[] detection = detectPrimaryFace(frame.getMat());
+                if (detection == null) {
+                    frame.close();
+                    continue;
+                }
+                framesWithFace++;
+                double quality = scoreFace(frame.getMat(), detection);
+                if (quality < minShotQuality) {
+                    frame.close();
+                    continue;
+                }
+
+                shots.add(new BestShot(frame, detection, quality));
+                shots.sort(Comparator.comparingDouble((BestShot shot) -> shot.quality).reversed());
+                if (shots.size() > bestShotCount) {
+                    shots.remove(shots.size() - 1).frame.close();
+                }
+                if (shots.size() == bestShotCount && shots.get(shots.size() - 1).quality >= GOOD_SHOT_QUALITY) {
+                    break;
+                }
+            }
+
+            List<float[]> embeddings = new ArrayList<>();
+            for (BestShot shot : shots) {
+                try (FloatIndexer indexer = faceRow.createIndexer()) {
+                    for (int col = 0; col < shot.detection.length; col++) {
+                        indexer.put(0, col, shot.detection[col]);
+                    }
+                }
+                embeddings.add(generateEmbedding(shot.frame.getMat(), faceRow));
+            }
+            System.out.printf("Best-shot capture: %d frames, %d with a face, %d embedded (best quality %.2f)%n",
+                    framesSeen, framesWithFace, embeddings.size(), shots.isEmpty() ? 0.0 : shots.get(0).quality);
+            return embeddings;
+        } finally {
+            for (BestShot shot : shots) {
+                shot.frame.close();
+            }
+        }
+    }
+
+    /**
+     * Captures enrollment templates automatically from the live stream.
+     *
+     * For durationMillis (up to twice as long if fewer than count usable faces
+     * were seen), every frame goes through detection and FaceQualityScorer, without
+     * the pose factor since turned faces are wanted here. At most one good frame
+     * every 80 ms is embedded and offered to a DiverseCaptureSelector, and
+     * faces turned further than enrollment allows are skipped. The count captures
+     * most spread out by pose and embedding are returned.
+     *
+     * @param camera         Running camera
+     * @param count          Templates wanted
+     * @param durationMillis How long to sample
+     * @param onProgress     Called on this thread with the number of candidates so far (may be null)
+     * @return L2-normalized embeddings, best quality first; fewer than count if the face was not seen enough
+     */
+    public List<float[]> captureDiverseShots(CameraFeed camera, int count, long durationMillis, IntConsumer onProgress)
+            throws InterruptedException {
+        DiverseCaptureSelector selector = new DiverseCaptureSelector(ENROLL_POOL_SIZE);
+        long start = System.currentTimeMillis();
+        long deadline = start + durationMillis;
+        long hardDeadline = start + 2 * durationMillis;
+        long afterSequence = camera.lastSequence();
+        long lastEmbeddedAt = 0;
+        int framesSeen = 0;
+
+        while (true) {
+            long now = System.currentTimeMillis();
+            long until = selector.size() < count ? hardDeadline : deadline;
+            if (now >= until) {
+                break;
+            }
+            try (CameraFeed.CapturedFrame frame = camera.acquireNext(afterSequence, until - now)) {
+                if (frame == null) {
+                    break;
+                }
+                afterSequence = frame.getSequence();
+                framesSeen++;
+
+                float[] detection = detectPrimaryFace(frame.getMat());
+                if (detection == null || System.currentTimeMillis() - lastEmbeddedAt < ENROLL_EMBED_INTERVAL_MS) {
+                    continue;
+                }
+                double[] pose = FaceQualityScorer.pose(detection);
+                if (pose == null || Math.abs(pose[0]) > ENROLL_MAX_POSE || Math.abs(pose[1]) > ENROLL_MAX_POSE) {
+                    continue;
+                }
+                double quality = qualityScorer.imageScore(frame.getMat(), detection);
+                if (quality < minShotQuality) {
+                    continue;
+                }
+
+                try (FloatIndexer indexer = faceRow.createIndexer()) {
+                    for (int col = 0; col < detection.length; col++) {
+                        indexer.put(0, col, detection[col]);
+                    }
+                }
+                float[] embedding = EmbeddingMath.normalize(generateEmbedding(frame.getMat(), faceRow));
+                selector.offer(new DiverseCaptureSelector.Candidate(embedding, pose[0], pose[1], quality));
+                lastEmbeddedAt = System.currentTimeMillis();
+                if (onProgress != null) {
+                    onProgress.accept(selector.size());
+                }
+            }
+        }
+
+        List<float[]> embeddings = new ArrayList<>();
+        for (DiverseCaptureSelector.Candidate candidate : selector.select(count)) {
+            embeddings.add(candidate.getEmbedding());
+        }
+        System.out.printf("Burst enrollment: %d frames in %d ms, %d candidates, %d selected%n",
+                framesSeen, System.currentTimeMillis() - start, selector.size(), embeddings.size());
+        return embeddings;
+    }
+
     /**
      * Compares two face embeddings and returns similarity score.
      *
@@ -117,59 +685,242 @@ public class FaceRecognitionService {
      * @return Euclidean distance (lower = more similar)
      */
     public double compareEmbeddings(float[] embedding1, float[] embedding2) {
-        if (embedding1.length != embedding2.length) {
-            throw new IllegalArgumentException("Embeddings must have same dimension");
+        return EmbeddingMath.euclideanDistance(embedding1, embedding2);
+    }
+
+    /**
+     * Authenticates a captured face embedding against the resident face gallery.
+     * No database access happens here; blocked and un-enrolled
+     * users are already absent from the gallery.
+     *
+     * The metric and threshold come from FaceRecognitionConfig.
+     *
+     * @param capturedEmbedding Embedding from camera
+     * @return Best match if it passes the recognition threshold, otherwise null
+     */
+    public FaceMatch authenticateByFace(float[] capturedEmbedding) {
+        if (capturedEmbedding == null) {
+            return null;
         }
+        return authenticateByFace(List.of(capturedEmbedding));
+    }
 
-        double sum = 0.0;
-        for (int i = 0; i < embedding1.length; i++) {
-            double diff = embedding1[i] - embedding2[i];
-            sum += diff * diff;
+    /**
+     * Authenticates several shots of the same face (see captureBestShots) and fuses
+     * the decisions: each shot votes for its nearest user, the user needs a strict
+     * majority of the shots, and their scores are averaged before the threshold check.
+     *
+     * @param capturedEmbeddings Embeddings from camera
+     * @return Fused match if it passes the recognition threshold, otherwise null
+     */
+    public FaceMatch authenticateByFace(List<float[]> capturedEmbeddings) {
+        if (capturedEmbeddings == null || capturedEmbeddings.isEmpty()) {
+            return null;
+        }
+
+        FaceMetric metric = FaceRecognitionConfig.getMetric();
+        double threshold = FaceRecognitionConfig.getThreshold();
+
+        FaceGallery gallery = FaceGallery.getInstance();
+        List<FaceMatch> matches = new ArrayList<>();
+        for (float[] embedding : capturedEmbeddings) {
+            FaceMatch match = gallery.findNearest(EmbeddingMath.normalize(embedding), metric);
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+        FaceMatch bestMatch = fuseMatches(matches, capturedEmbeddings.size(), metric);
+        if (bestMatch == null) {
+            if (!matches.isEmpty()) {
+                System.out.println("Face not recognized. The " + capturedEmbeddings.size() + " shots disagree on the user");
+            }
+            return null;
         }
 
-        return Math.sqrt(sum);
+        if (metric.accepts(bestMatch.getScore(), threshold)) {
+            System.out.println("Face recognized! " + metric + " score: " + bestMatch.getScore() + " (threshold: " + threshold + ")");
+            return bestMatch;
+        } else {
+            System.out.println("Face not recognized. Best " + metric + " score: " + bestMatch.getScore() + " (threshold: " + threshold + ")");
+            return null;
+        }
     }
 
     /**
-     * Authenticates user by comparing face embedding against enrolled users.
+     * Verifies a captured face against one claimed user only (1:1), so latency and
+     * false-accept risk do not grow with the number of enrolled users.
      *
+     * Uses the resident gallery when it is loaded, so users it leaves out (blocked
+     * or inactive) are not verified. Before that, the user's templates are read
+     * with a single indexed lookup on face_templates.user_id, which does not look
+     * at the account status: the caller must still check that it is active.
+     *
+     * @param userId Claimed user
      * @param capturedEmbedding Embedding from camera
-     * @param enrolledUsers List of users with enrolled faces
-     * @return Matched User or null if no match found
+     * @return Match if it passes the recognition threshold, otherwise null
      */
-    public User authenticateByFace(float[] capturedEmbedding, List<User> enrolledUsers) {
-        if (capturedEmbedding == null || enrolledUsers == null || enrolledUsers.isEmpty()) {
+    public FaceMatch verifyFace(long userId, float[] capturedEmbedding) {
+        if (capturedEmbedding == null) {
             return null;
         }
+        return verifyFace(userId, List.of(capturedEmbedding));
+    }
 
-        User bestMatch = null;
-        double bestDistance = Double.MAX_VALUE;
+    /**
+     * Verifies several shots of the same face against one claimed user; the
+     * shots' scores are averaged before the threshold check.
+     *
+     * @param userId Claimed user
+     * @param capturedEmbeddings Embeddings from camera
+     * @return Fused match if it passes the recognition threshold, otherwise null
+     */
+    public FaceMatch verifyFace(long userId, List<float[]> capturedEmbeddings) {
+        if (capturedEmbeddings == null || capturedEmbeddings.isEmpty()) {
+            return null;
+        }
 
-        for (User user : enrolledUsers) {
-            if ("blocked".equals(user.getStatus())) {
-                continue; // Skip blocked users
+        FaceMetric metric = FaceRecognitionConfig.getMetric();
+        double threshold = FaceRecognitionConfig.getThreshold();
+
+        FaceGallery gallery = FaceGallery.getInstance();
+        List<FaceMatch> matches = new ArrayList<>();
+        for (float[] embedding : capturedEmbeddings) {
+            float[] query = EmbeddingMath.normalize(embedding);
+            // Once loaded, the gallery is authoritative: it leaves out blocked and inactive users on purpose
+            FaceMatch match = gallery.isLoaded()
+                    ? gallery.verifyUser(userId, query, metric)
+                    : verifyAgainstTemplates(userId, query, metric);
+            if (match == null) {
+                System.out.println("Face not verified: no templates for user ID " + userId);
+                return null;
             }
+            matches.add(match);
+        }
+        FaceMatch match = fuseMatches(matches, matches.size(), metric);
 
-            List<FaceEmbedding> userEmbeddings = FaceUtils.embeddingsFromJson(user.getFaceEmbeddings());
+        if (metric.accepts(match.getScore(), threshold)) {
+            System.out.println("Face verified for user ID " + userId + "! " + metric + " score: " + match.getScore() + " (threshold: " + threshold + ")");
+            return match;
+        } else {
+            System.out.println("Face not verified for user ID " + userId + ". " + metric + " score: " + match.getScore() + " (threshold: " + threshold + ")");
+            return null;
+        }
+    }
 
-            for (FaceEmbedding storedEmbedding : userEmbeddings) {
-                double distance = compareEmbeddings(capturedEmbedding, storedEmbedding.getEmbedding());
+    /**
+     * Checks new enrollment captures against every other enrolled user in the
+     * resident gallery, so one face does not end up under two accounts (which
+     * would make 1:N login ambiguous).
+     *
+     * Each capture looks up its closest other users with
+     * FaceGallery.findNearestUsers; every user found is then scored against all
+     * captures and the scores are averaged (as dot products). The best user is a
+     * duplicate when that average passes the recognition threshold. The caller
+     * must have loaded the gallery.
+     *
+     * @param userId User being enrolled; their own templates are ignored
+     * @param embeddings New captures
+     * @return Best and second-best other users with the margin between them
+     */
+    public DuplicateFaceCheck checkDuplicateIdentity(long userId, List<float[]> embeddings) {
+        FaceMetric metric = FaceRecognitionConfig.getMetric();
+        double threshold = FaceRecognitionConfig.getThreshold();
+        FaceGallery gallery = FaceGallery.getInstance();
+
+        List<float[]> queries = new ArrayList<>();
+        Set<Long> candidates = new LinkedHashSet<>();
+        for (float[] embedding : embeddings) {
+            float[] query = EmbeddingMath.normalize(embedding);
+            queries.add(query);
+            for (FaceMatch match : gallery.findNearestUsers(query, metric, DUPLICATE_CANDIDATES, userId)) {
+                candidates.add(match.getUserId());
+            }
+        }
 
-                if (distance < bestDistance) {
-                    bestDistance = distance;
-                    bestMatch = user;
+        List<FaceMatch> averaged = new ArrayList<>();
+        for (long candidate : candidates) {
+            double dotSum = 0;
+            int scored = 0;
+            for (float[] query : queries) {
+                FaceMatch match = gallery.verifyUser(candidate, query, metric);
+                if (match != null) {
+                    dotSum += metric.toDot(match.getScore());
+                    scored++;
                 }
             }
+            if (scored > 0) {
+                averaged.add(new FaceMatch(candidate, dotSum / scored));
+            }
         }
+        averaged.sort(Comparator.comparingDouble(FaceMatch::getScore).reversed());
 
-        // Check if best match is below threshold
-        if (bestDistance < RECOGNITION_THRESHOLD) {
-            System.out.println("Face recognized! Distance: " + bestDistance + " (threshold: " + RECOGNITION_THRESHOLD + ")");
-            return bestMatch;
-        } else {
-            System.out.println("Face not recognized. Best distance: " + bestDistance + " (threshold: " + RECOGNITION_THRESHOLD + ")");
+        FaceMatch best = averaged.isEmpty() ? null : averaged.get(0);
+        FaceMatch second = averaged.size() < 2 ? null : averaged.get(1);
+        for (FaceMatch match : averaged) {
+            match.setScore(metric.fromDot(match.getScore()));
+        }
+        double margin = best != null && second != null ? Math.abs(best.getScore() - second.getScore()) : Double.NaN;
+        boolean duplicate = best != null && metric.accepts(best.getScore(), threshold);
+
+        DuplicateFaceCheck check = new DuplicateFaceCheck(best, second, margin, duplicate);
+        if (best != null) {
+            System.out.println((duplicate ? "✗ Face of user ID " + userId + " matches user ID " : "✓ Closest other user ID ")
+                    + best.getUserId() + ", " + metric + " score: " + best.getScore() + " (threshold: " + threshold + ")"
+                    + (second != null ? ", margin to next user ID " + second.getUserId() + ": " + margin : ""));
+        }
+        return check;
+    }
+
+    /**
+     * Fuses per-shot matches: the user with the most votes wins (ties go to the
+     * better mean score) if they hold a strict majority of all shots. The fused
+     * score is the mean of that user's scores, averaged as dot products.
+     *
+     * @return Fused match, or null without a majority
+     */
+    private static FaceMatch fuseMatches(List<FaceMatch> matches, int shotCount, FaceMetric metric) {
+        Map<Long, int[]> votes = new HashMap<>();
+        Map<Long, Double> dotSums = new HashMap<>();
+        for (FaceMatch match : matches) {
+            votes.computeIfAbsent(match.getUserId(), id -> new int[1])[0]++;
+            dotSums.merge(match.getUserId(), metric.toDot(match.getScore()), Double::sum);
+        }
+
+        long bestUser = -1;
+        int bestVotes = 0;
+        double bestMeanDot = -Double.MAX_VALUE;
+        for (Map.Entry<Long, int[]> entry : votes.entrySet()) {
+            int userVotes = entry.getValue()[0];
+            double meanDot = dotSums.get(entry.getKey()) / userVotes;
+            if (userVotes > bestVotes || (userVotes == bestVotes && meanDot > bestMeanDot)) {
+                bestUser = entry.getKey();
+                bestVotes = userVotes;
+                bestMeanDot = meanDot;
+            }
+        }
+        if (bestVotes * 2 <= shotCount) {
             return null;
         }
+        return new FaceMatch(bestUser, metric.fromDot(bestMeanDot));
+    }
+
+    private FaceMatch verifyAgainstTemplates(long userId, float[] query, FaceMetric metric) {
+        if (templateService == null) {
+            templateService = new FaceTemplateService();
+        }
+        List<FaceEmbedding> templates = templateService.getByUserId(userId);
+        if (templates.isEmpty()) {
+            return null;
+        }
+        float bestDot = -Float.MAX_VALUE;
+        for (FaceEmbedding template : templates) {
+            float[] normalized = EmbeddingMath.normalize(template.getEmbedding());
+            if (normalized.length != query.length) {
+                continue;
+            }
+            bestDot = Math.max(bestDot, EmbeddingMath.dot(query, 0, normalized, 0, normalized.length));
+        }
+        return new FaceMatch(userId, metric.fromDot(bestDot));
     }
 
     /**
@@ -194,14 +945,52 @@ public class FaceRecognitionService {
     }
 
     /**
-     * Cleanup resources.
+     * Cleanup resources. Releases the models and every reused native buffer.
      */
     public void dispose() {
         if (faceDetector != null) {
             faceDetector.close();
+            faceDetector = null;
         }
         if (faceRecognizer != null) {
             faceRecognizer.close();
+            faceRecognizer = null;
+        }
+        if (converter != null) {
+            converter.close();
+            converter = null;
+        }
+        scaled.close();
+        detections.close();
+        faces.close();
+        alignedFace.close();
+        feature.close();
+        faceRow.close();
+        for (Mat aligned : alignedBatch) {
+            aligned.close();
+        }
+        alignedBatch.clear();
+        batchBlob.close();
+        if (recognitionNet != null) {
+            recognitionNet.close();
+            recognitionNet = null;
+        }
+        qualityScorer.close();
+        System.out.println("✓ Face recognition models released. " + NativeMemoryMetrics.summary());
+    }
+
+    /**
+     * A kept frame (still referenced) with its detection and quality
+     */
+    private static final class BestShot {
+        final CameraFeed.CapturedFrame frame;
+        final float[] detection;
+        final double quality;
+
+        BestShot(CameraFeed.CapturedFrame frame, float[] detection, double quality) {
+            this.frame = frame;
+            this.detection = detection;
+            this.quality = quality;
         }
     }
 }
@@ -0,0 +1,74 @@
+package esprit.farouk.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed pool of initialized FaceRecognitionService instances.
+ *
+ * The OpenCV detector and recognizer are not thread-safe, so concurrent
+ * pipelines each borrow their own instance: acquire() blocks until one is
+ * free and release() hands it back. close() disposes every instance.
+ */
+public class FaceServicePool implements AutoCloseable {
+    private final List<FaceRecognitionService> services = new ArrayList<>();
+    private final BlockingQueue<FaceRecognitionService> idle;
+
+    /**
+     * Creates and initializes the instances.
+     *
+     * @param size Number of instances
+     * @throws Exception if the models cannot be loaded; instances already created are disposed
+     */
+    public FaceServicePool(int size) throws Exception {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                FaceRecognitionService service = new FaceRecognitionService();
+                services.add(service); // before initialize(), so close() also frees a half-initialized one
+                service.initialize();
+                idle.add(service);
+            }
+        } catch (Exception e) {
+            close();
+            throw e;
+        }
+        System.out.println("✓ Face service pool ready: " + size + " instance(s)");
+    }
+
+    /**
+     * Borrows an instance, waiting until one is free
+     */
+    public FaceRecognitionService acquire() throws InterruptedException {
+        return idle.take();
+    }
+
+    /**
+     * Returns a borrowed instance to the pool
+     */
+    public void release(FaceRecognitionService service) {
+        idle.offer(service);
+    }
+
+    public int size() {
+        return services.size();
+    }
+
+    public int idleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        for (FaceRecognitionService service : services) {
+            service.dispose();
+        }
+        services.clear();
+        idle.clear();
+    }
+}
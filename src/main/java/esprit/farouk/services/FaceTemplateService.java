@@ -0,0 +1,226 @@
+package esprit.farouk.services;
+
+import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.utils.FaceUtils;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores face templates in the face_templates table, one row per capture.
+ *
+ * Each row holds the embedding as a little-endian float BLOB (see FaceUtils.embeddingToBytes)
+ * tagged with the recognition model that produced it. Templates from another model
+ * version are not comparable and are ignored when reading.
+ *
+ * The table is created on first use. Users still holding Base64 JSON in
+ * users.face_embeddings are migrated into it by migrateLegacyEmbeddings(), a
+ * one-time startup step run in the background.
+ */
+public class FaceTemplateService {
+    /** Tag of the embeddings produced by FaceRecognitionService's SFace model */
+    public static final String MODEL_VERSION = "sface_2021dec";
+
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS face_templates (" +
+            "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+            "user_id BIGINT NOT NULL, " +
+            "model_version VARCHAR(32) NOT NULL, " +
+            "embedding BLOB NOT NULL, " +
+            "captured_at DATETIME NOT NULL, " +
+            "INDEX idx_face_templates_user (user_id, model_version))";
+
+    private static volatile boolean schemaReady = false;
+    private static final Object MIGRATION_LOCK = new Object();
+    private static boolean migrationDone = false; // guarded by MIGRATION_LOCK
+
+    private Connection connection;
+
+    public FaceTemplateService() {
+        this.connection = DatabaseConnection.getConnection();
+        ensureSchema();
+    }
+
+    /**
+     * Replaces all templates of a user.
+     *
+     * @param tx Connection of the caller's transaction (see DatabaseConnection.openConnection)
+     */
+    public void replaceTemplates(Connection tx, long userId, List<FaceEmbedding> embeddings) throws SQLException {
+        deleteByUserId(tx, userId);
+
+        String sql = "INSERT INTO face_templates (user_id, model_version, embedding, captured_at) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = tx.prepareStatement(sql)) {
+            for (FaceEmbedding embedding : embeddings) {
+                stmt.setLong(1, userId);
+                stmt.setString(2, MODEL_VERSION);
+                stmt.setBytes(3, FaceUtils.embeddingToBytes(embedding.getEmbedding()));
+                stmt.setTimestamp(4, Timestamp.valueOf(embedding.getCapturedAt()));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Deletes all templates of a user.
+     *
+     * @param tx Connection of the caller's transaction (see DatabaseConnection.openConnection)
+     */
+    public void deleteByUserId(Connection tx, long userId) throws SQLException {
+        String sql = "DELETE FROM face_templates WHERE user_id = ?";
+        try (PreparedStatement stmt = tx.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Gets the current-model templates of one user.
+     */
+    public List<FaceEmbedding> getByUserId(long userId) {
+        List<FaceEmbedding> templates = getByUserIds(List.of(userId)).get(userId);
+        return templates != null ? templates : new ArrayList<>();
+    }
+
+    /**
+     * Gets the current-model templates of the given users, keyed by user ID.
+     * Queries in batches to keep the IN list bounded.
+     */
+    public Map<Long, List<FaceEmbedding>> getByUserIds(List<Long> userIds) {
+        Map<Long, List<FaceEmbedding>> templates = new LinkedHashMap<>();
+        final int batchSize = 500;
+
+        for (int from = 0; from < userIds.size(); from += batchSize) {
+            List<Long> batch = userIds.subList(from, Math.min(from + batchSize, userIds.size()));
+            String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+            String sql = "SELECT user_id, embedding, captured_at FROM face_templates " +
+                         "WHERE user_id IN (" + placeholders + ") AND model_version = ? ORDER BY user_id, id";
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    stmt.setLong(i + 1, batch.get(i));
+                }
+                stmt.setString(batch.size() + 1, MODEL_VERSION);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    FaceEmbedding embedding = new FaceEmbedding(
+                            FaceUtils.embeddingFromBytes(rs.getBytes("embedding")),
+                            rs.getTimestamp("captured_at").toLocalDateTime());
+                    templates.computeIfAbsent(rs.getLong("user_id"), id -> new ArrayList<>()).add(embedding);
+                }
+            } catch (SQLException e) {
+                System.err.println("✗ Failed to get face templates: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * Checks if a user has any current-model template
+     */
+    public boolean hasTemplates(long userId) {
+        String sql = "SELECT 1 FROM face_templates WHERE user_id = ? AND model_version = ? LIMIT 1";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            stmt.setString(2, MODEL_VERSION);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next();
+        } catch (SQLException e) {
+            System.err.println("✗ Failed to check face templates: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    // ============================================================
+    // Schema and migration
+    // ============================================================
+
+    private void ensureSchema() {
+        if (schemaReady || connection == null) {
+            return;
+        }
+        synchronized (FaceTemplateService.class) {
+            if (schemaReady) {
+                return;
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(CREATE_TABLE_SQL);
+                schemaReady = true;
+            } catch (SQLException e) {
+                System.err.println("✗ Failed to prepare face_templates table: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Moves Base64 JSON embeddings left in users.face_embeddings into face_templates,
+     * one transaction per user, then clears the legacy column. face_enrolled_at is
+     * kept so the gallery snapshot stays valid.
+     *
+     * Runs once per process and blocks, so call it off the FX thread: Main starts it
+     * in the background, and FaceGallery.ensureLoaded() calls it first so the gallery
+     * sees the migrated templates (waiting if the startup run is still going).
+     * A run that could not reach the database is retried by the next call.
+     */
+    public static void migrateLegacyEmbeddings() {
+        synchronized (MIGRATION_LOCK) {
+            if (migrationDone) {
+                return;
+            }
+            FaceTemplateService templates = new FaceTemplateService();
+            if (!schemaReady) {
+                return;
+            }
+            try (Connection tx = DatabaseConnection.openConnection()) {
+                templates.migrateLegacyEmbeddings(tx);
+                migrationDone = true;
+            } catch (SQLException e) {
+                System.err.println("✗ Failed to migrate legacy face embeddings: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void migrateLegacyEmbeddings(Connection tx) throws SQLException {
+        Map<Long, String> legacy = new LinkedHashMap<>();
+        String sql = "SELECT id, face_embeddings FROM users WHERE face_embeddings IS NOT NULL";
+        try (PreparedStatement stmt = tx.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                legacy.put(rs.getLong("id"), rs.getString("face_embeddings"));
+            }
+        }
+        if (legacy.isEmpty()) {
+            return;
+        }
+
+        int migrated = 0;
+        tx.setAutoCommit(false);
+        try (PreparedStatement clear = tx.prepareStatement(
+                "UPDATE users SET face_embeddings = NULL WHERE id = ?")) {
+            for (Map.Entry<Long, String> entry : legacy.entrySet()) {
+                try {
+                    replaceTemplates(tx, entry.getKey(), FaceUtils.embeddingsFromJson(entry.getValue()));
+                    clear.setLong(1, entry.getKey());
+                    clear.executeUpdate();
+                    tx.commit();
+                    migrated++;
+                } catch (SQLException | RuntimeException e) {
+                    // Malformed JSON or a failed write: leave this user's legacy data in place
+                    tx.rollback();
+                    System.err.println("✗ Failed to migrate face embeddings of user ID " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+        }
+        System.out.println("✓ Migrated face embeddings of " + migrated + "/" + legacy.size() + " users to face_templates");
+    }
+}
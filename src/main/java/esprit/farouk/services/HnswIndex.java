@@ -0,0 +1,539 @@
+package esprit.farouk.services;
+
+import esprit.farouk.utils.EmbeddingMath;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World graph over L2-normalized embeddings.
+ *
+ * Nodes are gallery slots; the index only stores graph links and reads the
+ * vectors from the matrix passed in by the caller, so it never duplicates the
+ * gallery. Distance is 1 - dot product. Deleted nodes are tombstoned: they stay
+ * in the graph for navigation (the entry point too) but are never returned, and
+ * a reused slot is unlinked from its old neighbours and re-inserted with fresh
+ * links. Reverse links are kept per node so that unlinking only touches the
+ * nodes that point to it, and a reused entry point hands over to its highest
+ * neighbour; neither walks the whole graph. Callers are responsible for locking
+ * (inserts and deletes exclusive, searches may run concurrently).
+ *
+ * Tuning: m (links per node) and efConstruction trade build time and memory for
+ * graph quality; efSearch trades query latency for recall.
+ */
+public class HnswIndex {
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    private int[][][] links = new int[0][][]; // links[node][level] = {count, neighbour...}; null = not in graph
+    private int[][] inbound = new int[0][];    // inbound[node] = {count, source...}, one entry per level linking to node
+    private boolean[] deleted = new boolean[0];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int liveCount = 0;
+    private int deletedCount = 0;
+
+    private final ThreadLocal<VisitedSet> visitedSets = ThreadLocal.withInitial(VisitedSet::new);
+
+    public HnswIndex(int dimension, int m, int efConstruction) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW m must be at least 2");
+        }
+        if (efConstruction < m) {
+            throw new IllegalArgumentException("HNSW efConstruction must be at least m");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    /**
+     * Inserts (or re-inserts, if the slot was reused) a node whose vector is
+     * stored at node * dimension in vectors.
+     */
+    public void insert(int node, float[] vectors) {
+        ensureCapacity(node + 1);
+
+        if (links[node] != null) {
+            // Reused slot: take the old node out of the graph entirely before linking the new vector
+            if (deleted[node]) {
+                deleted[node] = false;
+                deletedCount--;
+            } else {
+                liveCount--;
+            }
+            if (node == entryPoint) {
+                replaceEntryPoint(node);
+            }
+            unlink(node);
+            links[node] = null;
+        }
+
+        int start = entryPoint;
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        liveCount++;
+
+        if (start == -1) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int queryOffset = node * dimension;
+        int current = start;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vectors, vectors, queryOffset, current, l);
+        }
+
+        VisitedSet visited = visitedSets.get();
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap found = searchLayer(vectors, vectors, queryOffset, current, efConstruction, l, visited);
+            int[] sorted = found.drainAscending();
+            int[] selected = selectNeighbours(vectors, queryOffset, sorted, m, node);
+            int[] ownLinks = links[node][l];
+            ownLinks[0] = selected.length;
+            System.arraycopy(selected, 0, ownLinks, 1, selected.length);
+            for (int neighbour : selected) {
+                addInbound(neighbour, node);
+            }
+
+            for (int neighbour : selected) {
+                if (links[neighbour].length > l) {
+                    addLink(vectors, neighbour, node, l);
+                }
+            }
+            if (selected.length > 0) {
+                current = selected[0];
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Tombstones a node so it is no longer returned by searches. Constant time:
+     * the node keeps its links, and stays the entry point if it was one.
+     */
+    public void markDeleted(int node) {
+        if (node < links.length && links[node] != null && !deleted[node]) {
+            deleted[node] = true;
+            deletedCount++;
+            liveCount--;
+        }
+    }
+
+    /**
+     * Approximate k-nearest-neighbour search.
+     *
+     * @param query L2-normalized query vector
+     * @param vectors Gallery matrix the nodes refer to
+     * @param k Number of live nodes to return
+     * @param efSearch Size of the dynamic candidate list (>= k; larger = better recall, slower)
+     * @return Up to k live nodes, closest first
+     */
+    public int[] search(float[] query, float[] vectors, int k, int efSearch) {
+        if (entryPoint == -1 || liveCount == 0) {
+            return new int[0];
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, vectors, 0, current, l);
+        }
+
+        NodeHeap found = searchLayer(query, vectors, 0, current, Math.max(efSearch, k), 0, visitedSets.get());
+        int[] sorted = found.drainAscending();
+
+        int[] result = new int[Math.min(k, sorted.length)];
+        int count = 0;
+        for (int i = 0; i < sorted.length && count < result.length; i++) {
+            if (!deleted[sorted[i]]) {
+                result[count++] = sorted[i];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Number of live (non-deleted) nodes
+     */
+    public int size() {
+        return liveCount;
+    }
+
+    /**
+     * Number of tombstoned nodes still occupying the graph
+     */
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    // ============================================================
+    // Graph construction and traversal
+    // ============================================================
+
+    private int greedyClosest(float[] query, float[] vectors, int queryOffset, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, queryOffset, vectors, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[current].length > level ? links[current][level] : null;
+            if (neighbours == null) {
+                break;
+            }
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                float d = distance(query, queryOffset, vectors, candidate);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private NodeHeap searchLayer(float[] query, float[] vectors, int queryOffset, int entry, int ef, int level, VisitedSet visited) {
+        visited.reset(links.length);
+        NodeHeap candidates = new NodeHeap(ef * 2, false);
+        NodeHeap results = new NodeHeap(ef + 1, true);
+
+        float entryDistance = distance(query, queryOffset, vectors, entry);
+        candidates.push(entry, entryDistance);
+        results.push(entry, entryDistance);
+        visited.mark(entry);
+
+        while (candidates.size() > 0) {
+            float closest = candidates.peekDistance();
+            if (results.size() >= ef && closest > results.peekDistance()) {
+                break;
+            }
+            int current = candidates.pop();
+            if (links[current].length <= level) {
+                continue;
+            }
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!visited.mark(neighbour)) {
+                    continue;
+                }
+                float d = distance(query, queryOffset, vectors, neighbour);
+                if (results.size() < ef || d < results.peekDistance()) {
+                    candidates.push(neighbour, d);
+                    results.push(neighbour, d);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Neighbour selection heuristic: keeps a candidate only if it is closer to the
+     * base node than to every neighbour already selected, which keeps long-range
+     * links and makes the graph navigable on clustered data.
+     */
+    private int[] selectNeighbours(float[] vectors, int baseOffset, int[] candidatesAscending, int limit, int exclude) {
+        int[] selected = new int[limit];
+        int count = 0;
+        for (int candidate : candidatesAscending) {
+            if (candidate == exclude) {
+                continue;
+            }
+            float toBase = distance(vectors, baseOffset, vectors, candidate);
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(vectors, selected[i] * dimension, vectors, candidate) < toBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+                if (count == limit) {
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Moves the entry point off a node about to leave the graph, to whichever of
+     * its neighbours reaches the highest level (and lowers maxLevel to that level).
+     * Only an isolated node falls back to scanning the graph.
+     */
+    private void replaceEntryPoint(int node) {
+        int best = -1;
+        for (int[] neighbours : links[node]) {
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                if (best == -1 || links[candidate].length > links[best].length) {
+                    best = candidate;
+                }
+            }
+        }
+        if (best == -1) {
+            for (int n = 0; n < links.length; n++) {
+                if (n != node && links[n] != null && (best == -1 || links[n].length > links[best].length)) {
+                    best = n;
+                }
+            }
+        }
+        entryPoint = best;
+        maxLevel = best == -1 ? -1 : links[best].length - 1;
+    }
+
+    /**
+     * Removes every link pointing to a node, and the node's own links from the
+     * reverse lists. Links are not symmetric after pruning; the reverse lists
+     * say which nodes point here, so only those are touched.
+     */
+    private void unlink(int node) {
+        int[] sources = inbound[node];
+        if (sources != null) {
+            for (int i = 1; i <= sources[0]; i++) {
+                int source = sources[i];
+                for (int[] neighbours : links[source]) {
+                    removeOnce(neighbours, node);
+                }
+            }
+            inbound[node] = null;
+        }
+        for (int[] neighbours : links[node]) {
+            for (int i = 1; i <= neighbours[0]; i++) {
+                removeOnce(inbound[neighbours[i]], node);
+            }
+        }
+    }
+
+    private void addInbound(int node, int source) {
+        int[] sources = inbound[node];
+        if (sources == null) {
+            sources = new int[m + 1];
+        } else if (sources[0] == sources.length - 1) {
+            sources = Arrays.copyOf(sources, sources.length * 2);
+        }
+        sources[++sources[0]] = source;
+        inbound[node] = sources;
+    }
+
+    /**
+     * Removes one occurrence of value from a {count, value...} list
+     */
+    private static void removeOnce(int[] list, int value) {
+        if (list == null) {
+            return;
+        }
+        int count = list[0];
+        for (int i = 1; i <= count; i++) {
+            if (list[i] == value) {
+                list[i] = list[count];
+                list[0] = count - 1;
+                return;
+            }
+        }
+    }
+
+    private void addLink(float[] vectors, int from, int to, int level) {
+        int[] existing = links[from][level];
+        int count = existing[0];
+        for (int i = 1; i <= count; i++) {
+            if (existing[i] == to) {
+                return;
+            }
+        }
+
+        int limit = existing.length - 1;
+        if (count < limit) {
+            existing[count + 1] = to;
+            existing[0] = count + 1;
+            addInbound(to, from);
+            return;
+        }
+
+        // Over capacity: re-select the best links among the current ones plus the new node
+        int fromOffset = from * dimension;
+        NodeHeap heap = new NodeHeap(count + 1, false);
+        for (int i = 1; i <= count; i++) {
+            heap.push(existing[i], distance(vectors, fromOffset, vectors, existing[i]));
+        }
+        heap.push(to, distance(vectors, fromOffset, vectors, to));
+        int[] ascending = new int[heap.size()];
+        for (int i = 0; i < ascending.length; i++) {
+            ascending[i] = heap.pop();
+        }
+
+        int[] selected = selectNeighbours(vectors, fromOffset, ascending, limit, from);
+        for (int i = 1; i <= count; i++) {
+            if (!contains(selected, existing[i])) {
+                removeOnce(inbound[existing[i]], from); // pruned
+            }
+        }
+        if (contains(selected, to)) {
+            addInbound(to, from);
+        }
+        existing[0] = selected.length;
+        System.arraycopy(selected, 0, existing, 1, selected.length);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private float distance(float[] query, int queryOffset, float[] vectors, int node) {
+        return 1f - EmbeddingMath.dot(query, queryOffset, vectors, node * dimension, dimension);
+    }
+
+    private int randomLevel() {
+        double uniform = 1.0 - random.nextDouble(); // (0, 1]
+        return (int) (-Math.log(uniform) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > links.length) {
+            int capacity = Math.max(required, Math.max(16, links.length * 2));
+            links = Arrays.copyOf(links, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+            inbound = Arrays.copyOf(inbound, capacity);
+        }
+    }
+
+    /**
+     * Binary heap of (node, distance) pairs; a max-heap keeps the worst result on top,
+     * a min-heap keeps the closest candidate on top.
+     */
+    private static class NodeHeap {
+        private int[] nodes;
+        private float[] distances;
+        private int size = 0;
+        private final boolean max;
+
+        NodeHeap(int capacity, boolean max) {
+            this.nodes = new int[Math.max(capacity, 2)];
+            this.distances = new float[nodes.length];
+            this.max = max;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekDistance() {
+            return distances[0];
+        }
+
+        void push(int node, float distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(distance, distances[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                float distance = distances[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(distances[child + 1], distances[child])) {
+                        child++;
+                    }
+                    if (!before(distances[child], distance)) {
+                        break;
+                    }
+                    nodes[i] = nodes[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+                nodes[i] = node;
+                distances[i] = distance;
+            }
+            return top;
+        }
+
+        /** Empties a max-heap into an array ordered closest first. */
+        int[] drainAscending() {
+            int[] result = new int[size];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = pop();
+            }
+            return result;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+
+    /**
+     * Per-thread visited marks using a generation counter, so a search does not
+     * have to clear an array the size of the graph.
+     */
+    private static class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation = 0;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[capacity];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /** Marks a node; returns false if it was already visited in this search. */
+        boolean mark(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package esprit.farouk.services;
+
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.config.InferenceSettings;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_objdetect.FaceDetectorYN;
+import org.bytedeco.opencv.opencv_objdetect.FaceRecognizerSF;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_core.getNumThreads;
+import static org.bytedeco.opencv.global.opencv_core.setNumThreads;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * Inference Benchmark
+ * Measures face detection and feature extraction latency on this machine for
+ * each DNN backend/target, OpenCV thread count and detector input width, so
+ * the face.dnn.* and face.detect.width settings can be tuned per farm.
+ *
+ * Three passes, each keeping the fastest choice of the previous one:
+ * backend/target pairs at the configured threads and width, then thread
+ * counts, then detector widths. Each setting reports model load time, the
+ * first (warm-up) inference, and p50/p95 of the following runs. Pairs the
+ * local OpenCV build does not support are listed as unavailable.
+ *
+ * Usage: java -cp <classpath> esprit.farouk.services.InferenceBenchmark [image]
+ * Without an image, a random 640x480 frame is used: detection cost depends on
+ * the input size, not on the content.
+ */
+public class InferenceBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 30;
+    private static final String[][] DEVICES = {
+            {"default", "cpu"}, {"opencv", "cpu"}, {"openvino", "cpu"},
+            {"opencv", "opencl"}, {"opencv", "opencl_fp16"},
+            {"cuda", "cuda"}, {"cuda", "cuda_fp16"}, {"vulkan", "vulkan"}
+    };
+    private static final int[] DETECT_WIDTHS = {160, 240, 320, 480, 640, 960};
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("  FACE MODEL INFERENCE BENCHMARK");
+        System.out.println("========================================\n");
+
+        Mat image = args.length > 0 ? imread(args[0]) : syntheticFrame();
+        if (image == null || image.empty()) {
+            System.err.println("✗ Cannot read image: " + args[0]);
+            System.exit(1);
+        }
+        int defaultThreads = getNumThreads();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Image: " + (args.length > 0 ? args[0] : "random frame") + " (" + image.cols() + "x" + image.rows() + ")");
+        System.out.println("Processors: " + cores + ", OpenCV default threads: " + defaultThreads);
+        System.out.println("Runs per setting: " + WARMUP_RUNS + " warm-up + " + TIMED_RUNS + " timed\n");
+
+        InferenceSettings configured = InferenceSettings.fromConfig();
+        System.out.println("Configured: " + configured + "\n");
+        printHeader();
+
+        // Pass 1: backend/target at the configured threads and width
+        Result best = null;
+        for (String[] device : DEVICES) {
+            best = faster(best, run(configured.with(device[0], device[1], configured.getThreads(), configured.getDetectWidth()), image, defaultThreads));
+        }
+        if (best == null) {
+            System.err.println("\n✗ No backend could run the models (are the ONNX files in models/?)");
+            System.exit(1);
+        }
+
+        // Pass 2: thread counts on the fastest device
+        TreeSet<Integer> threadCounts = new TreeSet<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+        for (int threads : threadCounts) {
+            InferenceSettings settings = best.settings.with(best.settings.getBackend(), best.settings.getTarget(), threads, best.settings.getDetectWidth());
+            best = faster(best, run(settings, image, defaultThreads));
+        }
+
+        // Pass 3: detector widths on the fastest device and thread count
+        for (int width : DETECT_WIDTHS) {
+            if (width > image.cols()) {
+                break;
+            }
+            // Width trades speed for the smallest face found, so it is reported but never picked automatically
+            run(best.settings.with(best.settings.getBackend(), best.settings.getTarget(), best.settings.getThreads(), width), image, defaultThreads);
+        }
+        setNumThreads(defaultThreads);
+
+        System.out.println("\nFastest: " + best.settings + String.format(" (detection %.1f ms + feature %.1f ms at p50)",
+                best.detectP50, best.featureP50));
+        System.out.println("Suggested settings (face.detect.width is a trade-off: smaller is faster but misses distant faces):");
+        System.out.println("  " + FaceRecognitionConfig.DNN_BACKEND + "=" + best.settings.getBackend());
+        System.out.println("  " + FaceRecognitionConfig.DNN_TARGET + "=" + best.settings.getTarget());
+        System.out.println("  " + FaceRecognitionConfig.DNN_THREADS + "=" + best.settings.getThreads());
+        image.close();
+    }
+
+    /**
+     * Benchmarks one setting; returns null if the backend/target is not available
+     */
+    private static Result run(InferenceSettings settings, Mat image, int defaultThreads) {
+        setNumThreads(settings.getThreads() > 0 ? settings.getThreads() : defaultThreads);
+        Result result = new Result(settings);
+
+        long loadStart = System.nanoTime();
+        try (FaceDetectorYN detector = FaceRecognitionService.createDetector(settings);
+             FaceRecognizerSF recognizer = FaceRecognitionService.createRecognizer(settings);
+             Mat scaled = new Mat();
+             Mat faces = new Mat();
+             Mat crop = new Mat();
+             Mat feature = new Mat()) {
+            result.loadMillis = millis(System.nanoTime() - loadStart);
+
+            int width = settings.getDetectWidth() > 0 ? Math.min(settings.getDetectWidth(), image.cols()) : image.cols();
+            int height = Math.max(1, (int) Math.round((double) image.rows() * width / image.cols()));
+            try (Size size = new Size(width, height)) {
+                resize(image, scaled, size, 0, 0, INTER_AREA);
+                detector.setInputSize(size);
+            }
+            int side = Math.min(image.cols(), image.rows());
+            try (Rect center = new Rect((image.cols() - side) / 2, (image.rows() - side) / 2, side, side);
+                 Mat square = image.apply(center);
+                 Size cropSize = new Size(112, 112)) {
+                resize(square, crop, cropSize, 0, 0, INTER_AREA);
+            }
+
+            long[] detectNanos = new long[TIMED_RUNS];
+            long[] featureNanos = new long[TIMED_RUNS];
+            for (int run = -WARMUP_RUNS; run < TIMED_RUNS; run++) {
+                long start = System.nanoTime();
+                detector.detect(scaled, faces);
+                long detected = System.nanoTime();
+                recognizer.feature(crop, feature);
+                long embedded = System.nanoTime();
+                if (run == -WARMUP_RUNS) {
+                    result.firstMillis = millis(embedded - start);
+                } else if (run >= 0) {
+                    detectNanos[run] = detected - start;
+                    featureNanos[run] = embedded - detected;
+                }
+            }
+            Arrays.sort(detectNanos);
+            Arrays.sort(featureNanos);
+            result.detectP50 = millis(detectNanos[TIMED_RUNS / 2]);
+            result.detectP95 = millis(detectNanos[(int) (TIMED_RUNS * 0.95)]);
+            result.featureP50 = millis(featureNanos[TIMED_RUNS / 2]);
+            result.featureP95 = millis(featureNanos[(int) (TIMED_RUNS * 0.95)]);
+        } catch (RuntimeException e) {
+            System.out.printf("%-40s unavailable (%s)%n", settings, firstLine(e.getMessage()));
+            return null;
+        }
+
+        System.out.printf("%-40s %8.0f %9.1f %8.2f %8.2f %8.2f %8.2f%n", settings, result.loadMillis, result.firstMillis,
+                result.detectP50, result.detectP95, result.featureP50, result.featureP95);
+        return result;
+    }
+
+    private static void printHeader() {
+        System.out.printf("%-40s %8s %9s %8s %8s %8s %8s%n", "Setting", "load ms", "first ms",
+                "det p50", "det p95", "feat p50", "feat p95");
+        System.out.println("-".repeat(95));
+    }
+
+    private static Result faster(Result current, Result candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        if (current == null || candidate.detectP50 + candidate.featureP50 < current.detectP50 + current.featureP50) {
+            return candidate;
+        }
+        return current;
+    }
+
+    private static Mat syntheticFrame() {
+        Mat frame = new Mat(480, 640, CV_8UC3);
+        byte[] pixels = new byte[640 * 480 * 3];
+        new Random(1).nextBytes(pixels);
+        frame.data().put(pixels);
+        return frame;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String firstLine(String message) {
+        if (message == null) {
+            return "no message";
+        }
+        String trimmed = message.trim();
+        int newline = trimmed.indexOf('\n');
+        return newline >= 0 ? trimmed.substring(0, newline) : trimmed;
+    }
+
+    /**
+     * Timings of one setting, in milliseconds
+     */
+    private static class Result {
+        private final InferenceSettings settings;
+        private double loadMillis;
+        private double firstMillis;
+        private double detectP50;
+        private double detectP95;
+        private double featureP50;
+        private double featureP95;
+
+        private Result(InferenceSettings settings) {
+            this.settings = settings;
+        }
+    }
+}
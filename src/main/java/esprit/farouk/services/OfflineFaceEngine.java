@@ -0,0 +1,374 @@
+package esprit.farouk.services;
+
+import esprit.farouk.config.FaceMetric;
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.models.FaceMatch;
+import esprit.farouk.utils.EmbeddingMath;
+import esprit.farouk.utils.ImageDataset;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_COLOR;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+
+/**
+ * Runs the face login pipeline on image files instead of a camera:
+ * decode, detectFace, embedding and gallery match, on a pool of worker
+ * threads that each own their model instances (see FaceServicePool).
+ *
+ * main() benchmarks a directory (see ImageDataset for the layouts):
+ *   labelled   the first images of each person are enrolled into an
+ *              in-memory gallery, the others are identified against it;
+ *              reports throughput, stage latencies and accuracy
+ *   flat       every image is identified against the enrolled users'
+ *              gallery (needs the database); reports throughput and latencies
+ *
+ * Usage: java -cp <classpath> esprit.farouk.services.OfflineFaceEngine &lt;directory&gt; [workers] [enroll per person]
+ * With several workers, -Dface.dnn.threads=1 keeps OpenCV from
+ * oversubscribing the cores.
+ */
+public class OfflineFaceEngine implements AutoCloseable {
+
+    /**
+     * Outcome of one image
+     */
+    public enum Status {
+        EMBEDDED, UNREADABLE, NO_FACE, FAILED
+    }
+
+    /**
+     * One processed image: its embedding, nearest enrolled user and stage timings
+     */
+    public static class Result {
+        private final Path image;
+        private Status status;
+        private float[] embedding;
+        private FaceMatch nearest;
+        private boolean accepted;
+        private long decodeNanos;
+        private long detectNanos;
+        private long embedNanos;
+        private long matchNanos;
+
+        private Result(Path image) {
+            this.image = image;
+        }
+
+        public Path getImage() {
+            return image;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * L2-normalized embedding of the first face, or null
+         */
+        public float[] getEmbedding() {
+            return embedding;
+        }
+
+        /**
+         * Closest enrolled user whatever the score, or null if not matched
+         */
+        public FaceMatch getNearest() {
+            return nearest;
+        }
+
+        /**
+         * True if the nearest user passes the recognition threshold
+         */
+        public boolean isAccepted() {
+            return accepted;
+        }
+    }
+
+    private final FaceServicePool pool;
+    private final ExecutorService executor;
+
+    /**
+     * Loads one set of models per worker.
+     *
+     * @param workers Worker threads (0 = one per available processor)
+     * @throws Exception if the models cannot be loaded
+     */
+    public OfflineFaceEngine(int workers) throws Exception {
+        int size = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.pool = new FaceServicePool(size);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "offline-face-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getWorkers() {
+        return pool.size();
+    }
+
+    /**
+     * Runs the pipeline on every image in parallel.
+     *
+     * @param images Image files
+     * @param match Whether to search the gallery after embedding
+     * @return One result per image, in the same order
+     */
+    public List<Result> process(List<Path> images, boolean match) throws InterruptedException {
+        List<Future<Result>> futures = new ArrayList<>(images.size());
+        for (Path image : images) {
+            futures.add(executor.submit(() -> {
+                FaceRecognitionService service = pool.acquire();
+                try {
+                    return processImage(service, image, match);
+                } finally {
+                    pool.release(service);
+                }
+            }));
+        }
+        List<Result> results = new ArrayList<>(images.size());
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Offline pipeline failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static Result processImage(FaceRecognitionService service, Path image, boolean match) {
+        Result result = new Result(image);
+        long start = System.nanoTime();
+        try (Mat frame = imread(image.toString(), IMREAD_COLOR)) {
+            long decoded = System.nanoTime();
+            result.decodeNanos = decoded - start;
+            if (frame == null || frame.empty()) {
+                result.status = Status.UNREADABLE;
+                return result;
+            }
+
+            // Unrelated images: never search around the previous image's face
+            service.resetTracking();
+            Mat faces = service.detectFace(frame);
+            long detected = System.nanoTime();
+            result.detectNanos = detected - decoded;
+            if (faces == null) {
+                result.status = Status.NO_FACE;
+                return result;
+            }
+
+            // Same alignment and feature as generateEmbedding, without its per-face log line
+            float[] embedding;
+            try (Mat firstFace = faces.row(0)) {
+                embedding = service.generateEmbeddings(frame, firstFace).get(0);
+            }
+            long embedded = System.nanoTime();
+            result.embedNanos = embedded - detected;
+            result.embedding = EmbeddingMath.normalize(embedding);
+            result.status = Status.EMBEDDED;
+
+            if (match) {
+                FaceMetric metric = FaceRecognitionConfig.getMetric();
+                result.nearest = FaceGallery.getInstance().findNearest(result.embedding, metric);
+                result.accepted = result.nearest != null && metric.accepts(result.nearest.getScore(), FaceRecognitionConfig.getThreshold());
+                result.matchNanos = System.nanoTime() - embedded;
+            }
+        } catch (RuntimeException e) {
+            System.err.println("✗ Failed to process " + image + ": " + e.getMessage());
+            result.status = Status.FAILED;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        pool.close();
+    }
+
+    // ============================================================
+    // Command line benchmark
+    // ============================================================
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: OfflineFaceEngine <directory> [workers] [enroll per person]");
+            System.exit(2);
+        }
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int enrollPerPerson = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        System.out.println("========================================");
+        System.out.println("  OFFLINE FACE PIPELINE BENCHMARK");
+        System.out.println("========================================\n");
+
+        try {
+            ImageDataset dataset = ImageDataset.scan(Paths.get(args[0]));
+            System.out.println("Dataset: " + dataset.size() + " images"
+                    + (dataset.isLabelled() ? " of " + dataset.getLabels().size() + " people" : " (unlabelled)"));
+            if (dataset.isLabelled()) {
+                // The benchmark gallery must never overwrite the real snapshot
+                System.setProperty(FaceRecognitionConfig.STORE_ENABLED, "false");
+            }
+
+            try (OfflineFaceEngine engine = new OfflineFaceEngine(workers)) {
+                System.out.println("Workers: " + engine.getWorkers() + "\n");
+                if (dataset.isLabelled()) {
+                    runLabelled(engine, dataset, enrollPerPerson);
+                } else {
+                    FaceGallery gallery = FaceGallery.getInstance();
+                    gallery.ensureLoaded(new UserService());
+                    System.out.println("Gallery: " + gallery.userCount() + " enrolled users");
+                    List<Path> images = dataset.getAllImages();
+                    long start = System.nanoTime();
+                    List<Result> results = engine.process(images, true);
+                    report("Identification", results, System.nanoTime() - start);
+                    long identified = results.stream().filter(Result::isAccepted).count();
+                    System.out.println("Identified: " + identified + " of " + results.size() + " images");
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("✗ Offline benchmark failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void runLabelled(OfflineFaceEngine engine, ImageDataset dataset, int enrollPerPerson) throws InterruptedException {
+        List<String> labels = dataset.getLabels();
+        List<Path> enrollImages = new ArrayList<>();
+        List<Long> enrollUsers = new ArrayList<>();
+        List<Path> probeImages = new ArrayList<>();
+        List<Long> probeUsers = new ArrayList<>();
+        for (int i = 0; i < labels.size(); i++) {
+            List<Path> images = dataset.getImages(labels.get(i));
+            for (int j = 0; j < images.size(); j++) {
+                boolean enroll = j < enrollPerPerson;
+                (enroll ? enrollImages : probeImages).add(images.get(j));
+                (enroll ? enrollUsers : probeUsers).add((long) i);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Result> enrolled = engine.process(enrollImages, false);
+        report("Enrollment", enrolled, System.nanoTime() - start);
+
+        FaceGallery gallery = FaceGallery.getInstance();
+        for (int i = 0; i < labels.size(); i++) {
+            List<FaceEmbedding> templates = new ArrayList<>();
+            for (int j = 0; j < enrolled.size(); j++) {
+                if (enrollUsers.get(j) == i && enrolled.get(j).getEmbedding() != null) {
+                    templates.add(new FaceEmbedding(enrolled.get(j).getEmbedding(), LocalDateTime.now()));
+                }
+            }
+            if (!templates.isEmpty()) {
+                gallery.putUser(i, templates);
+            }
+        }
+        System.out.println("Gallery: " + gallery.userCount() + " of " + labels.size() + " people enrolled\n");
+
+        start = System.nanoTime();
+        List<Result> probes = engine.process(probeImages, true);
+        report("Identification", probes, System.nanoTime() - start);
+
+        int embedded = 0;
+        int rankOne = 0;
+        int genuineAccepts = 0;
+        int falseAccepts = 0;
+        int falseRejects = 0;
+        for (int i = 0; i < probes.size(); i++) {
+            Result result = probes.get(i);
+            if (result.getStatus() != Status.EMBEDDED) {
+                continue;
+            }
+            embedded++;
+            boolean sameUser = result.getNearest() != null && result.getNearest().getUserId() == probeUsers.get(i);
+            if (sameUser) {
+                rankOne++;
+            }
+            if (result.isAccepted()) {
+                if (sameUser) {
+                    genuineAccepts++;
+                } else {
+                    falseAccepts++;
+                }
+            } else {
+                falseRejects++;
+            }
+        }
+        System.out.println("Accuracy (" + FaceRecognitionConfig.getMetric() + ", threshold " + FaceRecognitionConfig.getThreshold() + "):");
+        System.out.printf("  Probes with a face:   %d of %d%n", embedded, probes.size());
+        System.out.printf("  Rank-1 accuracy:      %.2f%%%n", percent(rankOne, embedded));
+        System.out.printf("  Correctly identified: %.2f%%%n", percent(genuineAccepts, embedded));
+        System.out.printf("  Wrong person:         %.2f%%%n", percent(falseAccepts, embedded));
+        System.out.printf("  Rejected:             %.2f%%%n", percent(falseRejects, embedded));
+    }
+
+    private static void report(String pass, List<Result> results, long wallNanos) {
+        int[] statusCounts = new int[Status.values().length];
+        for (Result result : results) {
+            statusCounts[result.getStatus().ordinal()]++;
+        }
+        double seconds = wallNanos / 1_000_000_000.0;
+        System.out.printf("%s: %d images in %.2f s (%.1f images/s)%n", pass, results.size(), seconds, results.size() / seconds);
+        System.out.println("  Embedded: " + statusCounts[Status.EMBEDDED.ordinal()]
+                + ", no face: " + statusCounts[Status.NO_FACE.ordinal()]
+                + ", unreadable: " + statusCounts[Status.UNREADABLE.ordinal()]
+                + ", failed: " + statusCounts[Status.FAILED.ordinal()]);
+        System.out.printf("  %-8s %9s %9s %9s %9s%n", "Stage", "mean ms", "p50 ms", "p95 ms", "p99 ms");
+        printStage("decode", results, 0);
+        printStage("detect", results, 1);
+        printStage("embed", results, 2);
+        printStage("match", results, 3);
+        System.out.println();
+    }
+
+    private static void printStage(String name, List<Result> results, int stage) {
+        long[] nanos = results.stream()
+                .filter(result -> stageNanos(result, stage) > 0)
+                .mapToLong(result -> stageNanos(result, stage))
+                .sorted()
+                .toArray();
+        if (nanos.length == 0) {
+            return;
+        }
+        System.out.printf("  %-8s %9.2f %9.2f %9.2f %9.2f%n", name,
+                Arrays.stream(nanos).average().orElse(0) / 1_000_000.0,
+                percentile(nanos, 0.50), percentile(nanos, 0.95), percentile(nanos, 0.99));
+    }
+
+    private static long stageNanos(Result result, int stage) {
+        switch (stage) {
+            case 0:
+                return result.decodeNanos;
+            case 1:
+                return result.detectNanos;
+            case 2:
+                return result.embedNanos;
+            default:
+                return result.matchNanos;
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1_000_000.0;
+    }
+
+    private static double percent(int count, int total) {
+        return total > 0 ? 100.0 * count / total : 0.0;
+    }
+}
@@ -0,0 +1,200 @@
+package esprit.farouk.services;
+
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.utils.CameraFeed;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Hands-free face login: watches the camera stream and starts a full scan by
+ * itself once a face has stayed steady in view.
+ *
+ * Only cheap detection runs while waiting, on one frame out of
+ * face.passive.detect_every, and the watcher sleeps so that detection uses at
+ * most face.passive.cpu_budget of one core. With nobody in front of the camera
+ * it drops to two checks per second. A face triggers a scan once it has been
+ * seen in every check for face.passive.stable_ms, without moving much and with
+ * a quality of at least face.passive.min_quality. After a failed scan the
+ * watcher waits face.passive.cooldown_ms, doubling after each further failure.
+ *
+ * The FaceRecognitionService is shared with manual scans, so every use of it
+ * happens while holding the busy flag passed in by the caller.
+ */
+public class PassiveFaceWatcher {
+    private static final long IDLE_INTERVAL_MS = 500;
+    private static final long IDLE_AFTER_MS = 2000;
+    private static final long MAX_COOLDOWN_MS = 30_000;
+    /** Largest movement of the face center between checks, relative to the face width */
+    private static final double MAX_MOVEMENT = 0.15;
+
+    private final CameraFeed camera;
+    private final FaceRecognitionService faceService;
+    private final AtomicBoolean faceServiceBusy;
+    private final BooleanSupplier scan;
+
+    private final int detectEvery = FaceRecognitionConfig.getInt(FaceRecognitionConfig.PASSIVE_DETECT_EVERY, 5, 1, 100);
+    private final long stableMillis = FaceRecognitionConfig.getInt(FaceRecognitionConfig.PASSIVE_STABLE_MS, 800, 0, 10_000);
+    private final double minQuality = FaceRecognitionConfig.getDouble(FaceRecognitionConfig.PASSIVE_MIN_QUALITY, 0.4);
+    private final double cpuBudget = Math.max(0.01, Math.min(1.0, FaceRecognitionConfig.getDouble(FaceRecognitionConfig.PASSIVE_CPU_BUDGET, 0.1)));
+    private final long cooldownMillis = FaceRecognitionConfig.getInt(FaceRecognitionConfig.PASSIVE_COOLDOWN_MS, 3000, 0, 60_000);
+
+    private volatile boolean running = false;
+    private volatile boolean scanning = false;
+    private Thread thread;
+
+    /**
+     * @param camera          Running camera
+     * @param faceService     Initialized face service, shared with manual scans
+     * @param faceServiceBusy Held by whoever is using the face service; the scan must take it itself
+     * @param scan            Runs a full scan on the watcher thread; returns true if the user was logged in
+     */
+    public PassiveFaceWatcher(CameraFeed camera, FaceRecognitionService faceService,
+                              AtomicBoolean faceServiceBusy, BooleanSupplier scan) {
+        this.camera = camera;
+        this.faceService = faceService;
+        this.faceServiceBusy = faceServiceBusy;
+        this.scan = scan;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::watch, "face-passive-login");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching and waits (up to 2 s) for the watcher thread to exit, so the
+     * caller may release the face service afterwards. A scan already started is
+     * not interrupted; the wait covers the rest of it.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            if (!scanning) {
+                thread.interrupt();
+            }
+            if (thread != Thread.currentThread()) {
+                try {
+                    thread.join(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            thread = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void watch() {
+        long afterSequence = camera.lastSequence();
+        long lastFaceSeenAt = 0;
+        long stableSince = 0;
+        float[] previous = null;
+        int failures = 0;
+        long cooldownUntil = 0;
+
+        try {
+            while (running) {
+                // Wait for the k-th next frame; nothing is decoded for the frames in between
+                CameraFeed.CapturedFrame frame = camera.acquireNext(afterSequence + detectEvery - 1, 1000);
+                if (frame == null) {
+                    continue;
+                }
+
+                long started = System.nanoTime();
+                float[] detection = null;
+                double quality = 0;
+                boolean checked = false;
+                try {
+                    afterSequence = frame.getSequence();
+                    if (faceServiceBusy.compareAndSet(false, true)) {
+                        checked = true;
+                        try {
+                            detection = faceService.detectPrimaryFace(frame.getMat());
+                            if (detection != null) {
+                                quality = faceService.scoreFace(frame.getMat(), detection);
+                            }
+                        } finally {
+                            faceServiceBusy.set(false);
+                        }
+                    }
+                } finally {
+                    frame.close();
+                }
+                long spentNanos = System.nanoTime() - started;
+                long now = System.currentTimeMillis();
+
+                if (!checked) {
+                    // A manual scan is running; start over once it is done
+                    stableSince = 0;
+                    previous = null;
+                } else if (detection == null || quality < minQuality) {
+                    stableSince = 0;
+                    previous = detection;
+                    if (detection != null) {
+                        lastFaceSeenAt = now;
+                    }
+                } else {
+                    lastFaceSeenAt = now;
+                    if (previous == null || stableSince == 0 || moved(previous, detection)) {
+                        stableSince = now;
+                    }
+                    previous = detection;
+
+                    if (now - stableSince >= stableMillis && now >= cooldownUntil) {
+                        System.out.println("Hands-free login: steady face (quality " + String.format("%.2f", quality) + "), scanning");
+                        scanning = true;
+                        boolean loggedIn;
+                        try {
+                            loggedIn = scan.getAsBoolean();
+                        } finally {
+                            scanning = false;
+                        }
+                        if (loggedIn) {
+                            running = false;
+                            return;
+                        }
+                        failures++;
+                        long cooldown = Math.min(MAX_COOLDOWN_MS, cooldownMillis << Math.min(failures - 1, 10));
+                        cooldownUntil = System.currentTimeMillis() + cooldown;
+                        stableSince = 0;
+                        previous = null;
+                        afterSequence = camera.lastSequence();
+                    }
+                }
+
+                // Keep detection within the CPU budget, and almost stop while nobody is there
+                long sleepMillis = (long) (spentNanos / 1_000_000.0 * (1.0 / cpuBudget - 1.0));
+                if (now - lastFaceSeenAt > IDLE_AFTER_MS) {
+                    sleepMillis = Math.max(sleepMillis, IDLE_INTERVAL_MS);
+                }
+                if (sleepMillis > 0) {
+                    Thread.sleep(sleepMillis);
+                    afterSequence = Math.max(afterSequence, camera.lastSequence() - detectEvery + 1);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop() was called
+        } catch (Exception e) {
+            System.err.println("✗ Hands-free login stopped: " + e.getMessage());
+            e.printStackTrace();
+            running = false;
+        }
+    }
+
+    private static boolean moved(float[] previous, float[] current) {
+        double previousCenterX = previous[0] + previous[2] / 2;
+        double previousCenterY = previous[1] + previous[3] / 2;
+        double centerX = current[0] + current[2] / 2;
+        double centerY = current[1] + current[3] / 2;
+        return Math.hypot(centerX - previousCenterX, centerY - previousCenterY) > MAX_MOVEMENT * current[2];
+    }
+}
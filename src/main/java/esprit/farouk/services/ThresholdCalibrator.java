@@ -0,0 +1,205 @@
+package esprit.farouk.services;
+
+import esprit.farouk.config.FaceMetric;
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.utils.EmbeddingMath;
+import esprit.farouk.utils.ImageDataset;
+import esprit.farouk.utils.PairwiseScores;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Threshold Calibration
+ * Scores every pair of templates of known identity, builds the genuine and
+ * impostor score distributions (see PairwiseScores) and derives FAR/FRR for
+ * every threshold, the equal error rate and the most lenient threshold that
+ * keeps the false accept rate under a target.
+ *
+ * Templates come from the enrolled users in the database, or from a labelled
+ * image directory (one subfolder per person) embedded with the
+ * OfflineFaceEngine. The full curve is written as CSV (threshold, FAR, FRR,
+ * TAR), ready to plot as ROC (TAR against FAR) or DET (FRR against FAR).
+ *
+ * Usage: java -cp <classpath> esprit.farouk.services.ThresholdCalibrator [directory]
+ *            [--far=0.0001] [--threads=N] [--out=face_calibration.csv]
+ */
+public class ThresholdCalibrator {
+    private static final int DIMENSION = 128;
+    private static final int CSV_BIN_STEP = 10; // one CSV row per 0.005 of cosine
+    private static final double[] REPORTED_FARS = {1e-1, 1e-2, 1e-3, 1e-4, 1e-5, 1e-6};
+
+    public static void main(String[] args) {
+        String directory = null;
+        double targetFar = 1e-4;
+        int threads = 0;
+        Path output = Paths.get("face_calibration.csv");
+        for (String arg : args) {
+            if (arg.startsWith("--far=")) {
+                targetFar = Double.parseDouble(arg.substring("--far=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--out=")) {
+                output = Paths.get(arg.substring("--out=".length()));
+            } else {
+                directory = arg;
+            }
+        }
+
+        System.out.println("========================================");
+        System.out.println("  FACE THRESHOLD CALIBRATION");
+        System.out.println("========================================\n");
+
+        try {
+            List<float[]> templates = new ArrayList<>();
+            List<Integer> labels = new ArrayList<>();
+            if (directory != null) {
+                loadDataset(Paths.get(directory), threads, templates, labels);
+            } else {
+                loadEnrolled(templates, labels);
+            }
+            if (templates.size() < 2) {
+                System.err.println("✗ Need at least two templates, got " + templates.size());
+                System.exit(1);
+            }
+
+            float[] vectors = new float[templates.size() * DIMENSION];
+            int[] labelArray = new int[templates.size()];
+            for (int i = 0; i < templates.size(); i++) {
+                System.arraycopy(EmbeddingMath.normalize(templates.get(i)), 0, vectors, i * DIMENSION, DIMENSION);
+                labelArray[i] = labels.get(i);
+            }
+            System.out.println("Templates: " + templates.size() + " of " + labels.stream().distinct().count() + " people");
+
+            long start = System.nanoTime();
+            PairwiseScores scores = PairwiseScores.compute(vectors, labelArray, DIMENSION, threads);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            long pairs = scores.genuineCount() + scores.impostorCount();
+            System.out.printf("Scored %,d pairs (%,d genuine, %,d impostor) in %.2f s (%.1f M pairs/s)%n%n",
+                    pairs, scores.genuineCount(), scores.impostorCount(), seconds, pairs / seconds / 1_000_000.0);
+            if (scores.genuineCount() == 0 || scores.impostorCount() == 0) {
+                System.err.println("✗ Need several templates per person and at least two people");
+                System.exit(1);
+            }
+
+            report(scores, targetFar);
+            writeCsv(scores, output);
+            System.out.println("\nCurve written to " + output.toAbsolutePath());
+        } catch (Exception e) {
+            System.err.println("✗ Calibration failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void loadEnrolled(List<float[]> templates, List<Integer> labels) {
+        UserService userService = new UserService();
+        Map<Long, Long> enrolled = userService.getFaceEnrollmentTimes();
+        if (enrolled == null) {
+            throw new IllegalStateException("Could not read enrolled users from the database");
+        }
+        List<Long> userIds = new ArrayList<>(enrolled.keySet());
+        Map<Long, List<FaceEmbedding>> byUser = new FaceTemplateService().getByUserIds(userIds);
+        int label = 0;
+        for (List<FaceEmbedding> embeddings : byUser.values()) {
+            for (FaceEmbedding embedding : embeddings) {
+                templates.add(embedding.getEmbedding());
+                labels.add(label);
+            }
+            label++;
+        }
+        System.out.println("Source: enrolled templates of " + byUser.size() + " users");
+    }
+
+    private static void loadDataset(Path directory, int threads, List<float[]> templates, List<Integer> labels) throws Exception {
+        ImageDataset dataset = ImageDataset.scan(directory);
+        if (!dataset.isLabelled()) {
+            throw new IOException("Calibration needs one subfolder per person in " + directory);
+        }
+        System.out.println("Source: " + dataset.size() + " images of " + dataset.getLabels().size() + " people in " + directory);
+        List<Path> images = new ArrayList<>();
+        List<Integer> imageLabels = new ArrayList<>();
+        List<String> people = dataset.getLabels();
+        for (int i = 0; i < people.size(); i++) {
+            for (Path image : dataset.getImages(people.get(i))) {
+                images.add(image);
+                imageLabels.add(i);
+            }
+        }
+        try (OfflineFaceEngine engine = new OfflineFaceEngine(threads)) {
+            List<OfflineFaceEngine.Result> results = engine.process(images, false);
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).getEmbedding() != null) {
+                    templates.add(results.get(i).getEmbedding());
+                    labels.add(imageLabels.get(i));
+                }
+            }
+        }
+        System.out.println("Embedded " + templates.size() + " of " + images.size() + " images (the rest had no readable face)");
+    }
+
+    private static void report(PairwiseScores scores, double targetFar) {
+        FaceMetric metric = FaceRecognitionConfig.getMetric();
+        double configured = FaceRecognitionConfig.getThreshold();
+
+        System.out.println("Metric: " + metric.name().toLowerCase());
+        System.out.printf("%12s %12s %10s%n", "FAR", "threshold", "FRR");
+        for (double far : REPORTED_FARS) {
+            if (far * scores.impostorCount() < 1) {
+                break; // not measurable with this many impostor pairs
+            }
+            int bin = strictestIfNone(scores.binForFalseAcceptRate(far));
+            System.out.printf("%12.0e %12.4f %9.2f%%%n", far, threshold(metric, bin), 100 * scores.falseRejectRate(bin));
+        }
+
+        int equalError = scores.equalErrorBin();
+        System.out.printf("%nEqual error rate: %.2f%% at threshold %.4f%n",
+                100 * scores.falseAcceptRate(equalError), threshold(metric, equalError));
+
+        int configuredBin = PairwiseScores.bin(metric.toDot(configured));
+        System.out.printf("Configured threshold %.4f: FAR %.4f%%, FRR %.2f%%%n",
+                configured, 100 * scores.falseAcceptRate(configuredBin), 100 * scores.falseRejectRate(configuredBin));
+
+        int recommended = strictestIfNone(scores.binForFalseAcceptRate(targetFar));
+        if (targetFar * scores.impostorCount() < 10) {
+            System.out.printf("⚠ Only %,d impostor pairs: a FAR of %.0e cannot be measured reliably; add more people%n",
+                    scores.impostorCount(), targetFar);
+        }
+        System.out.printf("%nRecommended for FAR <= %.0e: FAR %.4f%%, FRR %.2f%%%n",
+                targetFar, 100 * scores.falseAcceptRate(recommended), 100 * scores.falseRejectRate(recommended));
+        System.out.printf(Locale.ROOT, "  %s=%s%n  %s=%.4f%n",
+                FaceRecognitionConfig.MATCH_METRIC, metric.name().toLowerCase(),
+                FaceRecognitionConfig.MATCH_THRESHOLD, threshold(metric, recommended));
+    }
+
+    private static void writeCsv(PairwiseScores scores, Path output) throws IOException {
+        FaceMetric metric = FaceRecognitionConfig.getMetric();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            writer.println("threshold,far,frr,tar");
+            for (int bin = 0; bin < PairwiseScores.BINS; bin += CSV_BIN_STEP) {
+                double frr = scores.falseRejectRate(bin);
+                writer.printf(Locale.ROOT, "%.4f,%.8f,%.8f,%.8f%n", threshold(metric, bin), scores.falseAcceptRate(bin), frr, 1.0 - frr);
+            }
+        }
+    }
+
+    private static int strictestIfNone(int bin) {
+        return bin >= 0 ? bin : PairwiseScores.BINS - 1;
+    }
+
+    /**
+     * Threshold in the metric's units that accepts exactly the pairs from the given bin upwards
+     */
+    private static double threshold(FaceMetric metric, int bin) {
+        return metric.fromDot(PairwiseScores.binStart(bin));
+    }
+}
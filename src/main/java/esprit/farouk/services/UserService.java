@@ -1,17 +1,23 @@
 package esprit.farouk.services;
 
+import esprit.farouk.models.FaceEmbedding;
 import esprit.farouk.models.User;
 import org.mindrot.jbcrypt.BCrypt;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class UserService {
     private Connection connection;
+    private final FaceTemplateService faceTemplateService;
 
     public UserService() {
         this.connection = DatabaseConnection.getConnection();
+        this.faceTemplateService = new FaceTemplateService();
     }
 
     /**
@@ -48,8 +54,7 @@ public class UserService {
         user.setOauthProvider(rs.getString("oauth_provider"));
         user.setOauthId(rs.getString("oauth_id"));
 
-        // Get face recognition fields
-        user.setFaceEmbeddings(rs.getString("face_embeddings"));
+        // Get face recognition fields (templates live in face_templates)
         Timestamp faceEnrolled = rs.getTimestamp("face_enrolled_at");
         if (faceEnrolled != null) {
             user.setFaceEnrolledAt(faceEnrolled.toLocalDateTime());
@@ -222,11 +227,9 @@ public class UserService {
     public boolean delete(long id) {
         String sql = "DELETE FROM users WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, id);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
+        try {
+            if (deleteTemplatesWithUserUpdate(id, sql)) {
+                FaceGallery.getInstance().removeUser(id);
                 System.out.println("✓ User deleted successfully (ID: " + id + ")");
                 return true;
             }
@@ -275,6 +278,7 @@ public class UserService {
 
             int rowsAffected = stmt.executeUpdate();
             if (rowsAffected > 0) {
+                FaceGallery.getInstance().removeUser(userId);
                 System.out.println("✓ User blocked successfully (ID: " + userId + ")");
                 return true;
             }
@@ -296,6 +300,11 @@ public class UserService {
 
             int rowsAffected = stmt.executeUpdate();
             if (rowsAffected > 0) {
+                // Put the user's templates back into the face gallery if they are enrolled
+                User user = getById(userId);
+                if (user != null && user.getFaceEnrolledAt() != null) {
+                    FaceGallery.getInstance().putUser(userId, faceTemplateService.getByUserId(userId));
+                }
                 System.out.println("✓ User unblocked successfully (ID: " + userId + ")");
                 return true;
             }
@@ -469,20 +478,31 @@ public class UserService {
     // ============================================================
 
     /**
-     * Enrolls face embeddings for a user
+     * Enrolls face embeddings for a user, replacing any previous templates
      */
-    public boolean enrollFaceEmbeddings(long userId, String embeddingsJson) {
-        String sql = "UPDATE users SET face_embeddings = ?, face_enrolled_at = NOW() WHERE id = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, embeddingsJson);
-            stmt.setLong(2, userId);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("✓ Face embeddings enrolled for user ID: " + userId);
-                return true;
+    public boolean enrollFaceEmbeddings(long userId, List<FaceEmbedding> embeddings) {
+        String sql = "UPDATE users SET face_embeddings = NULL, face_enrolled_at = NOW() WHERE id = ?";
+
+        // Own connection: a transaction on the shared one would take other threads' statements with it
+        try (Connection tx = DatabaseConnection.openConnection()) {
+            tx.setAutoCommit(false);
+            try (PreparedStatement stmt = tx.prepareStatement(sql)) {
+                faceTemplateService.replaceTemplates(tx, userId, embeddings);
+                stmt.setLong(1, userId);
+
+                if (stmt.executeUpdate() == 0) {
+                    tx.rollback();
+                    return false;
+                }
+                tx.commit();
+            } catch (SQLException e) {
+                tx.rollback();
+                throw e;
             }
+
+            FaceGallery.getInstance().putUser(userId, embeddings);
+            System.out.println("✓ Face embeddings enrolled for user ID: " + userId + " (" + embeddings.size() + " templates)");
+            return true;
         } catch (SQLException e) {
             System.err.println("✗ Failed to enroll face embeddings: " + e.getMessage());
             e.printStackTrace();
@@ -497,8 +517,7 @@ public class UserService {
         List<User> users = new ArrayList<>();
         String sql = "SELECT u.*, r.name as role_name FROM users u " +
                      "LEFT JOIN roles r ON u.role_id = r.id " +
-                     "WHERE u.face_embeddings IS NOT NULL " +
-                     "AND u.face_enrolled_at IS NOT NULL " +
+                     "WHERE u.face_enrolled_at IS NOT NULL " +
                      "AND u.status = 'active'";
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
@@ -515,20 +534,42 @@ public class UserService {
     }
 
     /**
-     * Checks if a user has face enrollment
+     * Gets face_enrolled_at (epoch millis) of every active enrolled user, keyed by user ID.
+     * Used to sync the face gallery without reading any embeddings.
+     *
+     * @return Enrollment times, or null if the database could not be read (as opposed to nobody being enrolled)
      */
-    public boolean hasFaceEnrollment(long userId) {
-        String sql = "SELECT face_embeddings FROM users WHERE id = ? AND face_embeddings IS NOT NULL";
+    public Map<Long, Long> getFaceEnrollmentTimes() {
+        Map<Long, Long> times = new LinkedHashMap<>();
+        String sql = "SELECT id, face_enrolled_at FROM users " +
+                     "WHERE face_enrolled_at IS NOT NULL " +
+                     "AND status = 'active'";
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, userId);
             ResultSet rs = stmt.executeQuery();
-            return rs.next();
+            while (rs.next()) {
+                times.put(rs.getLong("id"), rs.getTimestamp("face_enrolled_at").getTime());
+            }
         } catch (SQLException e) {
-            System.err.println("✗ Failed to check face enrollment: " + e.getMessage());
+            System.err.println("✗ Failed to get face enrollment times: " + e.getMessage());
             e.printStackTrace();
+            return null;
         }
-        return false;
+        return times;
+    }
+
+    /**
+     * Gets the face templates of the given users, keyed by user ID.
+     */
+    public Map<Long, List<FaceEmbedding>> getFaceTemplatesByIds(List<Long> userIds) {
+        return faceTemplateService.getByUserIds(userIds);
+    }
+
+    /**
+     * Checks if a user has face enrollment
+     */
+    public boolean hasFaceEnrollment(long userId) {
+        return faceTemplateService.hasTemplates(userId);
     }
 
     /**
@@ -537,11 +578,9 @@ public class UserService {
     public boolean removeFaceEnrollment(long userId) {
         String sql = "UPDATE users SET face_embeddings = NULL, face_enrolled_at = NULL WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, userId);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
+        try {
+            if (deleteTemplatesWithUserUpdate(userId, sql)) {
+                FaceGallery.getInstance().removeUser(userId);
                 System.out.println("✓ Face enrollment removed for user ID: " + userId);
                 return true;
             }
@@ -551,4 +590,31 @@ public class UserService {
         }
         return false;
     }
+
+    /**
+     * Deletes a user's face templates and runs userSql (taking the user ID as its
+     * only parameter) in one transaction, so a failure never leaves the user
+     * marked as enrolled without templates.
+     *
+     * @return Whether userSql affected a row; nothing is changed otherwise
+     */
+    private boolean deleteTemplatesWithUserUpdate(long userId, String userSql) throws SQLException {
+        try (Connection tx = DatabaseConnection.openConnection()) {
+            tx.setAutoCommit(false);
+            try (PreparedStatement stmt = tx.prepareStatement(userSql)) {
+                faceTemplateService.deleteByUserId(tx, userId);
+                stmt.setLong(1, userId);
+
+                if (stmt.executeUpdate() == 0) {
+                    tx.rollback();
+                    return false;
+                }
+                tx.commit();
+                return true;
+            } catch (SQLException e) {
+                tx.rollback();
+                throw e;
+            }
+        }
+    }
 }
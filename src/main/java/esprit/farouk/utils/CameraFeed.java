@@ -0,0 +1,330 @@
+package esprit.farouk.utils;
+
+import esprit.farouk.config.FaceRecognitionConfig;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Single owner of a camera: one capture thread grabs frames and publishes a
+ * private copy of each into a FrameRingBuffer. Preview, detection and
+ * recognition read the latest frame from the ring and never touch the
+ * FrameGrabber, which is not thread-safe.
+ *
+ * Frame pixels live in a small pool of native Mats that are reused instead of
+ * being allocated per frame. A frame is reference counted: the ring holds one
+ * reference and readers take their own with acquireLatest()/acquireRecent() and
+ * give it back with close(), typically in try-with-resources. A Mat goes back
+ * to the pool once the ring has dropped its frame and no reader holds it, and
+ * every pooled Mat is released when the feed stops.
+ *
+ * The capture loop is paced by a CaptureScheduler: cameras are grabbed at the
+ * configured frame rate, lowered when converting frames gets expensive, and
+ * at the idle rate while setIdle(true) (CameraPreview sets it when its window
+ * is hidden or minimized).
+ */
+public class CameraFeed {
+    private static final int RING_CAPACITY = 8;
+
+    private final String source;
+    private final CaptureScheduler scheduler;
+    private final FrameRingBuffer<CapturedFrame> ring = new FrameRingBuffer<>(RING_CAPACITY);
+    private final ConcurrentLinkedQueue<Mat> freeMats = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocatedMats = new AtomicInteger(0);
+    private FrameGrabber grabber;
+    private Thread captureThread;
+    private volatile boolean running = false;
+    private volatile boolean stopped = false;
+    private boolean captureExited = false; // guarded by this
+    private boolean releaseOnExit = false; // guarded by this: stop() gave up waiting, the capture thread releases
+    private volatile long startedAtNanos;
+
+    /**
+     * A captured camera image. The Mat is shared by all readers, so it must not
+     * be modified, and it is only valid until the reader's close().
+     */
+    public class CapturedFrame implements AutoCloseable {
+        private final long sequence;
+        private final long capturedAtNanos;
+        private final Mat mat;
+        private final AtomicInteger references = new AtomicInteger(1); // the ring's reference
+
+        CapturedFrame(long sequence, long capturedAtNanos, Mat mat) {
+            this.sequence = sequence;
+            this.capturedAtNanos = capturedAtNanos;
+            this.mat = mat;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * System.nanoTime() when the frame was grabbed
+         */
+        public long getCapturedAtNanos() {
+            return capturedAtNanos;
+        }
+
+        public Mat getMat() {
+            return mat;
+        }
+
+        /**
+         * Releases this reader's reference to the frame
+         */
+        @Override
+        public void close() {
+            if (references.decrementAndGet() == 0) {
+                recycle(mat);
+            }
+        }
+
+        /**
+         * Takes a reference unless the frame has already been recycled
+         */
+        private boolean tryRetain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+    }
+
+    public CameraFeed(int deviceIndex) {
+        this(String.valueOf(deviceIndex));
+    }
+
+    /**
+     * @param source Camera device index, or a video file or image directory to replay (see CameraUtils.createFrameGrabber)
+     */
+    public CameraFeed(String source) {
+        this.source = source;
+        this.scheduler = CameraUtils.isDeviceSource(source) ? CaptureScheduler.fromConfig() : CaptureScheduler.forReplay();
+    }
+
+    /**
+     * Creates a feed for the configured face.camera.source (the default webcam unless a replay is configured)
+     */
+    public static CameraFeed fromConfig() {
+        return new CameraFeed(FaceRecognitionConfig.getString(FaceRecognitionConfig.CAMERA_SOURCE, "0"));
+    }
+
+    /**
+     * Opens the camera and starts the capture thread.
+     *
+     * @param onFrame Called on the capture thread after each frame is published (may be null);
+     *                the frame is only guaranteed valid during the call
+     * @param onError Called on the capture thread if the camera fails (may be null)
+     * @throws FrameGrabber.Exception if the camera or replay source cannot be opened
+     */
+    public void start(Consumer<CapturedFrame> onFrame, Consumer<Exception> onError) throws FrameGrabber.Exception {
+        FrameGrabber camera = CameraUtils.createFrameGrabber(source);
+        grabber = camera;
+        synchronized (this) {
+            captureExited = false;
+            releaseOnExit = false;
+        }
+        running = true;
+        startedAtNanos = System.nanoTime();
+
+        captureThread = new Thread(() -> {
+            try (OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat()) {
+                while (running) {
+                    scheduler.awaitNextFrame();
+                    Frame frame = camera.grab();
+                    if (!running) {
+                        break; // stopped during the grab; don't publish into a drained ring
+                    }
+                    if (frame == null || frame.image == null) {
+                        Thread.sleep(5);
+                        continue;
+                    }
+                    long capturedAt = System.nanoTime();
+                    // The grabber reuses its buffer on the next grab, so readers get a copy in a pooled Mat
+                    Mat copy = freeMats.poll();
+                    if (copy == null) {
+                        copy = new Mat();
+                        allocatedMats.incrementAndGet();
+                    }
+                    converter.convert(frame).copyTo(copy);
+
+                    CapturedFrame captured = new CapturedFrame(ring.lastSequence() + 1, capturedAt, copy);
+                    CapturedFrame dropped = ring.publish(captured);
+                    if (dropped != null) {
+                        dropped.close(); // the ring's reference
+                    }
+                    if (onFrame != null) {
+                        onFrame.accept(captured);
+                    }
+                    scheduler.frameProcessed(System.nanoTime() - capturedAt);
+                }
+            } catch (Exception e) {
+                if (running && onError != null) {
+                    onError.accept(e);
+                }
+            } finally {
+                captureFinished(camera);
+            }
+        }, "camera-capture-" + source);
+        captureThread.setDaemon(true);
+        captureThread.start();
+    }
+
+    /**
+     * Takes a reference to the most recent frame. Close it when done.
+     *
+     * @return Frame, or null if none was captured yet
+     */
+    public CapturedFrame acquireLatest() {
+        while (true) {
+            CapturedFrame frame = ring.latest();
+            if (frame == null || frame.tryRetain()) {
+                return frame;
+            }
+            // Recycled between the read and the retain; the ring already holds a newer frame
+        }
+    }
+
+    /**
+     * Takes a reference to the first frame captured after the given sequence
+     * (0 = any frame), waiting up to the timeout. Close it when done.
+     *
+     * @return Frame, or null on timeout
+     */
+    public CapturedFrame acquireNext(long afterSequence, long timeoutMillis) throws InterruptedException {
+        if (ring.awaitNewer(afterSequence, timeoutMillis) == null) {
+            return null;
+        }
+        return acquireLatest();
+    }
+
+    /**
+     * Takes references to up to count of the most recent frames, newest first. Close each when done.
+     */
+    public List<CapturedFrame> acquireRecent(int count) {
+        List<CapturedFrame> frames = new ArrayList<>();
+        for (CapturedFrame frame : ring.recent(count)) {
+            if (frame.tryRetain()) {
+                frames.add(frame);
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Sequence number of the newest frame, 0 if none was captured yet
+     */
+    public long lastSequence() {
+        return ring.lastSequence();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Drops to the idle frame rate while nobody is watching, back to full rate otherwise
+     */
+    public void setIdle(boolean idle) {
+        scheduler.setIdle(idle);
+    }
+
+    public boolean isIdle() {
+        return scheduler.isIdle();
+    }
+
+    /**
+     * Frame rate the capture loop currently aims for (0 = paced by the replay itself)
+     */
+    public double getTargetFps() {
+        return scheduler.getTargetFps();
+    }
+
+    /**
+     * Number of native frame Mats created so far (bounded by the ring size plus frames held by readers)
+     */
+    public int allocatedMatCount() {
+        return allocatedMats.get();
+    }
+
+    /**
+     * Stops the capture thread, releases the camera and frees the pooled Mats.
+     * Frames still held by readers are freed when they are closed.
+     */
+    public void stop() {
+        running = false;
+        scheduler.cancel();
+        if (captureThread != null) {
+            try {
+                captureThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Releasing a grabber under a running grab() crashes in native code: if the
+        // thread is still stuck in a grab, it releases the grabber itself on exit
+        boolean release;
+        synchronized (this) {
+            release = captureThread == null || captureExited;
+            releaseOnExit = !release;
+        }
+        if (release) {
+            CameraUtils.releaseGrabber(grabber);
+        } else {
+            System.err.println("✗ Camera " + source + " is still blocked in a grab; it is released when the grab returns");
+        }
+        grabber = null;
+
+        stopped = true;
+        for (CapturedFrame frame : ring.drain()) {
+            frame.close();
+        }
+        Mat mat;
+        while ((mat = freeMats.poll()) != null) {
+            mat.close();
+        }
+        long frames = ring.lastSequence();
+        double seconds = (System.nanoTime() - startedAtNanos) / 1_000_000_000.0;
+        System.out.println("✓ Camera " + source + " stopped: " + frames + " frames captured"
+                + String.format(" (%.1f fps, %.1f ms per frame)", seconds > 0 ? frames / seconds : 0.0,
+                scheduler.getAverageProcessingMillis())
+                + ", " + allocatedMats.get() + " frame buffers used. " + NativeMemoryMetrics.summary());
+    }
+
+    /**
+     * Called by the capture thread on exit. Releases the grabber (and any frame
+     * published after stop() drained the ring) if stop() stopped waiting for it.
+     */
+    private void captureFinished(FrameGrabber camera) {
+        synchronized (this) {
+            captureExited = true;
+            if (!releaseOnExit) {
+                return;
+            }
+        }
+        CameraUtils.releaseGrabber(camera);
+        for (CapturedFrame frame : ring.drain()) {
+            frame.close();
+        }
+    }
+
+    private void recycle(Mat mat) {
+        if (stopped) {
+            mat.close();
+        } else {
+            freeMats.offer(mat);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package esprit.farouk.utils;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8U;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC4;
+import static org.bytedeco.opencv.global.opencv_imgproc.COLOR_BGR2BGRA;
+import static org.bytedeco.opencv.global.opencv_imgproc.COLOR_GRAY2BGRA;
+import static org.bytedeco.opencv.global.opencv_imgproc.cvtColor;
+
+/**
+ * Renders a CameraFeed into an ImageView without per-frame allocations.
+ *
+ * An AnimationTimer pulls the latest frame once per pulse (frames the FX thread
+ * had no time for are simply skipped) and converts it with one native cvtColor
+ * call (a plain copy for frames that are already BGRA) straight into the direct
+ * buffer behind a PixelBuffer-backed image.
+ * INT_ARGB_PRE pixels on a little-endian machine are laid out as B, G, R, A
+ * bytes, which is exactly OpenCV's BGRA.
+ *
+ * While the view's window is hidden or minimized (or the view is not in a
+ * window yet) rendering pauses and the feed drops to its idle frame rate.
+ */
+public class CameraPreview {
+    private final ImageView view;
+    private final CameraFeed feed;
+    private final AnimationTimer timer;
+    private final InvalidationListener visibilityListener = observable -> updateVisibility();
+    private final ChangeListener<Window> windowListener = (observable, oldWindow, newWindow) -> {
+        unwatch(oldWindow);
+        watch(newWindow);
+        updateVisibility();
+    };
+    private final ChangeListener<Scene> sceneListener = (observable, oldScene, newScene) -> {
+        if (oldScene != null) {
+            oldScene.windowProperty().removeListener(windowListener);
+            unwatch(oldScene.getWindow());
+        }
+        if (newScene != null) {
+            newScene.windowProperty().addListener(windowListener);
+            watch(newScene.getWindow());
+        }
+        updateVisibility();
+    };
+    private boolean started = false;
+    private long shownSequence = 0;
+    private long shownFrames = 0;
+    private boolean unsupportedReported = false;
+    private long startedAtNanos;
+
+    private int width;
+    private int height;
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private Mat target; // BGRA view over the pixel buffer's memory
+    private BytePointer targetPointer;
+
+    public CameraPreview(ImageView view, CameraFeed feed) {
+        this.view = view;
+        this.feed = feed;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                render();
+            }
+        };
+    }
+
+    /**
+     * Starts rendering. Call on the FX thread.
+     */
+    public void start() {
+        shownFrames = 0;
+        startedAtNanos = System.nanoTime();
+        started = true;
+        view.sceneProperty().addListener(sceneListener);
+        sceneListener.changed(view.sceneProperty(), null, view.getScene());
+    }
+
+    /**
+     * Stops rendering and frees the native view over the pixel buffer. Call on the FX thread.
+     */
+    public void stop() {
+        started = false;
+        view.sceneProperty().removeListener(sceneListener);
+        sceneListener.changed(view.sceneProperty(), view.getScene(), null);
+        timer.stop();
+        releaseTarget();
+        double seconds = (System.nanoTime() - startedAtNanos) / 1_000_000_000.0;
+        if (shownFrames > 0 && seconds > 0) {
+            System.out.println(String.format("✓ Preview stopped: %d frames shown (%.1f fps)", shownFrames, shownFrames / seconds));
+        }
+    }
+
+    private void watch(Window window) {
+        if (window != null) {
+            window.showingProperty().addListener(visibilityListener);
+            if (window instanceof Stage) {
+                ((Stage) window).iconifiedProperty().addListener(visibilityListener);
+            }
+        }
+    }
+
+    private void unwatch(Window window) {
+        if (window != null) {
+            window.showingProperty().removeListener(visibilityListener);
+            if (window instanceof Stage) {
+                ((Stage) window).iconifiedProperty().removeListener(visibilityListener);
+            }
+        }
+    }
+
+    /**
+     * Renders and captures at full rate only while the view's window is on screen
+     */
+    private void updateVisibility() {
+        if (!started) {
+            return;
+        }
+        Scene scene = view.getScene();
+        Window window = scene != null ? scene.getWindow() : null;
+        boolean visible = window != null && window.isShowing()
+                && !(window instanceof Stage && ((Stage) window).isIconified());
+        feed.setIdle(!visible);
+        if (visible) {
+            timer.start();
+        } else {
+            timer.stop();
+        }
+    }
+
+    private void render() {
+        try (CameraFeed.CapturedFrame frame = feed.acquireLatest()) {
+            if (frame == null || frame.getSequence() == shownSequence) {
+                return;
+            }
+            shownSequence = frame.getSequence();
+            shownFrames++;
+
+            Mat source = frame.getMat();
+            if (source.cols() != width || source.rows() != height || pixelBuffer == null) {
+                allocate(source.cols(), source.rows());
+            }
+            int channels = source.channels();
+            if (source.depth() != CV_8U || (channels != 1 && channels != 3 && channels != 4)) {
+                if (!unsupportedReported) {
+                    unsupportedReported = true;
+                    System.err.println("✗ Camera preview cannot show frames of type " + source.type()
+                            + " (" + channels + " channels); expected 8-bit gray, BGR or BGRA");
+                }
+                return;
+            }
+            pixelBuffer.updateBuffer(buffer -> {
+                if (channels == 4) {
+                    source.copyTo(target); // already BGRA (some V4L2/DirectShow grabbers deliver it)
+                } else {
+                    cvtColor(source, target, channels == 1 ? COLOR_GRAY2BGRA : COLOR_BGR2BGRA);
+                }
+                return null; // Whole image changed
+            });
+        }
+    }
+
+    /**
+     * (Re)creates the pixel buffer for a new frame size; happens once per camera in practice.
+     */
+    private void allocate(int newWidth, int newHeight) {
+        releaseTarget();
+        width = newWidth;
+        height = newHeight;
+        ByteBuffer bytes = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+        pixelBuffer = new PixelBuffer<>(width, height, bytes.asIntBuffer(), PixelFormat.getIntArgbPreInstance());
+        targetPointer = new BytePointer(bytes);
+        target = new Mat(height, width, CV_8UC4, targetPointer);
+        view.setImage(new WritableImage(pixelBuffer));
+    }
+
+    private void releaseTarget() {
+        if (target != null) {
+            target.close();
+            targetPointer.close();
+            target = null;
+            targetPointer = null;
+            pixelBuffer = null;
+        }
+    }
+}
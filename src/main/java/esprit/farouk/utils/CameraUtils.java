@@ -1,23 +1,30 @@
 package esprit.farouk.utils;
 
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
+import esprit.farouk.config.FaceRecognitionConfig;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.FrameGrabber;
 import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
 import org.bytedeco.opencv.opencv_core.Mat;
 
-import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+import static org.bytedeco.opencv.global.opencv_videoio.CAP_PROP_BUFFERSIZE;
 
 /**
  * Utility class for camera operations and image conversion.
- * Handles JavaCV Frame/Mat conversions and JavaFX Image creation.
+ * Opens cameras (or a recorded replay in their place) and handles JavaCV
+ * Frame/Mat conversions; preview rendering is done by CameraPreview.
  */
 public class CameraUtils {
+    private static final ThreadLocal<OpenCVFrameConverter.ToMat> CONVERTER =
+            ThreadLocal.withInitial(OpenCVFrameConverter.ToMat::new);
 
     /**
-     * Creates a camera frame grabber for the specified device.
+     * Creates a camera frame grabber for the specified device, asking for the
+     * configured resolution, frame rate and pixel format before it starts so
+     * the driver does not pick a slow mode, and logs what the camera accepted.
      *
      * @param deviceIndex Camera device index (0 for default webcam)
      * @return Initialized FrameGrabber
@@ -25,65 +32,72 @@ public class CameraUtils {
      */
     public static FrameGrabber createCameraGrabber(int deviceIndex) throws FrameGrabber.Exception {
         FrameGrabber grabber = FrameGrabber.createDefault(deviceIndex);
-        grabber.setImageWidth(640);
-        grabber.setImageHeight(480);
+        grabber.setImageWidth(FaceRecognitionConfig.getInt(FaceRecognitionConfig.CAMERA_WIDTH, 640, 160, 7680));
+        grabber.setImageHeight(FaceRecognitionConfig.getInt(FaceRecognitionConfig.CAMERA_HEIGHT, 480, 120, 4320));
+        grabber.setFrameRate(FaceRecognitionConfig.getInt(FaceRecognitionConfig.CAMERA_FPS, 30, 1, 240));
+        grabber.setImageMode(FrameGrabber.ImageMode.COLOR);
+        String pixelFormat = FaceRecognitionConfig.getString(FaceRecognitionConfig.CAMERA_PIXEL_FORMAT, "");
+        if (pixelFormat.length() == 4) {
+            if (grabber instanceof OpenCVFrameGrabber) {
+                grabber.setFormat(pixelFormat.toUpperCase()); // applied as the capture FOURCC
+            } else if (grabber instanceof FFmpegFrameGrabber) {
+                grabber.setOption("input_format", pixelFormat.equalsIgnoreCase("MJPG") ? "mjpeg" : pixelFormat.toLowerCase());
+            }
+        } else if (!pixelFormat.isEmpty()) {
+            System.err.println("✗ " + FaceRecognitionConfig.CAMERA_PIXEL_FORMAT + " must be a FOURCC code such as MJPG or YUYV, got " + pixelFormat);
+        }
         grabber.start();
+        if (grabber instanceof OpenCVFrameGrabber) {
+            // Keep only the newest frame queued, so a paced or idle loop never grabs a stale one
+            ((OpenCVFrameGrabber) grabber).setOption(CAP_PROP_BUFFERSIZE, 1);
+        }
+        System.out.println("✓ Camera " + deviceIndex + " opened at " + grabber.getImageWidth() + "x" + grabber.getImageHeight()
+                + String.format(" %.0f fps", grabber.getFrameRate()) + " (" + grabber.getClass().getSimpleName() + ")");
         return grabber;
     }
 
     /**
-     * Converts OpenCV Mat to JavaFX Image for display.
-     *
-     * @param mat OpenCV Mat object
-     * @return JavaFX Image
+     * Whether a camera source setting names a device index rather than a replay
      */
-    public static Image matToImage(Mat mat) {
-        int width = mat.cols();
-        int height = mat.rows();
-        int channels = mat.channels();
-
-        byte[] buffer = new byte[width * height * channels];
-        mat.data().get(buffer);
-
-        WritableImage image = new WritableImage(width, height);
-        PixelWriter pixelWriter = image.getPixelWriter();
+    public static boolean isDeviceSource(String source) {
+        return source.matches("\\d+");
+    }
 
-        if (channels == 3) {
-            // BGR to RGB conversion
-            int index = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int blue = buffer[index++] & 0xFF;
-                    int green = buffer[index++] & 0xFF;
-                    int red = buffer[index++] & 0xFF;
-                    int rgb = (0xFF << 24) | (red << 16) | (green << 8) | blue;
-                    pixelWriter.setArgb(x, y, rgb);
-                }
-            }
-        } else if (channels == 1) {
-            // Grayscale
-            int index = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int gray = buffer[index++] & 0xFF;
-                    int rgb = (0xFF << 24) | (gray << 16) | (gray << 8) | gray;
-                    pixelWriter.setArgb(x, y, rgb);
-                }
-            }
+    /**
+     * Creates and starts the frame source for a camera source setting: a device
+     * index opens that camera, anything else is replayed from disk as a video
+     * file or image directory (see ReplayFrameGrabber).
+     *
+     * @param source Device index ("0" for default webcam), video file or image directory
+     * @return Started FrameGrabber
+     * @throws FrameGrabber.Exception if the camera or file cannot be opened
+     */
+    public static FrameGrabber createFrameGrabber(String source) throws FrameGrabber.Exception {
+        if (isDeviceSource(source)) {
+            return createCameraGrabber(Integer.parseInt(source));
         }
-
-        return image;
+        double speed = FaceRecognitionConfig.getDouble(FaceRecognitionConfig.CAMERA_REPLAY_SPEED, 1.0);
+        if (!(speed >= 0)) {
+            System.err.println("✗ " + FaceRecognitionConfig.CAMERA_REPLAY_SPEED + " must be >= 0, got " + speed + ", using 1.0");
+            speed = 1.0;
+        }
+        ReplayFrameGrabber grabber = new ReplayFrameGrabber(Paths.get(source), speed,
+                Boolean.parseBoolean(FaceRecognitionConfig.getString(FaceRecognitionConfig.CAMERA_REPLAY_LOOP, "true")));
+        grabber.setFrameRate(FaceRecognitionConfig.getInt(FaceRecognitionConfig.CAMERA_REPLAY_FPS, 30, 1, 1000));
+        grabber.start();
+        System.out.println("✓ Replaying " + source + " instead of a camera (speed " + (speed > 0 ? speed + "x" : "unthrottled") + ")");
+        return grabber;
     }
 
     /**
      * Converts JavaCV Frame to OpenCV Mat.
+     * Uses one converter per thread instead of allocating a new one per call.
      *
      * @param frame JavaCV Frame
-     * @return OpenCV Mat
+     * @return OpenCV Mat, owned by the converter and reused by the next call on this thread
      */
     public static Mat frameToMat(Frame frame) {
-        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-        return converter.convert(frame);
+        return CONVERTER.get().convert(frame);
     }
 
     /**
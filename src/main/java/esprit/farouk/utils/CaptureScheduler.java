@@ -0,0 +1,155 @@
+package esprit.farouk.utils;
+
+import esprit.farouk.config.FaceRecognitionConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces a capture loop against a deadline instead of sleeping a fixed time
+ * after each frame, so the time spent grabbing and converting is part of the
+ * frame interval rather than added to it.
+ *
+ * The interval follows two inputs:
+ * - Visibility: while idle (window hidden or minimized) frames are taken at
+ *   the idle rate; leaving idle wakes a waiting loop at once.
+ * - Processing cost: a moving average of the time each frame took to process
+ *   caps the rate so that processing uses at most maxLoad of the interval;
+ *   a slow machine gets fewer frames instead of a saturated core.
+ *
+ * A loop that falls more than one interval behind starts over from the
+ * current time instead of catching up with a burst of frames.
+ */
+public class CaptureScheduler {
+    private static final double COST_SMOOTHING = 0.1; // weight of the newest frame in the moving average
+
+    private final double activeFps;
+    private final double idleFps;
+    private final double maxLoad;
+
+    private boolean idle = false;
+    private boolean cancelled = false;
+    private long lastFrameNanos = 0;
+    private double averageCostNanos = 0;
+
+    /**
+     * @param activeFps Target frame rate while visible; 0 = unpaced (the source paces itself)
+     * @param idleFps Frame rate while idle
+     * @param maxLoad Largest share of the frame interval processing may use, in (0, 1]
+     */
+    public CaptureScheduler(double activeFps, double idleFps, double maxLoad) {
+        if (!(activeFps >= 0) || !(idleFps > 0) || !(maxLoad > 0 && maxLoad <= 1)) {
+            throw new IllegalArgumentException("Invalid capture pacing: " + activeFps + " fps, idle "
+                    + idleFps + " fps, max load " + maxLoad);
+        }
+        this.activeFps = activeFps;
+        this.idleFps = idleFps;
+        this.maxLoad = maxLoad;
+    }
+
+    /**
+     * Scheduler for a camera with the configured face.camera.fps, idle_fps and max_load
+     */
+    public static CaptureScheduler fromConfig() {
+        return new CaptureScheduler(
+                FaceRecognitionConfig.getInt(FaceRecognitionConfig.CAMERA_FPS, 30, 1, 240),
+                idleFpsFromConfig(),
+                rangeSetting(FaceRecognitionConfig.CAMERA_MAX_LOAD, 0.5, 0.05, 1.0));
+    }
+
+    /**
+     * Scheduler for a replay, which paces itself (see ReplayFrameGrabber): unpaced
+     * while visible so benchmarks measure the replay speed, idle rate while hidden
+     */
+    public static CaptureScheduler forReplay() {
+        return new CaptureScheduler(0, idleFpsFromConfig(), 1.0);
+    }
+
+    private static double idleFpsFromConfig() {
+        return rangeSetting(FaceRecognitionConfig.CAMERA_IDLE_FPS, 2.0, 0.1, 240);
+    }
+
+    private static double rangeSetting(String key, double defaultValue, double min, double max) {
+        double value = FaceRecognitionConfig.getDouble(key, defaultValue);
+        if (!(value >= min && value <= max)) {
+            System.err.println("✗ " + key + " must be between " + min + " and " + max + ", got " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Waits until the next frame is due. The first call returns at once, and
+     * so does every call after cancel().
+     */
+    public synchronized void awaitNextFrame() throws InterruptedException {
+        long now = System.nanoTime();
+        while (true) {
+            long interval = intervalNanos();
+            long wait = lastFrameNanos + interval - now;
+            if (lastFrameNanos == 0 || wait <= 0 || cancelled) {
+                // On time or slightly late: keep the cadence. More than a frame late: restart from now
+                lastFrameNanos = lastFrameNanos != 0 && wait > -interval ? lastFrameNanos + interval : now;
+                return;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+            now = System.nanoTime(); // woken by setIdle(), cancel() or the deadline; recheck
+        }
+    }
+
+    /**
+     * Records how long the last frame took to process (from the grab returning
+     * to the frame being published), excluding time spent waiting for the camera
+     */
+    public synchronized void frameProcessed(long processingNanos) {
+        averageCostNanos = averageCostNanos == 0
+                ? processingNanos
+                : averageCostNanos + COST_SMOOTHING * (processingNanos - averageCostNanos);
+    }
+
+    /**
+     * Switches between the active and idle frame rates; wakes a waiting loop
+     */
+    public synchronized void setIdle(boolean idle) {
+        if (this.idle != idle) {
+            this.idle = idle;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Releases a waiting loop so it can notice it was stopped
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * Frame rate currently aimed for, after the idle and processing cost limits; 0 = unpaced
+     */
+    public synchronized double getTargetFps() {
+        long interval = intervalNanos();
+        return interval > 0 ? 1_000_000_000.0 / interval : 0;
+    }
+
+    /**
+     * Moving average of the processing time per frame
+     */
+    public synchronized double getAverageProcessingMillis() {
+        return averageCostNanos / 1_000_000.0;
+    }
+
+    private long intervalNanos() {
+        if (idle) {
+            return (long) (1_000_000_000.0 / idleFps);
+        }
+        if (activeFps == 0) {
+            return 0;
+        }
+        return (long) Math.max(1_000_000_000.0 / activeFps, averageCostNanos / maxLoad);
+    }
+}
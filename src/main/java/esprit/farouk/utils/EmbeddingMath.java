@@ -0,0 +1,137 @@
+package esprit.farouk.utils;
+
+/**
+ * Distance kernels for face embeddings.
+ *
+ * Dispatches to the SIMD kernels in VectorKernels when the JVM was started with
+ * --add-modules jdk.incubator.vector, and to ScalarKernels otherwise. SIMD can be
+ * switched off with -Dagricloud.face.simd=false.
+ *
+ * Ranking code should compare squared distances and only take a square root
+ * for the final reported value.
+ */
+public final class EmbeddingMath {
+    /** Number of dimensions accumulated between early-abandon checks. */
+    static final int ABANDON_INTERVAL = 32;
+    /**
+     * Below this length a SIMD row is only a handful of FMAs and the lane reductions needed
+     * for early abandoning cost more than they save (see EmbeddingSearchBenchmark), so the
+     * SIMD path computes the full distance instead.
+     */
+    private static final int SIMD_ABANDON_MIN_LENGTH = 512;
+
+    private static final boolean VECTORIZED = detectVectorSupport();
+
+    private EmbeddingMath() {
+    }
+
+    /**
+     * Whether the SIMD kernels are in use.
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Squared Euclidean distance between two embeddings stored at the given offsets.
+     */
+    public static float squaredL2(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return VECTORIZED
+                ? VectorKernels.squaredL2(a, aOffset, b, bOffset, length)
+                : ScalarKernels.squaredL2(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Squared Euclidean distance with early abandoning: stops accumulating once the
+     * partial sum exceeds the bound (typically the best squared distance so far).
+     * The result is exact when it is at most the bound, otherwise it is only
+     * guaranteed to be greater than the bound.
+     */
+    public static float squaredL2Bounded(float[] a, int aOffset, float[] b, int bOffset, int length, float bound) {
+        if (!VECTORIZED) {
+            return ScalarKernels.squaredL2Bounded(a, aOffset, b, bOffset, length, bound);
+        }
+        return length < SIMD_ABANDON_MIN_LENGTH
+                ? VectorKernels.squaredL2(a, aOffset, b, bOffset, length)
+                : VectorKernels.squaredL2Bounded(a, aOffset, b, bOffset, length, bound);
+    }
+
+    /**
+     * Dot product of two embeddings stored at the given offsets.
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return VECTORIZED
+                ? VectorKernels.dot(a, aOffset, b, bOffset, length)
+                : ScalarKernels.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Euclidean distance between two whole embeddings.
+     *
+     * @throws IllegalArgumentException if the embeddings differ in dimension
+     */
+    public static double euclideanDistance(float[] a, float[] b) {
+        checkSameDimension(a, b);
+        return Math.sqrt(squaredL2(a, 0, b, 0, a.length));
+    }
+
+    /**
+     * Cosine similarity between two whole embeddings (1 = identical direction).
+     *
+     * @throws IllegalArgumentException if the embeddings differ in dimension
+     */
+    public static double cosineSimilarity(float[] a, float[] b) {
+        checkSameDimension(a, b);
+        double normProduct = Math.sqrt((double) dot(a, 0, a, 0, a.length) * dot(b, 0, b, 0, b.length));
+        if (normProduct == 0.0) {
+            return 0.0;
+        }
+        return dot(a, 0, b, 0, a.length) / normProduct;
+    }
+
+    /**
+     * Returns an L2-normalized copy of the embedding (unit length), or a copy of
+     * the input if it is all zeros.
+     */
+    public static float[] normalize(float[] embedding) {
+        float[] copy = embedding.clone();
+        normalizeInPlace(copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * L2-normalizes the embedding stored at the given offset in place.
+     */
+    public static void normalizeInPlace(float[] values, int offset, int length) {
+        float norm = (float) Math.sqrt(dot(values, offset, values, offset, length));
+        if (norm == 0f) {
+            return;
+        }
+        float inverse = 1f / norm;
+        for (int i = offset; i < offset + length; i++) {
+            values[i] *= inverse;
+        }
+    }
+
+    private static void checkSameDimension(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Embeddings must have same dimension");
+        }
+    }
+
+    private static boolean detectVectorSupport() {
+        if ("false".equalsIgnoreCase(System.getProperty("agricloud.face.simd"))) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            float[] probe = {1f, 2f, 3f};
+            return VectorKernels.squaredL2(probe, 0, probe, 0, probe.length) == 0f;
+        } catch (Throwable e) {
+            System.err.println("✗ Vector API unavailable, using scalar kernels: " + e.getMessage());
+            return false;
+        }
+    }
+}
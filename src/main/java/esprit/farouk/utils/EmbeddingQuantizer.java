@@ -0,0 +1,140 @@
+package esprit.farouk.utils;
+
+/**
+ * Scalar quantization of face embeddings for the coarse scan stage.
+ *
+ * int8: each vector is stored as signed bytes with its own scale
+ * (value ~= code * scale), 4x smaller than float.
+ * float16: IEEE half precision, 2x smaller than float, near-lossless for
+ * L2-normalized embeddings.
+ *
+ * Scores computed on quantized codes are approximate; callers re-rank the best
+ * candidates on the full-precision vectors.
+ */
+public final class EmbeddingQuantizer {
+    private static final float[] HALF_TO_FLOAT = buildHalfTable();
+
+    private EmbeddingQuantizer() {
+    }
+
+    /**
+     * Quantizes one vector to int8 codes with a symmetric per-vector scale.
+     *
+     * @return Scale to multiply codes by to recover the values
+     */
+    public static float quantizeInt8(float[] values, int offset, int length, byte[] codes, int codeOffset) {
+        float maxAbs = 0f;
+        for (int i = 0; i < length; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(values[offset + i]));
+        }
+        if (maxAbs == 0f) {
+            for (int i = 0; i < length; i++) {
+                codes[codeOffset + i] = 0;
+            }
+            return 0f;
+        }
+        float scale = maxAbs / 127f;
+        float inverse = 1f / scale;
+        for (int i = 0; i < length; i++) {
+            codes[codeOffset + i] = (byte) Math.round(values[offset + i] * inverse);
+        }
+        return scale;
+    }
+
+    /**
+     * Approximate dot product between a float query and an int8-coded vector
+     * (without the vector's scale applied).
+     */
+    public static float dotInt8(float[] query, byte[] codes, int codeOffset, int length) {
+        return EmbeddingMath.isVectorized()
+                ? VectorKernels.dotInt8(query, codes, codeOffset, length)
+                : ScalarKernels.dotInt8(query, codes, codeOffset, length);
+    }
+
+    /**
+     * Quantizes one vector to IEEE float16 codes.
+     */
+    public static void quantizeFloat16(float[] values, int offset, int length, short[] codes, int codeOffset) {
+        for (int i = 0; i < length; i++) {
+            codes[codeOffset + i] = floatToHalf(values[offset + i]);
+        }
+    }
+
+    /**
+     * Approximate dot product between a float query and a float16-coded vector.
+     */
+    public static float dotFloat16(float[] query, short[] codes, int codeOffset, int length) {
+        return EmbeddingMath.isVectorized()
+                ? VectorKernels.dotFloat16(query, codes, codeOffset, length)
+                : ScalarKernels.dotFloat16(query, codes, codeOffset, length);
+    }
+
+    /**
+     * Converts a float to IEEE 754 half precision (round to nearest even).
+     */
+    public static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (((bits >>> 23) & 0xFF) == 0xFF) {
+            // Infinity or NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1F) {
+            return (short) (sign | 0x7C00); // Overflow to infinity
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign; // Underflow to zero
+            }
+            // Subnormal half
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >>> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        int half = sign | (exponent << 10) | (mantissa >>> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++; // May carry into the exponent, which is still the correct rounding
+        }
+        return (short) half;
+    }
+
+    /**
+     * Converts an IEEE 754 half precision value to float.
+     */
+    public static float halfToFloat(short half) {
+        return HALF_TO_FLOAT[half & 0xFFFF];
+    }
+
+    private static float[] buildHalfTable() {
+        float[] table = new float[1 << 16];
+        for (int h = 0; h < table.length; h++) {
+            int sign = (h & 0x8000) << 16;
+            int exponent = (h >>> 10) & 0x1F;
+            int mantissa = h & 0x3FF;
+            float value;
+            if (exponent == 0) {
+                value = mantissa * 0x1p-24f; // Zero or subnormal
+                table[h] = sign != 0 ? -value : value;
+                continue;
+            }
+            if (exponent == 0x1F) {
+                value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+                table[h] = sign != 0 ? -value : value;
+                continue;
+            }
+            table[h] = Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+        }
+        return table;
+    }
+}
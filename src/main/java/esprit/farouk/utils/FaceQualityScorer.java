@@ -0,0 +1,158 @@
+package esprit.farouk.utils;
+
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_64F;
+import static org.bytedeco.opencv.global.opencv_core.meanStdDev;
+import static org.bytedeco.opencv.global.opencv_imgproc.COLOR_BGR2GRAY;
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.Laplacian;
+import static org.bytedeco.opencv.global.opencv_imgproc.cvtColor;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * Scores how usable a detected face is for recognition, so only the best frames
+ * of a burst are embedded.
+ *
+ * The score is the product of four factors in [0, 1]:
+ * - sharpness: variance of the Laplacian of the face, resampled to the 112x112 SFace input
+ * - size: face width relative to the SFace input width
+ * - pose: how frontal the face is, from the YuNet eye and nose landmarks
+ * - confidence: the YuNet detection score
+ *
+ * Reuses its native buffers between calls; not thread-safe.
+ */
+public class FaceQualityScorer {
+    /** Width of the SFace input; larger faces do not carry more detail after alignment */
+    private static final int FACE_SIZE = 112;
+    /** Laplacian variance at which a face counts as fully sharp */
+    private static final double SHARPNESS_REFERENCE = 150.0;
+    /** Nose-below-eyes distance, relative to the eye distance, of a level head */
+    private static final double FRONTAL_PITCH_RATIO = 0.55;
+
+    private final Mat gray = new Mat();
+    private final Mat resized = new Mat();
+    private final Mat laplacian = new Mat();
+    private final Mat mean = new Mat();
+    private final Mat stddev = new Mat();
+
+    /**
+     * Scores one detection.
+     *
+     * @param frame     Frame the face was detected in
+     * @param detection One YuNet row in frame coordinates: x, y, w, h, five landmark pairs, score
+     * @return Quality in [0, 1]
+     */
+    public double score(Mat frame, float[] detection) {
+        double pose = poseScore(detection);
+        if (pose == 0) {
+            return 0.0; // not worth measuring sharpness
+        }
+        return pose * imageScore(frame, detection);
+    }
+
+    /**
+     * Scores one detection without the pose factor, for callers that want
+     * turned faces (e.g. enrollment).
+     *
+     * @return Sharpness x size x confidence, in [0, 1]
+     */
+    public double imageScore(Mat frame, float[] detection) {
+        double size = sizeScore(detection);
+        double confidence = Math.max(0.0, Math.min(1.0, detection[14]));
+        if (size == 0 || confidence == 0) {
+            return 0.0;
+        }
+        return size * confidence * sharpnessScore(frame, detection);
+    }
+
+    /**
+     * Face width relative to the SFace input width
+     */
+    public static double sizeScore(float[] detection) {
+        return Math.max(0.0, Math.min(1.0, detection[2] / FACE_SIZE));
+    }
+
+    /**
+     * 1 for a frontal face, falling to 0 as the nose moves sideways (yaw) or up and
+     * down (pitch) relative to the eyes. Roll is ignored because alignment removes it.
+     */
+    public static double poseScore(float[] detection) {
+        double[] pose = pose(detection);
+        if (pose == null) {
+            return 0.0;
+        }
+        double yawScore = Math.max(0.0, 1.0 - 2.0 * Math.abs(pose[0]));
+        double pitchScore = Math.max(0.0, 1.0 - 2.0 * Math.abs(pose[1]));
+        return yawScore * pitchScore;
+    }
+
+    /**
+     * Rough head pose from the landmarks, both 0 for a frontal, level face:
+     * yaw is the sideways offset of the nose from the eye midpoint and pitch the
+     * vertical offset from a level head's, both relative to the eye distance.
+     *
+     * @return {yaw, pitch}, or null if the eyes are too close to tell
+     */
+    public static double[] pose(float[] detection) {
+        double rightEyeX = detection[4], rightEyeY = detection[5];
+        double leftEyeX = detection[6], leftEyeY = detection[7];
+        double noseX = detection[8], noseY = detection[9];
+
+        double eyeDistance = Math.hypot(leftEyeX - rightEyeX, leftEyeY - rightEyeY);
+        if (eyeDistance < 1) {
+            return null;
+        }
+        double eyesMidX = (rightEyeX + leftEyeX) / 2;
+        double eyesMidY = (rightEyeY + leftEyeY) / 2;
+        double yaw = (noseX - eyesMidX) / eyeDistance;
+        double pitch = (noseY - eyesMidY) / eyeDistance - FRONTAL_PITCH_RATIO;
+        return new double[]{yaw, pitch};
+    }
+
+    /**
+     * Laplacian variance of the face box, resampled to a fixed size so that
+     * large and small faces are judged alike.
+     */
+    public double sharpnessScore(Mat frame, float[] detection) {
+        int x = Math.max(0, (int) detection[0]);
+        int y = Math.max(0, (int) detection[1]);
+        int width = Math.min(frame.cols(), (int) (detection[0] + detection[2])) - x;
+        int height = Math.min(frame.rows(), (int) (detection[1] + detection[3])) - y;
+        if (width < 8 || height < 8) {
+            return 0.0;
+        }
+
+        try (Rect rect = new Rect(x, y, width, height);
+             Mat face = new Mat(frame, rect); // header over the frame's pixels, no copy
+             Size size = new Size(FACE_SIZE, FACE_SIZE)) {
+            Mat source = face;
+            if (face.channels() == 3) {
+                cvtColor(face, gray, COLOR_BGR2GRAY);
+                source = gray;
+            }
+            resize(source, resized, size, 0, 0, INTER_AREA);
+        }
+        Laplacian(resized, laplacian, CV_64F);
+        meanStdDev(laplacian, mean, stddev);
+        double deviation;
+        try (DoubleIndexer indexer = stddev.createIndexer()) {
+            deviation = indexer.get(0);
+        }
+        return Math.min(1.0, deviation * deviation / SHARPNESS_REFERENCE);
+    }
+
+    /**
+     * Releases the native buffers.
+     */
+    public void close() {
+        gray.close();
+        resized.close();
+        laplacian.close();
+        mean.close();
+        stddev.close();
+    }
+}
@@ -6,6 +6,7 @@ import com.google.gson.JsonObject;
 import esprit.farouk.models.FaceEmbedding;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -14,38 +15,50 @@ import java.util.List;
 
 /**
  * Utility class for face embedding serialization and deserialization.
- * Handles conversion between FaceEmbedding objects and JSON storage format.
+ *
+ * Templates are stored as little-endian float32 bytes (face_templates.embedding).
+ * The Base64 JSON format formerly kept in users.face_embeddings is still
+ * readable so existing data can be migrated.
  */
 public class FaceUtils {
     private static final Gson gson = new Gson();
     private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
     /**
-     * Converts list of FaceEmbedding objects to JSON string for database storage.
+     * Encodes an embedding as little-endian float32 bytes for a BLOB column.
      *
-     * Format: [{"embedding": "base64...", "capturedAt": "2026-02-14T10:30:00"}, ...]
+     * @param embedding Face embedding vector
+     * @return 4 bytes per value
+     */
+    public static byte[] embeddingToBytes(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes little-endian float32 bytes back to an embedding with one bulk copy.
      *
-     * @param embeddings List of face embeddings
-     * @return JSON string representation
+     * @param bytes BLOB contents
+     * @return Face embedding vector, or null if bytes is null
      */
-    public static String embeddingsToJson(List<FaceEmbedding> embeddings) {
-        if (embeddings == null || embeddings.isEmpty()) {
+    public static float[] embeddingFromBytes(byte[] bytes) {
+        if (bytes == null) {
             return null;
         }
-
-        JsonArray jsonArray = new JsonArray();
-        for (FaceEmbedding embedding : embeddings) {
-            JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("embedding", floatArrayToBase64(embedding.getEmbedding()));
-            jsonObject.addProperty("capturedAt", embedding.getCapturedAt().format(formatter));
-            jsonArray.add(jsonObject);
+        if (bytes.length % Float.BYTES != 0) {
+            throw new IllegalArgumentException("Face template has " + bytes.length + " bytes, not a whole number of floats");
         }
 
-        return gson.toJson(jsonArray);
+        float[] embedding = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+        return embedding;
     }
 
     /**
-     * Parses JSON string from database into list of FaceEmbedding objects.
+     * Parses the legacy JSON format from users.face_embeddings into FaceEmbedding objects.
+     *
+     * Format: [{"embedding": "base64...", "capturedAt": "2026-02-14T10:30:00"}, ...]
      *
      * @param json JSON string from database
      * @return List of FaceEmbedding objects
@@ -72,26 +85,7 @@ public class FaceUtils {
     }
 
     /**
-     * Encodes float array (128D embedding) to Base64 string.
-     *
-     * @param floatArray Face embedding vector
-     * @return Base64 encoded string
-     */
-    public static String floatArrayToBase64(float[] floatArray) {
-        if (floatArray == null) {
-            return null;
-        }
-
-        ByteBuffer buffer = ByteBuffer.allocate(floatArray.length * 4); // 4 bytes per float
-        for (float f : floatArray) {
-            buffer.putFloat(f);
-        }
-
-        return Base64.getEncoder().encodeToString(buffer.array());
-    }
-
-    /**
-     * Decodes Base64 string back to float array (128D embedding).
+     * Decodes a legacy Base64 string (big-endian floats) back to a float array.
      *
      * @param base64 Base64 encoded embedding
      * @return Float array (128D vector)
@@ -102,13 +96,8 @@ public class FaceUtils {
         }
 
         byte[] bytes = Base64.getDecoder().decode(base64);
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-
         float[] floatArray = new float[bytes.length / 4]; // 4 bytes per float
-        for (int i = 0; i < floatArray.length; i++) {
-            floatArray[i] = buffer.getFloat();
-        }
-
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(floatArray);
         return floatArray;
     }
 }
@@ -0,0 +1,156 @@
+package esprit.farouk.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring of the most recent items from a single producer.
+ *
+ * The producer never waits: publishing into a full ring overwrites the oldest
+ * item. Any number of consumers can read the latest item (or the last few)
+ * concurrently without locks; items must therefore be treated as read-only.
+ * Consumers waiting for a newer item sleep on a monitor that publish() only
+ * notifies when someone is waiting, so idle waiters cost no CPU.
+ *
+ * @param <T> Item type
+ */
+public class FrameRingBuffer<T> {
+    private final AtomicReferenceArray<Entry<T>> slots;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong(0); // sequence of the newest item, 0 = empty
+    private final Object newItem = new Object();              // monitor awaitNewer() waits on
+    private final AtomicInteger waiters = new AtomicInteger(0);
+
+    /**
+     * @param capacity Number of items kept, rounded up to a power of two
+     */
+    public FrameRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ring capacity must be positive");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Publishes an item, dropping the oldest one if the ring is full. Single producer only.
+     * The new item gets sequence number lastSequence() + 1 (the first one is 1).
+     *
+     * @return The dropped item, so the producer can recycle it, or null if the ring was not full
+     */
+    public T publish(T item) {
+        long sequence = published.get() + 1;
+        Entry<T> dropped = slots.getAndSet((int) (sequence & mask), new Entry<>(sequence, item));
+        published.set(sequence);
+        // A waiter registers before checking the sequence, so either it sees this one or it gets notified
+        if (waiters.get() > 0) {
+            synchronized (newItem) {
+                newItem.notifyAll();
+            }
+        }
+        return dropped != null ? dropped.item : null;
+    }
+
+    /**
+     * Sequence number of the newest item, 0 if nothing was published yet
+     */
+    public long lastSequence() {
+        return published.get();
+    }
+
+    /**
+     * Gets the newest item, or null if nothing was published yet
+     */
+    public T latest() {
+        long sequence = published.get();
+        if (sequence == 0) {
+            return null;
+        }
+        // The producer may have moved on since; whatever is in the slot is at least as new
+        Entry<T> entry = slots.get((int) (sequence & mask));
+        return entry != null ? entry.item : null;
+    }
+
+    /**
+     * Gets the newest item published after the given sequence, waiting up to the timeout.
+     *
+     * @return Item, or null on timeout
+     */
+    public T awaitNewer(long afterSequence, long timeoutMillis) throws InterruptedException {
+        if (published.get() <= afterSequence) {
+            long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+            waiters.incrementAndGet();
+            try {
+                synchronized (newItem) {
+                    while (published.get() <= afterSequence) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return null;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(newItem, remaining);
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+        return latest();
+    }
+
+    /**
+     * Gets up to count of the most recent items, newest first.
+     * Items overwritten while reading are skipped.
+     */
+    public List<T> recent(int count) {
+        List<T> items = new ArrayList<>(Math.min(count, slots.length()));
+        long newest = published.get();
+        for (long sequence = newest; sequence > 0 && sequence > newest - slots.length() && items.size() < count; sequence--) {
+            Entry<T> entry = slots.get((int) (sequence & mask));
+            if (entry != null && entry.sequence == sequence) {
+                items.add(entry.item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Empties the ring. Call only once the producer has stopped.
+     *
+     * @return The items that were in the ring
+     */
+    public List<T> drain() {
+        List<T> items = new ArrayList<>();
+        for (int i = 0; i < slots.length(); i++) {
+            Entry<T> entry = slots.getAndSet(i, null);
+            if (entry != null) {
+                items.add(entry.item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Number of items the ring keeps
+     */
+    public int capacity() {
+        return slots.length();
+    }
+
+    private static final class Entry<T> {
+        final long sequence;
+        final T item;
+
+        Entry(long sequence, T item) {
+            this.sequence = sequence;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package esprit.farouk.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Face images on disk, for the offline tools.
+ *
+ * Two layouts are recognized:
+ *   directory/*.jpg               flat: unlabelled images
+ *   directory/&lt;person&gt;/*.jpg      labelled: one subdirectory per person
+ *
+ * Images are .jpg, .jpeg, .png or .bmp files, listed in name order so runs are
+ * repeatable.
+ */
+public class ImageDataset {
+    private static final Set<String> EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp");
+
+    private final Map<String, List<Path>> imagesByLabel;
+    private final boolean labelled;
+
+    private ImageDataset(Map<String, List<Path>> imagesByLabel, boolean labelled) {
+        this.imagesByLabel = imagesByLabel;
+        this.labelled = labelled;
+    }
+
+    /**
+     * Lists the images of a directory in either layout.
+     *
+     * @throws IOException if the directory cannot be read or contains no images
+     */
+    public static ImageDataset scan(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Map<String, List<Path>> byLabel = new TreeMap<>();
+        List<Path> subdirectories;
+        try (Stream<Path> entries = Files.list(directory)) {
+            subdirectories = entries.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        for (Path subdirectory : subdirectories) {
+            List<Path> images = listImages(subdirectory);
+            if (!images.isEmpty()) {
+                byLabel.put(subdirectory.getFileName().toString(), images);
+            }
+        }
+        if (!byLabel.isEmpty()) {
+            return new ImageDataset(byLabel, true);
+        }
+
+        List<Path> images = listImages(directory);
+        if (images.isEmpty()) {
+            throw new IOException("No images in " + directory);
+        }
+        byLabel.put("", images);
+        return new ImageDataset(byLabel, false);
+    }
+
+    private static List<Path> listImages(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.filter(Files::isRegularFile)
+                    .filter(ImageDataset::isImage)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isImage(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * True if the images are grouped by person
+     */
+    public boolean isLabelled() {
+        return labelled;
+    }
+
+    /**
+     * Person labels in name order (a single empty label for a flat directory)
+     */
+    public List<String> getLabels() {
+        return new ArrayList<>(imagesByLabel.keySet());
+    }
+
+    public List<Path> getImages(String label) {
+        return Collections.unmodifiableList(imagesByLabel.getOrDefault(label, List.of()));
+    }
+
+    public List<Path> getAllImages() {
+        List<Path> all = new ArrayList<>();
+        for (List<Path> images : imagesByLabel.values()) {
+            all.addAll(images);
+        }
+        return all;
+    }
+
+    public int size() {
+        int count = 0;
+        for (List<Path> images : imagesByLabel.values()) {
+            count += images.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,61 @@
+package esprit.farouk.utils;
+
+import org.bytedeco.javacpp.Pointer;
+
+/**
+ * Read-only view of JavaCPP's native memory counters.
+ *
+ * Mats, converters and pointers allocated through JavaCV live outside the Java
+ * heap, so heap metrics do not show a leak there. JavaCPP tracks the bytes it
+ * allocated itself (totalBytes) and the resident size of the whole process
+ * (physicalBytes); both should stay flat while the camera runs.
+ */
+public class NativeMemoryMetrics {
+
+    private NativeMemoryMetrics() {
+    }
+
+    /**
+     * Bytes currently allocated by JavaCPP deallocators (Mats, pointers, buffers)
+     */
+    public static long totalBytes() {
+        return Pointer.totalBytes();
+    }
+
+    /**
+     * Number of live JavaCPP allocations
+     */
+    public static long totalCount() {
+        return Pointer.totalCount();
+    }
+
+    /**
+     * Limit of totalBytes() before JavaCPP forces a GC (org.bytedeco.javacpp.maxBytes)
+     */
+    public static long maxBytes() {
+        return Pointer.maxBytes();
+    }
+
+    /**
+     * Resident memory of the whole process as seen by the OS
+     */
+    public static long physicalBytes() {
+        return Pointer.physicalBytes();
+    }
+
+    /**
+     * Limit of physicalBytes() before JavaCPP refuses allocations (org.bytedeco.javacpp.maxPhysicalBytes)
+     */
+    public static long maxPhysicalBytes() {
+        return Pointer.maxPhysicalBytes();
+    }
+
+    /**
+     * One-line summary for logs
+     */
+    public static String summary() {
+        return String.format("Native memory: %.1f MB in %d allocations (limit %.0f MB), process RSS %.1f MB (limit %.0f MB)",
+                totalBytes() / 1048576.0, totalCount(), maxBytes() / 1048576.0,
+                physicalBytes() / 1048576.0, maxPhysicalBytes() / 1048576.0);
+    }
+}
@@ -0,0 +1,203 @@
+package esprit.farouk.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Genuine and impostor score distributions over every pair of a labelled
+ * template set, for threshold calibration.
+ *
+ * Every pair is scored once by dot product (cosine similarity for the
+ * L2-normalized templates) and counted in a fixed histogram over [-1, 1]
+ * instead of being stored, so memory stays constant however many pairs
+ * there are. The pair matrix is cut into BLOCK_ROWS x BLOCK_ROWS tiles: a
+ * worker claims a row block and walks the tiles to its right, so the row
+ * block and the current column block (64 KB each at 128 dimensions) stay in
+ * cache while they are scored against each other. Workers fill private
+ * histograms that are summed at the end.
+ */
+public final class PairwiseScores {
+    public static final int BINS = 4000;
+    private static final int BLOCK_ROWS = 128;
+
+    private final long[] genuine;
+    private final long[] impostor;
+    private final long[] genuineAtOrAbove; // pairs scoring in bin b or higher
+    private final long[] impostorAtOrAbove;
+
+    private PairwiseScores(long[] genuine, long[] impostor) {
+        this.genuine = genuine;
+        this.impostor = impostor;
+        this.genuineAtOrAbove = tailSums(genuine);
+        this.impostorAtOrAbove = tailSums(impostor);
+    }
+
+    /**
+     * Scores every pair of templates.
+     *
+     * @param vectors Templates, count x dimension, row-major and L2-normalized
+     * @param labels Identity of each template; equal labels make a genuine pair
+     * @param dimension Embedding dimension
+     * @param threads Worker threads (0 = one per available processor)
+     */
+    public static PairwiseScores compute(float[] vectors, int[] labels, int dimension, int threads) throws InterruptedException {
+        int count = labels.length;
+        if (vectors.length != (long) count * dimension) {
+            throw new IllegalArgumentException("Expected " + count + " x " + dimension + " values, got " + vectors.length);
+        }
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        int blocks = (count + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        AtomicInteger nextBlock = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "pairwise-scores");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<long[][]>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                futures.add(executor.submit(() -> {
+                    long[] localGenuine = new long[BINS];
+                    long[] localImpostor = new long[BINS];
+                    int block;
+                    while ((block = nextBlock.getAndIncrement()) < blocks) {
+                        for (int columnBlock = block; columnBlock < blocks; columnBlock++) {
+                            scoreTile(vectors, labels, dimension, block, columnBlock, localGenuine, localImpostor);
+                        }
+                    }
+                    return new long[][]{localGenuine, localImpostor};
+                }));
+            }
+
+            long[] genuine = new long[BINS];
+            long[] impostor = new long[BINS];
+            for (Future<long[][]> future : futures) {
+                long[][] partial;
+                try {
+                    partial = future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Pairwise scoring failed", e.getCause());
+                }
+                for (int b = 0; b < BINS; b++) {
+                    genuine[b] += partial[0][b];
+                    impostor[b] += partial[1][b];
+                }
+            }
+            return new PairwiseScores(genuine, impostor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void scoreTile(float[] vectors, int[] labels, int dimension, int rowBlock, int columnBlock,
+                                  long[] genuine, long[] impostor) {
+        int count = labels.length;
+        int rowEnd = Math.min(count, (rowBlock + 1) * BLOCK_ROWS);
+        int columnEnd = Math.min(count, (columnBlock + 1) * BLOCK_ROWS);
+        for (int i = rowBlock * BLOCK_ROWS; i < rowEnd; i++) {
+            // Diagonal tiles only score the upper triangle so each pair counts once
+            int columnStart = rowBlock == columnBlock ? i + 1 : columnBlock * BLOCK_ROWS;
+            int rowOffset = i * dimension;
+            int label = labels[i];
+            for (int j = columnStart; j < columnEnd; j++) {
+                float dot = EmbeddingMath.dot(vectors, rowOffset, vectors, j * dimension, dimension);
+                if (labels[j] == label) {
+                    genuine[bin(dot)]++;
+                } else {
+                    impostor[bin(dot)]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Histogram bin of a dot product; bin b covers [binStart(b), binStart(b + 1))
+     */
+    public static int bin(double dot) {
+        int bin = (int) Math.floor((dot + 1.0) * BINS / 2.0);
+        return Math.max(0, Math.min(BINS - 1, bin));
+    }
+
+    /**
+     * Lowest dot product counted in a bin
+     */
+    public static double binStart(int bin) {
+        return -1.0 + 2.0 * bin / BINS;
+    }
+
+    public long genuineCount() {
+        return genuineAtOrAbove[0];
+    }
+
+    public long impostorCount() {
+        return impostorAtOrAbove[0];
+    }
+
+    /**
+     * False accept rate when pairs scoring at least binStart(bin) are accepted
+     */
+    public double falseAcceptRate(int bin) {
+        long total = impostorCount();
+        return total > 0 ? (double) impostorAtOrAbove[bin] / total : 0.0;
+    }
+
+    /**
+     * False reject rate when pairs scoring at least binStart(bin) are accepted
+     */
+    public double falseRejectRate(int bin) {
+        long total = genuineCount();
+        return total > 0 ? 1.0 - (double) genuineAtOrAbove[bin] / total : 0.0;
+    }
+
+    /**
+     * Bin where the false accept and false reject rates cross (equal error rate)
+     */
+    public int equalErrorBin() {
+        int best = 0;
+        double smallestGap = Double.MAX_VALUE;
+        for (int b = 0; b < BINS; b++) {
+            double gap = Math.abs(falseAcceptRate(b) - falseRejectRate(b));
+            if (gap < smallestGap) {
+                smallestGap = gap;
+                best = b;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Most lenient bin whose false accept rate does not exceed the target, or -1 if none
+     */
+    public int binForFalseAcceptRate(double targetFar) {
+        for (int b = 0; b < BINS; b++) {
+            if (falseAcceptRate(b) <= targetFar) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    public long[] getGenuineHistogram() {
+        return genuine.clone();
+    }
+
+    public long[] getImpostorHistogram() {
+        return impostor.clone();
+    }
+
+    private static long[] tailSums(long[] histogram) {
+        long[] tails = new long[histogram.length];
+        long total = 0;
+        for (int b = histogram.length - 1; b >= 0; b--) {
+            total += histogram[b];
+            tails[b] = total;
+        }
+        return tails;
+    }
+}
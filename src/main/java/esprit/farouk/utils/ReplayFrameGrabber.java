@@ -0,0 +1,176 @@
+package esprit.farouk.utils;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_COLOR;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+
+/**
+ * Frame source that replays a recorded video file or a directory of images
+ * (in name order) in place of a webcam, for repeatable measurements without
+ * a camera.
+ *
+ * Frames are paced against a deadline derived from the frame rate (the
+ * video's own, or setFrameRate() for images), divided by the speed factor:
+ * 1 replays in real time, 2 twice as fast, 0 as fast as the consumer grabs.
+ * At the end the source starts over when looping, otherwise grab() returns
+ * null like a camera with no new frame.
+ */
+public class ReplayFrameGrabber extends FrameGrabber {
+    private final Path source;
+    private final double speed;
+    private final boolean loop;
+
+    private FFmpegFrameGrabber video;
+    private List<Path> images;
+    private int nextImage;
+    private OpenCVFrameConverter.ToMat converter;
+    private Mat current; // decoded image behind the last returned Frame
+
+    private long startNanos;
+    private long framesReplayed;
+
+    /**
+     * @param source Video file or image directory
+     * @param speed Replay speed factor; 0 = unthrottled
+     * @param loop Whether to start over at the end
+     */
+    public ReplayFrameGrabber(Path source, double speed, boolean loop) {
+        if (!(speed >= 0)) {
+            throw new IllegalArgumentException("Replay speed must be >= 0, got " + speed);
+        }
+        this.source = source;
+        this.speed = speed;
+        this.loop = loop;
+        this.frameRate = 30;
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (Files.isDirectory(source)) {
+            try {
+                images = ImageDataset.scan(source).getAllImages();
+            } catch (IOException e) {
+                throw new Exception("Cannot replay " + source + ": " + e.getMessage(), e);
+            }
+            converter = new OpenCVFrameConverter.ToMat();
+        } else if (Files.isRegularFile(source)) {
+            video = new FFmpegFrameGrabber(source.toFile());
+            video.start();
+            if (video.getFrameRate() > 0) {
+                frameRate = video.getFrameRate();
+            }
+            imageWidth = video.getImageWidth();
+            imageHeight = video.getImageHeight();
+        } else {
+            throw new Exception("Replay source not found: " + source);
+        }
+        nextImage = 0;
+        framesReplayed = 0;
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        Frame frame = readFrame();
+        if (frame == null && loop && rewind()) {
+            frame = readFrame();
+        }
+        if (frame == null) {
+            return null;
+        }
+
+        if (speed > 0) {
+            long dueNanos = startNanos + (long) (framesReplayed * 1_000_000_000.0 / (frameRate * speed));
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        timestamp = (long) (framesReplayed * 1_000_000L / frameRate);
+        frameNumber = (int) framesReplayed;
+        framesReplayed++;
+        return frame;
+    }
+
+    private Frame readFrame() throws Exception {
+        if (video != null) {
+            return video.grabImage();
+        }
+        while (nextImage < images.size()) {
+            Mat decoded = imread(images.get(nextImage++).toString(), IMREAD_COLOR);
+            if (decoded != null && !decoded.empty()) {
+                if (current != null) {
+                    current.close();
+                }
+                current = decoded;
+                imageWidth = decoded.cols();
+                imageHeight = decoded.rows();
+                return converter.convert(decoded);
+            }
+            System.err.println("✗ Skipping unreadable replay image: " + images.get(nextImage - 1));
+        }
+        return null;
+    }
+
+    /**
+     * Goes back to the first frame; false if there is nothing to replay
+     */
+    private boolean rewind() throws Exception {
+        if (video != null) {
+            video.setTimestamp(0);
+            return true;
+        }
+        nextImage = 0;
+        return !images.isEmpty();
+    }
+
+    /**
+     * Frames returned since start()
+     */
+    public long getFramesReplayed() {
+        return framesReplayed;
+    }
+
+    @Override
+    public void trigger() {
+        // Frames are always available
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (video != null) {
+            video.stop();
+            video.release();
+            video = null;
+        }
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+        if (converter != null) {
+            converter.close();
+            converter = null;
+        }
+    }
+
+    @Override
+    public void release() throws Exception {
+        stop();
+    }
+}
@@ -0,0 +1,115 @@
+package esprit.farouk.utils;
+
+/**
+ * Portable scalar distance kernels over float embeddings.
+ * Used when the Java Vector API is not available at runtime.
+ */
+public final class ScalarKernels {
+
+    private ScalarKernels() {
+    }
+
+    /**
+     * Squared Euclidean distance between two embeddings stored at the given offsets.
+     */
+    public static float squaredL2(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            float d0 = a[aOffset + i] - b[bOffset + i];
+            float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Squared Euclidean distance that gives up as soon as the partial sum exceeds the bound.
+     * The returned value is exact when it is at most the bound, otherwise it is only
+     * guaranteed to be greater than the bound.
+     */
+    public static float squaredL2Bounded(float[] a, int aOffset, float[] b, int bOffset, int length, float bound) {
+        float sum = 0f;
+        int i = 0;
+        while (i < length) {
+            int blockEnd = Math.min(i + EmbeddingMath.ABANDON_INTERVAL, length);
+            float s0 = 0f, s1 = 0f;
+            for (; i + 1 < blockEnd; i += 2) {
+                float d0 = a[aOffset + i] - b[bOffset + i];
+                float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+                s0 += d0 * d0;
+                s1 += d1 * d1;
+            }
+            for (; i < blockEnd; i++) {
+                float d = a[aOffset + i] - b[bOffset + i];
+                s0 += d * d;
+            }
+            sum += s0 + s1;
+            if (sum > bound) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product of two embeddings stored at the given offsets.
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Dot product between a float query and int8 codes (codes are not rescaled).
+     */
+    public static float dotInt8(float[] query, byte[] codes, int codeOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += query[i] * codes[codeOffset + i];
+            s1 += query[i + 1] * codes[codeOffset + i + 1];
+            s2 += query[i + 2] * codes[codeOffset + i + 2];
+            s3 += query[i + 3] * codes[codeOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * codes[codeOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Dot product between a float query and IEEE float16 codes.
+     */
+    public static float dotFloat16(float[] query, short[] codes, int codeOffset, int length) {
+        float s0 = 0f, s1 = 0f;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            s0 += query[i] * EmbeddingQuantizer.halfToFloat(codes[codeOffset + i]);
+            s1 += query[i + 1] * EmbeddingQuantizer.halfToFloat(codes[codeOffset + i + 1]);
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * EmbeddingQuantizer.halfToFloat(codes[codeOffset + i]);
+        }
+        return s0 + s1;
+    }
+}
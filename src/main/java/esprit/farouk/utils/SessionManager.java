@@ -2,7 +2,14 @@ package esprit.farouk.utils;
 
 import esprit.farouk.models.User;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.prefs.Preferences;
+
 public class SessionManager {
+    private static final String RECENT_FACE_ACCOUNTS = "recentFaceAccounts";
+    private static final int MAX_RECENT_FACE_ACCOUNTS = 5;
+
     private static User currentUser = null;
 
     /**
@@ -64,4 +71,31 @@ public class SessionManager {
             currentUser = null;
         }
     }
+
+    /**
+     * Gets the emails that recently logged in with face verification on this machine, most recent first
+     */
+    public static List<String> getRecentFaceAccounts() {
+        String stored = Preferences.userNodeForPackage(SessionManager.class).get(RECENT_FACE_ACCOUNTS, "");
+        List<String> emails = new ArrayList<>();
+        for (String email : stored.split("\n")) {
+            if (!email.isBlank()) {
+                emails.add(email);
+            }
+        }
+        return emails;
+    }
+
+    /**
+     * Remembers an email as the most recent face-verified account
+     */
+    public static void rememberFaceAccount(String email) {
+        List<String> emails = getRecentFaceAccounts();
+        emails.remove(email);
+        emails.add(0, email);
+        if (emails.size() > MAX_RECENT_FACE_ACCOUNTS) {
+            emails = emails.subList(0, MAX_RECENT_FACE_ACCOUNTS);
+        }
+        Preferences.userNodeForPackage(SessionManager.class).put(RECENT_FACE_ACCOUNTS, String.join("\n", emails));
+    }
 }
@@ -0,0 +1,161 @@
+package esprit.farouk.utils;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD distance kernels over float embeddings using the Java Vector API.
+ * Only call these when EmbeddingMath.isVectorized() is true, i.e. the JVM was
+ * started with --add-modules jdk.incubator.vector.
+ */
+public final class VectorKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // A lane reduction is much more expensive than an FMA, so check the bound half as often as the scalar kernel
+    private static final int ABANDON_INTERVAL = EmbeddingMath.ABANDON_INTERVAL * 2;
+    // Byte species with one lane per float lane, for widening int8 codes (no 32-bit shape exists, so needs >= 8 lanes)
+    private static final VectorSpecies<Byte> BYTE_SPECIES = SPECIES.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.length() * Byte.SIZE))
+            : null;
+    // Matching short and int species for widening float16 codes
+    private static final VectorSpecies<Short> SHORT_SPECIES = SPECIES.length() >= 4
+            ? VectorSpecies.of(short.class, VectorShape.forBitSize(SPECIES.length() * Short.SIZE))
+            : null;
+    private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class, SPECIES.vectorShape());
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Number of float lanes processed per SIMD instruction on this machine.
+     */
+    public static int laneCount() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Squared Euclidean distance between two embeddings stored at the given offsets.
+     */
+    public static float squaredL2(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * Squared Euclidean distance that gives up as soon as the partial sum exceeds the bound.
+     * Same contract as ScalarKernels.squaredL2Bounded.
+     */
+    public static float squaredL2Bounded(float[] a, int aOffset, float[] b, int bOffset, int length, float bound) {
+        int step = SPECIES.length();
+        int upper = SPECIES.loopBound(length);
+        float sum = 0f;
+        int i = 0;
+        while (i < upper) {
+            // Tight FMA loop over one block, then a single lane reduction for the bound check
+            int blockEnd = Math.min(i + ABANDON_INTERVAL, upper);
+            FloatVector acc = FloatVector.zero(SPECIES);
+            for (; i < blockEnd; i += step) {
+                FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                        .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+                acc = diff.fma(diff, acc);
+            }
+            sum += acc.reduceLanes(VectorOperators.ADD);
+            if (sum > bound) {
+                return sum;
+            }
+        }
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product of two embeddings stored at the given offsets.
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            acc = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product between a float query and int8 codes (codes are not rescaled).
+     */
+    public static float dotInt8(float[] query, byte[] codes, int codeOffset, int length) {
+        if (BYTE_SPECIES == null) {
+            return ScalarKernels.dotInt8(query, codes, codeOffset, length);
+        }
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector widened = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, codes, codeOffset + i)
+                    .convertShape(VectorOperators.B2F, SPECIES, 0);
+            acc = FloatVector.fromArray(SPECIES, query, i).fma(widened, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * codes[codeOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product between a float query and IEEE float16 codes.
+     * Half values are decoded with integer bit arithmetic; subnormal halves
+     * (below 6.1e-5) are flushed to zero and infinities/NaN are not handled,
+     * which is fine for normalized embeddings that are re-ranked afterwards.
+     */
+    public static float dotFloat16(float[] query, short[] codes, int codeOffset, int length) {
+        if (SHORT_SPECIES == null) {
+            return ScalarKernels.dotFloat16(query, codes, codeOffset, length);
+        }
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector half = (IntVector) ShortVector.fromArray(SHORT_SPECIES, codes, codeOffset + i)
+                    .convertShape(VectorOperators.S2I, INT_SPECIES, 0);
+            IntVector magnitude = half.and(0x7FFF);
+            VectorMask<Integer> subnormal = magnitude.lt(0x0400);
+            // Rebias the exponent from 15 to 127 and move sign and mantissa into float position
+            IntVector bits = magnitude.lanewise(VectorOperators.LSHL, 13).add(0x38000000)
+                    .or(half.and(0x8000).lanewise(VectorOperators.LSHL, 16))
+                    .blend(0, subnormal);
+            acc = FloatVector.fromArray(SPECIES, query, i).fma(bits.reinterpretAsFloats(), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * EmbeddingQuantizer.halfToFloat(codes[codeOffset + i]);
+        }
+        return sum;
+    }
+}
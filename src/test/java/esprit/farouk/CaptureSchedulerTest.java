@@ -0,0 +1,126 @@
+package esprit.farouk;
+
+import esprit.farouk.utils.CaptureScheduler;
+
+/**
+ * Capture Scheduler Test
+ * Runs a bare capture loop against CaptureScheduler: deadline pacing, the
+ * idle rate and waking out of it, the processing cost cap, no burst after a
+ * stall, and cancel().
+ *
+ * No database, camera or models needed.
+ */
+public class CaptureSchedulerTest {
+
+    private static int testsRun = 0;
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("========================================");
+        System.out.println("  CAPTURE SCHEDULER TEST");
+        System.out.println("========================================\n");
+
+        // Pacing: 50 fps for one second, with 5 ms of "processing" per frame that must not slow it down
+        CaptureScheduler paced = new CaptureScheduler(50, 5, 0.5);
+        int frames = countFrames(paced, 1000, 5);
+        System.out.println("  Paced: " + frames + " frames in 1 s");
+        assertTest("Deadline pacing keeps 50 fps despite processing time", frames >= 45 && frames <= 53, true);
+
+        // Idle rate
+        paced.setIdle(true);
+        frames = countFrames(paced, 1000, 0);
+        System.out.println("  Idle: " + frames + " frames in 1 s");
+        assertTest("Idle drops to the idle rate", frames >= 4 && frames <= 7, true);
+
+        // Leaving idle wakes a loop waiting on the idle deadline
+        CaptureScheduler waking = new CaptureScheduler(50, 0.5, 0.5);
+        waking.setIdle(true);
+        waking.awaitNextFrame(); // first frame is immediate
+        new Thread(() -> {
+            sleep(100);
+            waking.setIdle(false);
+        }).start();
+        long start = System.nanoTime();
+        waking.awaitNextFrame();
+        long wokenMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTest("Leaving idle wakes the loop (" + wokenMillis + " ms)", wokenMillis >= 90 && wokenMillis < 500, true);
+
+        // Processing cost cap: 40 ms per frame at half load allows 12.5 fps
+        CaptureScheduler costly = new CaptureScheduler(50, 5, 0.5);
+        for (int i = 0; i < 50; i++) {
+            costly.frameProcessed(40_000_000L);
+        }
+        assertTest("Expensive frames lower the target rate", Math.abs(costly.getTargetFps() - 12.5) < 0.1, true);
+        costly.setIdle(true);
+        assertTest("Idle rate still applies", Math.abs(costly.getTargetFps() - 5) < 0.1, true);
+
+        // A stalled loop restarts its cadence instead of bursting
+        CaptureScheduler stalled = new CaptureScheduler(50, 5, 0.5);
+        stalled.awaitNextFrame();
+        Thread.sleep(300);
+        frames = countFrames(stalled, 100, 0);
+        assertTest("No burst of frames after a stall (" + frames + " in 100 ms)", frames <= 7, true);
+
+        // Unpaced (replays pace themselves)
+        CaptureScheduler unpaced = new CaptureScheduler(0, 5, 1.0);
+        frames = countFrames(unpaced, 100, 0);
+        assertTest("Unpaced scheduler does not wait", frames > 1000, true);
+
+        // cancel() releases a long idle wait
+        CaptureScheduler cancelled = new CaptureScheduler(30, 0.1, 0.5);
+        cancelled.setIdle(true);
+        cancelled.awaitNextFrame();
+        new Thread(() -> {
+            sleep(50);
+            cancelled.cancel();
+        }).start();
+        start = System.nanoTime();
+        cancelled.awaitNextFrame();
+        assertTest("cancel() releases a waiting loop", (System.nanoTime() - start) / 1_000_000 < 1000, true);
+
+        System.out.println();
+        System.out.println("Tests run: " + testsRun + ", passed: " + testsPassed + ", failed: " + testsFailed);
+        if (testsFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs a capture loop for the given time and returns how many frames it took
+     */
+    private static int countFrames(CaptureScheduler scheduler, long millis, long processingMillis) throws InterruptedException {
+        int frames = 0;
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (true) {
+            scheduler.awaitNextFrame();
+            if (System.nanoTime() >= end) {
+                return frames;
+            }
+            frames++;
+            if (processingMillis > 0) {
+                Thread.sleep(processingMillis);
+                scheduler.frameProcessed(processingMillis * 1_000_000);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void assertTest(String testName, boolean actual, boolean expected) {
+        testsRun++;
+        if (actual == expected) {
+            testsPassed++;
+            System.out.println("✓ PASS: " + testName);
+        } else {
+            testsFailed++;
+            System.err.println("✗ FAIL: " + testName + " (expected: " + expected + ", got: " + actual + ")");
+        }
+    }
+}
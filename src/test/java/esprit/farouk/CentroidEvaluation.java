@@ -0,0 +1,163 @@
+package esprit.farouk;
+
+import esprit.farouk.config.FaceMetric;
+import esprit.farouk.utils.EmbeddingMath;
+
+import java.util.Arrays;
+
+/**
+ * Centroid First-Pass Evaluation
+ * Compares per-capture brute force with the two-stage search used by FaceGallery:
+ * scan one centroid per user, then compare every capture of the closest C users.
+ * Reports top-1 agreement, score agreement, impostor accepts at the cosine
+ * threshold, comparisons per query and latency on a SyntheticGallery.
+ *
+ * No database or camera needed. Optional args: template counts, e.g. "100000 1000000".
+ */
+public class CentroidEvaluation {
+
+    private static final int DIMENSION = SyntheticGallery.DIMENSION;
+    private static final int CAPTURES = SyntheticGallery.CAPTURES_PER_USER;
+    private static final int QUERIES = 500;
+    private static final int[] CANDIDATE_VALUES = {1, 3, 5, 10, 20};
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{100_000, 1_000_000};
+
+        System.out.println("========================================");
+        System.out.println("  CENTROID FIRST-PASS EVALUATION");
+        System.out.println("========================================");
+        System.out.println("SIMD kernels: " + EmbeddingMath.isVectorized() + "\n");
+
+        for (int size : sizes) {
+            runForSize(size);
+        }
+    }
+
+    private static void runForSize(int templateCount) {
+        SyntheticGallery synthetic = new SyntheticGallery(templateCount, 5);
+        int users = synthetic.users;
+        float[] vectors = synthetic.vectors;
+
+        float[] centroids = new float[users * DIMENSION];
+        for (int row = 0; row < synthetic.templates; row++) {
+            int user = SyntheticGallery.userOf(row);
+            for (int i = 0; i < DIMENSION; i++) {
+                centroids[user * DIMENSION + i] += vectors[row * DIMENSION + i];
+            }
+        }
+        for (int user = 0; user < users; user++) {
+            EmbeddingMath.normalizeInPlace(centroids, user * DIMENSION, DIMENSION);
+        }
+
+        // Genuine queries are fresh captures of enrolled users; impostors come from a gallery that is not enrolled
+        SyntheticGallery strangers = new SyntheticGallery(QUERIES * CAPTURES, 99);
+        float[][] genuine = new float[QUERIES][];
+        float[][] impostors = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            genuine[q] = synthetic.randomGenuineQuery();
+            impostors[q] = strangers.randomGenuineQuery();
+        }
+        float threshold = (float) FaceMetric.COSINE.toDot(FaceMetric.COSINE.getDefaultThreshold());
+
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        System.out.println("  " + synthetic.templates + " templates (" + users + " users)");
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+
+        int[] truthUser = new int[QUERIES];
+        float[] truthDot = new float[QUERIES];
+        long[] nanos = new long[QUERIES];
+        int impostorAccepts = 0;
+        for (int pass = 0; pass < 2; pass++) { // first pass warms up the JIT
+            impostorAccepts = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                long start = System.nanoTime();
+                int row = synthetic.bruteForce(genuine[q]);
+                nanos[q] = System.nanoTime() - start;
+                truthUser[q] = SyntheticGallery.userOf(row);
+                truthDot[q] = EmbeddingMath.dot(genuine[q], 0, vectors, row * DIMENSION, DIMENSION);
+
+                int impostorRow = synthetic.bruteForce(impostors[q]);
+                if (EmbeddingMath.dot(impostors[q], 0, vectors, impostorRow * DIMENSION, DIMENSION) >= threshold) {
+                    impostorAccepts++;
+                }
+            }
+        }
+        printRow("all captures", synthetic.templates, nanos, 1.0, 1.0, impostorAccepts);
+
+        for (int candidates : CANDIDATE_VALUES) {
+            int userHits = 0;
+            int scoreHits = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                userHits = 0;
+                scoreHits = 0;
+                impostorAccepts = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    long start = System.nanoTime();
+                    float[] best = twoStage(genuine[q], centroids, vectors, users, candidates);
+                    nanos[q] = System.nanoTime() - start;
+                    if ((int) best[0] == truthUser[q]) {
+                        userHits++;
+                    }
+                    if (best[1] == truthDot[q]) {
+                        scoreHits++;
+                    }
+                    if (twoStage(impostors[q], centroids, vectors, users, candidates)[1] >= threshold) {
+                        impostorAccepts++;
+                    }
+                }
+            }
+            printRow("centroids C=" + candidates, users + candidates * CAPTURES, nanos,
+                    (double) userHits / QUERIES, (double) scoreHits / QUERIES, impostorAccepts);
+        }
+        System.out.println();
+    }
+
+    /**
+     * @return {best user, best dot}
+     */
+    private static float[] twoStage(float[] query, float[] centroids, float[] vectors, int users, int candidates) {
+        int[] topUsers = new int[candidates];
+        float[] topScores = new float[candidates];
+        int count = 0;
+        for (int user = 0; user < users; user++) {
+            float score = EmbeddingMath.dot(query, 0, centroids, user * DIMENSION, DIMENSION);
+            if (count == candidates && score <= topScores[count - 1]) {
+                continue;
+            }
+            int i = count < candidates ? count++ : count - 1;
+            while (i > 0 && topScores[i - 1] < score) {
+                topScores[i] = topScores[i - 1];
+                topUsers[i] = topUsers[i - 1];
+                i--;
+            }
+            topScores[i] = score;
+            topUsers[i] = user;
+        }
+
+        int bestUser = -1;
+        float bestDot = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            for (int c = 0; c < CAPTURES; c++) {
+                int row = topUsers[i] * CAPTURES + c;
+                float dot = EmbeddingMath.dot(query, 0, vectors, row * DIMENSION, DIMENSION);
+                if (dot > bestDot) {
+                    bestDot = dot;
+                    bestUser = topUsers[i];
+                }
+            }
+        }
+        return new float[]{bestUser, bestDot};
+    }
+
+    private static void printRow(String label, int comparisons, long[] nanos, double userAgreement,
+                                 double scoreAgreement, int impostorAccepts) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("  %-15s comparisons=%8d  mean=%7.2f ms  top1=%.3f  same score=%.3f  impostor accepts=%d/%d%n",
+                label, comparisons, Arrays.stream(sorted).average().orElse(0) / 1_000_000.0,
+                userAgreement, scoreAgreement, impostorAccepts, QUERIES);
+    }
+}
@@ -0,0 +1,125 @@
+package esprit.farouk;
+
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.DuplicateFaceCheck;
+import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.services.FaceGallery;
+import esprit.farouk.services.FaceRecognitionService;
+import esprit.farouk.utils.EmbeddingMath;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Duplicate Identity Test
+ * Fills the FaceGallery with a SyntheticGallery and checks the enrollment-time
+ * duplicate check: new captures of an enrolled face are flagged with the right
+ * user, a new face is not, and a user re-enrolling is not flagged against
+ * their own templates. Also reports the latency of one check.
+ *
+ * No database or camera needed; the on-disk store is disabled.
+ * Optional arg: template count (default 20000).
+ */
+public class DuplicateIdentityTest {
+
+    private static int testsRun = 0;
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        int templateCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        System.setProperty(FaceRecognitionConfig.STORE_ENABLED, "false");
+
+        System.out.println("========================================");
+        System.out.println("  DUPLICATE IDENTITY TEST");
+        System.out.println("========================================\n");
+
+        SyntheticGallery synthetic = new SyntheticGallery(templateCount, 5);
+        FaceGallery gallery = FaceGallery.getInstance();
+        for (int user = 0; user < synthetic.users; user++) {
+            List<FaceEmbedding> captures = new ArrayList<>();
+            for (int c = 0; c < SyntheticGallery.CAPTURES_PER_USER; c++) {
+                int row = user * SyntheticGallery.CAPTURES_PER_USER + c;
+                captures.add(new FaceEmbedding(Arrays.copyOfRange(synthetic.vectors, row * SyntheticGallery.DIMENSION,
+                        (row + 1) * SyntheticGallery.DIMENSION), LocalDateTime.now()));
+            }
+            gallery.putUser(user, captures);
+        }
+        System.out.println("Gallery: " + gallery.size() + " templates (" + gallery.userCount() + " users)\n");
+
+        FaceRecognitionService service = new FaceRecognitionService();
+        long newUserId = synthetic.users + 1;
+        Random random = new Random(9);
+
+        // Same face enrolling under a second account
+        int existing = random.nextInt(synthetic.users);
+        DuplicateFaceCheck check = service.checkDuplicateIdentity(newUserId, capturesOf(synthetic, existing));
+        assertTest("Enrolled face is flagged", check.isDuplicate(), true);
+        assertTest("Flagged against the right user", check.getBestMatch() != null && check.getBestMatch().getUserId() == existing, true);
+        assertTest("Margin to the next user is positive", check.getMargin() > 0, true);
+
+        // The same user re-enrolling is compared against everyone else only
+        DuplicateFaceCheck reEnroll = service.checkDuplicateIdentity(existing, capturesOf(synthetic, existing));
+        assertTest("Own templates are ignored", reEnroll.getBestMatch() == null || reEnroll.getBestMatch().getUserId() != existing, true);
+        assertTest("Re-enrollment is not flagged", reEnroll.isDuplicate(), false);
+
+        // A face nobody has enrolled
+        float[] stranger = new float[SyntheticGallery.DIMENSION];
+        for (int i = 0; i < stranger.length; i++) {
+            stranger[i] = (float) random.nextGaussian();
+        }
+        stranger = EmbeddingMath.normalize(stranger);
+        List<float[]> strangerCaptures = new ArrayList<>();
+        for (int c = 0; c < SyntheticGallery.CAPTURES_PER_USER; c++) {
+            float[] capture = new float[stranger.length];
+            for (int i = 0; i < capture.length; i++) {
+                capture[i] = stranger[i] + (float) (SyntheticGallery.CAPTURE_NOISE * random.nextGaussian() / Math.sqrt(stranger.length));
+            }
+            strangerCaptures.add(EmbeddingMath.normalize(capture));
+        }
+        assertTest("New face is not flagged", service.checkDuplicateIdentity(newUserId, strangerCaptures).isDuplicate(), false);
+
+        // Latency of one check (5 captures)
+        long[] nanos = new long[50];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int q = 0; q < nanos.length; q++) {
+                List<float[]> captures = capturesOf(synthetic, random.nextInt(synthetic.users));
+                long start = System.nanoTime();
+                service.checkDuplicateIdentity(newUserId, captures);
+                nanos[q] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%nDuplicate check: p50=%.2f ms  p99=%.2f ms%n",
+                nanos[nanos.length / 2] / 1_000_000.0, nanos[(int) (nanos.length * 0.99)] / 1_000_000.0);
+
+        System.out.println();
+        System.out.println("Tests run: " + testsRun + ", passed: " + testsPassed + ", failed: " + testsFailed);
+        service.dispose();
+        if (testsFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static List<float[]> capturesOf(SyntheticGallery synthetic, int user) {
+        List<float[]> captures = new ArrayList<>();
+        for (int c = 0; c < SyntheticGallery.CAPTURES_PER_USER; c++) {
+            captures.add(synthetic.captureOf(user));
+        }
+        return captures;
+    }
+
+    private static void assertTest(String testName, boolean actual, boolean expected) {
+        testsRun++;
+        if (actual == expected) {
+            testsPassed++;
+            System.out.println("✓ PASS: " + testName);
+        } else {
+            testsFailed++;
+            System.err.println("✗ FAIL: " + testName + " (expected: " + expected + ", got: " + actual + ")");
+        }
+    }
+}
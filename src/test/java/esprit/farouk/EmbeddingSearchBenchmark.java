@@ -0,0 +1,129 @@
+package esprit.farouk;
+
+import esprit.farouk.utils.ScalarKernels;
+import esprit.farouk.utils.VectorKernels;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedding Search Benchmark (JMH)
+ * Measures a full 1:N nearest-neighbour scan over a 128D gallery with the scalar
+ * and SIMD kernels, with and without early-abandon pruning.
+ *
+ * Run main() from the IDE after "mvn test-compile". No database or camera needed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx3g"})
+public class EmbeddingSearchBenchmark {
+
+    private static final int DIMENSION = 128;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int gallerySize;
+
+    private float[] gallery;
+    private float[] query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        gallery = new float[gallerySize * DIMENSION];
+        for (int i = 0; i < gallery.length; i++) {
+            gallery[i] = (float) random.nextGaussian();
+        }
+
+        // Genuine probe: a slightly perturbed copy of a template in the middle of the gallery
+        query = new float[DIMENSION];
+        int target = (gallerySize / 2) * DIMENSION;
+        for (int i = 0; i < DIMENSION; i++) {
+            query[i] = gallery[target + i] + (float) (random.nextGaussian() * 0.1);
+        }
+    }
+
+    @Benchmark
+    public int scalarFullScan() {
+        int best = -1;
+        float bestSquared = Float.MAX_VALUE;
+        for (int row = 0; row < gallerySize; row++) {
+            float squared = ScalarKernels.squaredL2(query, 0, gallery, row * DIMENSION, DIMENSION);
+            if (squared < bestSquared) {
+                bestSquared = squared;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public int scalarEarlyAbandon() {
+        int best = -1;
+        float bestSquared = Float.MAX_VALUE;
+        for (int row = 0; row < gallerySize; row++) {
+            float squared = ScalarKernels.squaredL2Bounded(query, 0, gallery, row * DIMENSION, DIMENSION, bestSquared);
+            if (squared < bestSquared) {
+                bestSquared = squared;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public int vectorFullScan() {
+        int best = -1;
+        float bestSquared = Float.MAX_VALUE;
+        for (int row = 0; row < gallerySize; row++) {
+            float squared = VectorKernels.squaredL2(query, 0, gallery, row * DIMENSION, DIMENSION);
+            if (squared < bestSquared) {
+                bestSquared = squared;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public int vectorEarlyAbandon() {
+        int best = -1;
+        float bestSquared = Float.MAX_VALUE;
+        for (int row = 0; row < gallerySize; row++) {
+            float squared = VectorKernels.squaredL2Bounded(query, 0, gallery, row * DIMENSION, DIMENSION, bestSquared);
+            if (squared < bestSquared) {
+                bestSquared = squared;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public int vectorDotProduct() {
+        int best = -1;
+        float bestScore = -Float.MAX_VALUE;
+        for (int row = 0; row < gallerySize; row++) {
+            float score = VectorKernels.dot(query, 0, gallery, row * DIMENSION, DIMENSION);
+            if (score > bestScore) {
+                bestScore = score;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(EmbeddingSearchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,108 @@
+package esprit.farouk;
+
+import esprit.farouk.services.DiverseCaptureSelector;
+import esprit.farouk.utils.EmbeddingMath;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Burst Enrollment Selection Test
+ * Feeds DiverseCaptureSelector a simulated burst - mostly near-identical frontal
+ * frames plus a few turned ones - and checks that the chosen templates cover the
+ * different poses instead of five copies of the frontal face.
+ *
+ * No database or camera needed.
+ */
+public class EnrollmentSelectionTest {
+
+    private static final double[][] POSES = {
+            {0.0, 0.0}, {-0.25, 0.0}, {0.25, 0.0}, {0.0, -0.2}, {0.0, 0.2}
+    };
+
+    private static int testsRun = 0;
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("  BURST ENROLLMENT SELECTION TEST");
+        System.out.println("========================================\n");
+
+        Random random = new Random(11);
+        float[] identity = randomUnit(random);
+        DiverseCaptureSelector selector = new DiverseCaptureSelector(24);
+
+        // 60 frames: three quarters frontal and sharp, the rest spread over the other poses and a bit softer
+        for (int frame = 0; frame < 60; frame++) {
+            int pose = frame % 4 != 0 ? 0 : 1 + (frame / 4) % 4;
+            double quality = pose == 0 ? 0.9 + 0.05 * random.nextDouble() : 0.6 + 0.1 * random.nextDouble();
+            float[] embedding = perturb(identity, random, 0.05f + 0.1f * pose);
+            selector.offer(new DiverseCaptureSelector.Candidate(embedding,
+                    POSES[pose][0] + 0.02 * random.nextGaussian(), POSES[pose][1] + 0.02 * random.nextGaussian(), quality));
+        }
+
+        assertTest("Pool is bounded", selector.size() == 24, true);
+
+        List<DiverseCaptureSelector.Candidate> chosen = selector.select(5);
+        assertTest("Five templates chosen", chosen.size() == 5, true);
+        assertTest("Best quality first", chosen.get(0).getQuality() >= 0.9, true);
+
+        Set<Integer> poses = new HashSet<>();
+        for (DiverseCaptureSelector.Candidate candidate : chosen) {
+            poses.add(nearestPose(candidate.getYaw(), candidate.getPitch()));
+            System.out.printf("  yaw=%6.2f pitch=%6.2f quality=%.2f%n", candidate.getYaw(), candidate.getPitch(), candidate.getQuality());
+        }
+        assertTest("All five poses covered", poses.size() == 5, true);
+
+        assertTest("Empty selector selects nothing", new DiverseCaptureSelector(5).select(5).isEmpty(), true);
+
+        System.out.println();
+        System.out.println("Tests run: " + testsRun + ", passed: " + testsPassed + ", failed: " + testsFailed);
+        if (testsFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int nearestPose(double yaw, double pitch) {
+        int nearest = 0;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < POSES.length; i++) {
+            double distance = Math.hypot(yaw - POSES[i][0], pitch - POSES[i][1]);
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private static float[] randomUnit(Random random) {
+        float[] vector = new float[128];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return EmbeddingMath.normalize(vector);
+    }
+
+    private static float[] perturb(float[] base, Random random, float noise) {
+        float[] vector = new float[base.length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = base[i] + noise * (float) random.nextGaussian() / (float) Math.sqrt(base.length);
+        }
+        return EmbeddingMath.normalize(vector);
+    }
+
+    private static void assertTest(String testName, boolean actual, boolean expected) {
+        testsRun++;
+        if (actual == expected) {
+            testsPassed++;
+            System.out.println("✓ PASS: " + testName);
+        } else {
+            testsFailed++;
+            System.err.println("✗ FAIL: " + testName + " (expected: " + expected + ", got: " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package esprit.farouk;
+
+import esprit.farouk.config.FaceMetric;
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.models.FaceMatch;
+import esprit.farouk.services.FaceGallery;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Gallery Index Build Test
+ * Grows a FaceGallery past face.index.exact_max_size and checks that the HNSW
+ * build runs in the background: enrollments stay fast and searches keep
+ * working (exact scan) while it runs, users put or removed during the build
+ * are found or gone once the graph is swapped in, and a tombstone rebuild
+ * keeps serving from the old graph.
+ *
+ * No database or camera needed; the on-disk store is disabled.
+ */
+public class GalleryIndexBuildTest {
+
+    private static final int EXACT_MAX_SIZE = 2000;
+
+    private static int testsRun = 0;
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty(FaceRecognitionConfig.STORE_ENABLED, "false");
+        System.setProperty(FaceRecognitionConfig.INDEX_TYPE, "auto");
+        System.setProperty(FaceRecognitionConfig.INDEX_EXACT_MAX_SIZE, String.valueOf(EXACT_MAX_SIZE));
+
+        System.out.println("========================================");
+        System.out.println("  GALLERY INDEX BUILD TEST");
+        System.out.println("========================================\n");
+
+        SyntheticGallery synthetic = new SyntheticGallery(4000, 13);
+        FaceGallery gallery = FaceGallery.getInstance();
+        int firstUsers = EXACT_MAX_SIZE / SyntheticGallery.CAPTURES_PER_USER + 1; // crosses the limit
+        for (int user = 0; user < firstUsers - 1; user++) {
+            gallery.putUser(user, capturesOf(synthetic, user));
+        }
+        long start = System.nanoTime();
+        gallery.putUser(firstUsers - 1, capturesOf(synthetic, firstUsers - 1));
+        long crossingMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTest("Enrollment that starts the build returns at once (" + crossingMillis + " ms)", crossingMillis < 100, true);
+        assertTest("Exact scan serves while the graph is built", gallery.isIndexed(), false);
+        assertTest("Search works during the build", nearest(gallery, synthetic, 7) == 7, true);
+
+        // Changes made while the build runs must reach the swapped-in graph
+        for (int user = firstUsers; user < synthetic.users; user++) {
+            gallery.putUser(user, capturesOf(synthetic, user));
+        }
+        gallery.removeUser(3);
+        awaitIndex(gallery);
+        assertTest("Graph swapped in", gallery.isIndexed(), true);
+        assertTest("User enrolled during the build is found", nearest(gallery, synthetic, synthetic.users - 1) == synthetic.users - 1, true);
+        assertTest("User removed during the build is gone", nearest(gallery, synthetic, 3) != 3, true);
+        assertTest("Existing users still found", accuracy(gallery, synthetic, 4, synthetic.users) >= 0.98, true);
+
+        // Enough removals to trigger a tombstone rebuild; the old graph keeps serving
+        int removedUsers = 220; // 1100 tombstones, over the 1000 minimum
+        for (int user = 10; user < 10 + removedUsers; user++) {
+            gallery.removeUser(user);
+        }
+        assertTest("Rebuild started in the background", gallery.isIndexBuilding(), true);
+        assertTest("Old graph serves during the rebuild", gallery.isIndexed(), true);
+        assertTest("Removed user is not returned", nearest(gallery, synthetic, 50) != 50, true);
+        awaitIndex(gallery);
+        assertTest("Rebuild finished", gallery.isIndexBuilding(), false);
+        assertTest("Remaining users found after the rebuild", accuracy(gallery, synthetic, 10 + removedUsers, synthetic.users) >= 0.98, true);
+
+        System.out.println();
+        System.out.println("Tests run: " + testsRun + ", passed: " + testsPassed + ", failed: " + testsFailed);
+        if (testsFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void awaitIndex(FaceGallery gallery) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while ((!gallery.isIndexed() || gallery.isIndexBuilding()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static long nearest(FaceGallery gallery, SyntheticGallery synthetic, int user) {
+        FaceMatch match = gallery.findNearest(synthetic.captureOf(user), FaceMetric.COSINE);
+        return match != null ? match.getUserId() : -1;
+    }
+
+    private static double accuracy(FaceGallery gallery, SyntheticGallery synthetic, int fromUser, int toUser) {
+        int hits = 0;
+        for (int user = fromUser; user < toUser; user++) {
+            if (nearest(gallery, synthetic, user) == user) {
+                hits++;
+            }
+        }
+        return (double) hits / (toUser - fromUser);
+    }
+
+    private static List<FaceEmbedding> capturesOf(SyntheticGallery synthetic, int user) {
+        List<FaceEmbedding> captures = new ArrayList<>();
+        for (int c = 0; c < SyntheticGallery.CAPTURES_PER_USER; c++) {
+            int row = user * SyntheticGallery.CAPTURES_PER_USER + c;
+            captures.add(new FaceEmbedding(Arrays.copyOfRange(synthetic.vectors, row * SyntheticGallery.DIMENSION,
+                    (row + 1) * SyntheticGallery.DIMENSION), LocalDateTime.now()));
+        }
+        return captures;
+    }
+
+    private static void assertTest(String testName, boolean actual, boolean expected) {
+        testsRun++;
+        if (actual == expected) {
+            testsPassed++;
+            System.out.println("✓ PASS: " + testName);
+        } else {
+            testsFailed++;
+            System.err.println("✗ FAIL: " + testName + " (expected: " + expected + ", got: " + actual + ")");
+        }
+    }
+}
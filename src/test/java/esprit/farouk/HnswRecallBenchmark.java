@@ -0,0 +1,163 @@
+package esprit.farouk;
+
+import esprit.farouk.services.HnswIndex;
+import esprit.farouk.utils.EmbeddingMath;
+
+import java.util.Arrays;
+
+/**
+ * HNSW Recall / Latency Benchmark
+ * Compares the HNSW index (with exact re-ranking) against a brute-force scan on a
+ * SyntheticGallery shaped like SFace data, then checks that deleting and
+ * re-enrolling users (slots reused last-in-first-out, as FaceGallery does)
+ * keeps the graph consistent and accurate.
+ *
+ * No database or camera needed. Optional args: template counts, e.g. "10000 100000".
+ */
+public class HnswRecallBenchmark {
+
+    private static final int DIMENSION = SyntheticGallery.DIMENSION;
+    private static final int QUERIES = 500;
+    private static final int RERANK_SIZE = 10;
+    private static final int[] EF_SEARCH_VALUES = {16, 32, 64, 128, 256};
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10_000, 100_000};
+
+        System.out.println("========================================");
+        System.out.println("  HNSW RECALL / LATENCY BENCHMARK");
+        System.out.println("========================================");
+        System.out.println("SIMD kernels: " + EmbeddingMath.isVectorized() + "\n");
+
+        for (int size : sizes) {
+            runForSize(size);
+        }
+        runReenrollment(2_000);
+    }
+
+    private static void runForSize(int templateCount) {
+        SyntheticGallery synthetic = new SyntheticGallery(templateCount, 7);
+        float[] gallery = synthetic.vectors;
+        int users = synthetic.users;
+
+        float[][] queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = synthetic.randomGenuineQuery();
+        }
+
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        System.out.println("  " + templateCount + " templates (" + users + " users)");
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+
+        // Brute force ground truth
+        int[] truth = new int[QUERIES];
+        long[] bruteNanos = new long[QUERIES];
+        for (int pass = 0; pass < 2; pass++) { // first pass warms up the JIT
+            for (int q = 0; q < QUERIES; q++) {
+                long start = System.nanoTime();
+                truth[q] = synthetic.bruteForce(queries[q]);
+                bruteNanos[q] = System.nanoTime() - start;
+            }
+        }
+        printLatency("Brute force", bruteNanos, 1.0);
+
+        long buildStart = System.currentTimeMillis();
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 200);
+        for (int node = 0; node < templateCount; node++) {
+            index.insert(node, gallery);
+        }
+        System.out.printf("  HNSW build (m=16, efConstruction=200): %.1f s%n",
+                (System.currentTimeMillis() - buildStart) / 1000.0);
+
+        for (int efSearch : EF_SEARCH_VALUES) {
+            long[] nanos = new long[QUERIES];
+            int hits = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                hits = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    long start = System.nanoTime();
+                    int best = searchAndRerank(index, queries[q], gallery, efSearch);
+                    nanos[q] = System.nanoTime() - start;
+                    if (best == truth[q]) {
+                        hits++;
+                    }
+                }
+            }
+            printLatency("HNSW ef=" + efSearch, nanos, (double) hits / QUERIES);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Removes and re-enrolls every user once with fresh captures in the same
+     * slots, which also deletes and re-inserts the entry point along the way
+     */
+    private static void runReenrollment(int templateCount) {
+        SyntheticGallery synthetic = new SyntheticGallery(templateCount, 11);
+        float[] gallery = synthetic.vectors;
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 200);
+        for (int node = 0; node < synthetic.templates; node++) {
+            index.insert(node, gallery);
+        }
+
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        System.out.println("  Delete / re-enroll churn (" + synthetic.templates + " templates)");
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        long churnStart = System.nanoTime();
+        try {
+            for (int user = 0; user < synthetic.users; user++) {
+                int first = user * SyntheticGallery.CAPTURES_PER_USER;
+                for (int c = 0; c < SyntheticGallery.CAPTURES_PER_USER; c++) {
+                    index.markDeleted(first + c);
+                }
+                for (int c = SyntheticGallery.CAPTURES_PER_USER - 1; c >= 0; c--) { // free slots come back LIFO
+                    System.arraycopy(synthetic.captureOf(user), 0, gallery, (first + c) * DIMENSION, DIMENSION);
+                    index.insert(first + c, gallery);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("✗ Re-enrollment failed: " + e);
+            e.printStackTrace();
+            return;
+        }
+        double microsPerReinsert = (System.nanoTime() - churnStart) / 1000.0 / synthetic.templates;
+
+        int hits = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = synthetic.randomGenuineQuery();
+            if (searchAndRerank(index, query, gallery, 64) == synthetic.bruteForce(query)) {
+                hits++;
+            }
+        }
+        double recall = (double) hits / QUERIES;
+        boolean consistent = index.size() == synthetic.templates && index.deletedCount() == 0;
+        System.out.printf("%s %d re-inserts (%.1f us each, delete included), %d live nodes, %d tombstones, recall@1=%.3f (ef=64)%n%n",
+                consistent && recall >= 0.95 ? "✓" : "✗", synthetic.templates, microsPerReinsert,
+                index.size(), index.deletedCount(), recall);
+    }
+
+    private static int searchAndRerank(HnswIndex index, float[] query, float[] gallery, int efSearch) {
+        int best = -1;
+        float bestDot = -Float.MAX_VALUE;
+        for (int node : index.search(query, gallery, RERANK_SIZE, efSearch)) {
+            float dot = EmbeddingMath.dot(query, 0, gallery, node * DIMENSION, DIMENSION);
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    private static void printLatency(String label, long[] nanos, double recall) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0) / 1000.0;
+        double p50 = sorted[sorted.length / 2] / 1000.0;
+        double p99 = sorted[(int) (sorted.length * 0.99)] / 1000.0;
+        System.out.printf("  %-16s recall@1=%.3f  mean=%9.1f us  p50=%9.1f us  p99=%9.1f us%n",
+                label, recall, mean, p50, p99);
+    }
+}
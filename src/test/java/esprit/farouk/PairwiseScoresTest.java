@@ -0,0 +1,96 @@
+package esprit.farouk;
+
+import esprit.farouk.utils.EmbeddingMath;
+import esprit.farouk.utils.PairwiseScores;
+
+import java.util.Arrays;
+
+/**
+ * Pairwise Scores Test
+ * Checks the tiled, multi-threaded pairwise kernel against a plain double
+ * loop on a SyntheticGallery (same histograms, bin for bin), checks the
+ * FAR/FRR derived from it, then times a larger gallery.
+ *
+ * No database, camera or models needed.
+ * Optional arg: template count for the timing run (default 20000).
+ */
+public class PairwiseScoresTest {
+
+    private static int testsRun = 0;
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws Exception {
+        int timingCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        System.out.println("========================================");
+        System.out.println("  PAIRWISE SCORES TEST");
+        System.out.println("========================================\n");
+
+        // 1003 templates: the last row block is partial
+        SyntheticGallery synthetic = new SyntheticGallery(1005, 3);
+        int[] labels = labelsOf(synthetic);
+        PairwiseScores tiled = PairwiseScores.compute(synthetic.vectors, labels, SyntheticGallery.DIMENSION, 3);
+
+        long[] genuine = new long[PairwiseScores.BINS];
+        long[] impostor = new long[PairwiseScores.BINS];
+        int dimension = SyntheticGallery.DIMENSION;
+        for (int i = 0; i < synthetic.templates; i++) {
+            for (int j = i + 1; j < synthetic.templates; j++) {
+                float dot = EmbeddingMath.dot(synthetic.vectors, i * dimension, synthetic.vectors, j * dimension, dimension);
+                (labels[i] == labels[j] ? genuine : impostor)[PairwiseScores.bin(dot)]++;
+            }
+        }
+        long users = synthetic.users;
+        long templates = synthetic.templates;
+        assertTest("Genuine pair count", tiled.genuineCount() == users * 10, true);
+        assertTest("Every pair scored once", tiled.genuineCount() + tiled.impostorCount() == templates * (templates - 1) / 2, true);
+        assertTest("Genuine histogram matches the plain loop", Arrays.equals(tiled.getGenuineHistogram(), genuine), true);
+        assertTest("Impostor histogram matches the plain loop", Arrays.equals(tiled.getImpostorHistogram(), impostor), true);
+
+        assertTest("Accepting everything: FAR 1, FRR 0", tiled.falseAcceptRate(0) == 1.0 && tiled.falseRejectRate(0) == 0.0, true);
+        int equalError = tiled.equalErrorBin();
+        double eer = tiled.falseAcceptRate(equalError);
+        System.out.printf("  EER %.3f%% at cosine %.3f%n", 100 * eer, PairwiseScores.binStart(equalError));
+        assertTest("Synthetic identities are well separated (EER < 1%)", eer < 0.01, true);
+        int strict = tiled.binForFalseAcceptRate(1e-4);
+        assertTest("FAR target is met", strict >= 0 && tiled.falseAcceptRate(strict) <= 1e-4, true);
+        assertTest("Stricter target, higher threshold", tiled.binForFalseAcceptRate(1e-5) >= strict, true);
+
+        // Timing
+        SyntheticGallery large = new SyntheticGallery(timingCount, 4);
+        int[] largeLabels = labelsOf(large);
+        long start = System.nanoTime();
+        PairwiseScores scores = PairwiseScores.compute(large.vectors, largeLabels, SyntheticGallery.DIMENSION, 0);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        long pairs = scores.genuineCount() + scores.impostorCount();
+        System.out.printf("%n%,d templates: %,d pairs in %.2f s (%.1f M pairs/s, %d cores, vectorized=%b)%n",
+                large.templates, pairs, seconds, pairs / seconds / 1_000_000.0,
+                Runtime.getRuntime().availableProcessors(), EmbeddingMath.isVectorized());
+
+        System.out.println();
+        System.out.println("Tests run: " + testsRun + ", passed: " + testsPassed + ", failed: " + testsFailed);
+        if (testsFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int[] labelsOf(SyntheticGallery synthetic) {
+        int[] labels = new int[synthetic.templates];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = i / SyntheticGallery.CAPTURES_PER_USER;
+        }
+        return labels;
+    }
+
+    private static void assertTest(String testName, boolean actual, boolean expected) {
+        testsRun++;
+        if (actual == expected) {
+            testsPassed++;
+            System.out.println("✓ PASS: " + testName);
+        } else {
+            testsFailed++;
+            System.err.println("✗ FAIL: " + testName + " (expected: " + expected + ", got: " + actual + ")");
+        }
+    }
+}
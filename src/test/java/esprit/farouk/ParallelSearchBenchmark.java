@@ -0,0 +1,83 @@
+package esprit.farouk;
+
+import esprit.farouk.config.FaceMetric;
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.models.FaceEmbedding;
+import esprit.farouk.models.FaceMatch;
+import esprit.farouk.services.FaceGallery;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parallel Exact Search Benchmark
+ * Fills the FaceGallery with a SyntheticGallery and measures exact 1:N
+ * findNearest latency. The gallery reads its settings once, so compare runs:
+ *
+ *   -Dface.search.parallelism=1   sequential baseline
+ *   (default)                     one worker per core above face.search.parallel_min_size
+ *
+ * No database or camera needed; the on-disk store and HNSW index are disabled.
+ * Optional arg: template count (default 1000000).
+ */
+public class ParallelSearchBenchmark {
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        int templateCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.setProperty(FaceRecognitionConfig.STORE_ENABLED, "false");
+        System.setProperty(FaceRecognitionConfig.INDEX_TYPE, "exact");
+
+        System.out.println("========================================");
+        System.out.println("  PARALLEL EXACT SEARCH BENCHMARK");
+        System.out.println("========================================");
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors()
+                + ", parallelism: " + FaceRecognitionConfig.getString(FaceRecognitionConfig.SEARCH_PARALLELISM, "0")
+                + ", quantization: " + FaceRecognitionConfig.getString(FaceRecognitionConfig.QUANTIZATION, "none")
+                + ", centroids: " + FaceRecognitionConfig.getString(FaceRecognitionConfig.MATCH_CENTROIDS, "true")
+                + " (quantization only applies with centroids off)");
+
+        SyntheticGallery synthetic = new SyntheticGallery(templateCount, 3);
+        FaceGallery gallery = FaceGallery.getInstance();
+        for (int user = 0; user < synthetic.users; user++) {
+            List<FaceEmbedding> captures = new ArrayList<>();
+            for (int c = 0; c < SyntheticGallery.CAPTURES_PER_USER; c++) {
+                int row = user * SyntheticGallery.CAPTURES_PER_USER + c;
+                float[] vector = Arrays.copyOfRange(synthetic.vectors, row * SyntheticGallery.DIMENSION,
+                        (row + 1) * SyntheticGallery.DIMENSION);
+                captures.add(new FaceEmbedding(vector, LocalDateTime.now()));
+            }
+            gallery.putUser(user, captures);
+        }
+        System.out.println("Gallery: " + gallery.size() + " templates (" + gallery.userCount() + " users)\n");
+
+        float[][] queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = synthetic.randomGenuineQuery();
+        }
+
+        long[] nanos = new long[QUERIES];
+        int correct = 0;
+        for (int pass = 0; pass < 3; pass++) { // first passes warm up the JIT
+            correct = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                long start = System.nanoTime();
+                FaceMatch match = gallery.findNearest(queries[q], FaceMetric.COSINE);
+                nanos[q] = System.nanoTime() - start;
+                if (match != null && match.getUserId() == SyntheticGallery.userOf(synthetic.bruteForce(queries[q]))) {
+                    correct++;
+                }
+            }
+        }
+
+        Arrays.sort(nanos);
+        System.out.printf("findNearest: mean=%.2f ms  p50=%.2f ms  p99=%.2f ms  agreement with brute force=%.3f%n",
+                Arrays.stream(nanos).average().orElse(0) / 1_000_000.0,
+                nanos[QUERIES / 2] / 1_000_000.0,
+                nanos[(int) (QUERIES * 0.99)] / 1_000_000.0,
+                (double) correct / QUERIES);
+    }
+}
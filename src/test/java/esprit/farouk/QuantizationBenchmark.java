@@ -0,0 +1,179 @@
+package esprit.farouk;
+
+import esprit.farouk.utils.EmbeddingMath;
+import esprit.farouk.utils.EmbeddingQuantizer;
+
+import java.util.Arrays;
+
+/**
+ * Quantized Scan Benchmark
+ * Compares the float32, int8 and float16 gallery scans on a SyntheticGallery:
+ * scan latency, top-1 agreement with the exact float scan before and after
+ * re-ranking the best candidates in full precision, and the score error.
+ *
+ * No database or camera needed. Optional args: template counts, e.g. "100000 1000000".
+ */
+public class QuantizationBenchmark {
+
+    private static final int DIMENSION = SyntheticGallery.DIMENSION;
+    private static final int QUERIES = 200;
+    private static final int RERANK_SIZE = 10;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{100_000, 1_000_000};
+
+        System.out.println("========================================");
+        System.out.println("  QUANTIZED SCAN BENCHMARK");
+        System.out.println("========================================");
+        System.out.println("SIMD kernels: " + EmbeddingMath.isVectorized() + "\n");
+
+        for (int size : sizes) {
+            runForSize(size);
+        }
+    }
+
+    private static void runForSize(int templateCount) {
+        SyntheticGallery synthetic = new SyntheticGallery(templateCount, 11);
+        int rows = synthetic.templates;
+        float[] vectors = synthetic.vectors;
+
+        byte[] int8Codes = new byte[rows * DIMENSION];
+        float[] int8Scales = new float[rows];
+        short[] fp16Codes = new short[rows * DIMENSION];
+        for (int row = 0; row < rows; row++) {
+            int offset = row * DIMENSION;
+            int8Scales[row] = EmbeddingQuantizer.quantizeInt8(vectors, offset, DIMENSION, int8Codes, offset);
+            EmbeddingQuantizer.quantizeFloat16(vectors, offset, DIMENSION, fp16Codes, offset);
+        }
+
+        float[][] queries = new float[QUERIES][];
+        int[] truth = new int[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = synthetic.randomGenuineQuery();
+            truth[q] = synthetic.bruteForce(queries[q]);
+        }
+
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        System.out.println("  " + rows + " templates (" + synthetic.users + " users)");
+        System.out.printf("  float32 %d MB, int8 %d MB, fp16 %d MB%n",
+                (long) rows * DIMENSION * 4 >> 20, ((long) rows * DIMENSION + rows * 4L) >> 20, (long) rows * DIMENSION * 2 >> 20);
+        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+
+        long[] floatNanos = new long[QUERIES];
+        for (int pass = 0; pass < 2; pass++) { // first pass warms up the JIT
+            for (int q = 0; q < QUERIES; q++) {
+                long start = System.nanoTime();
+                synthetic.bruteForce(queries[q]);
+                floatNanos[q] = System.nanoTime() - start;
+            }
+        }
+        printRow("float32", floatNanos, 1.0, 1.0, 0.0);
+
+        for (String mode : new String[]{"int8", "fp16"}) {
+            long[] nanos = new long[QUERIES];
+            int rawHits = 0;
+            int rerankHits = 0;
+            double errorSum = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                rawHits = 0;
+                rerankHits = 0;
+                errorSum = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    float[] query = queries[q];
+                    long start = System.nanoTime();
+                    int[] candidates = "int8".equals(mode)
+                            ? topInt8(query, int8Codes, int8Scales, rows)
+                            : topFloat16(query, fp16Codes, rows);
+                    int best = rerank(query, vectors, candidates);
+                    nanos[q] = System.nanoTime() - start;
+
+                    if (candidates[0] == truth[q]) {
+                        rawHits++;
+                    }
+                    if (best == truth[q]) {
+                        rerankHits++;
+                    }
+                    int offset = truth[q] * DIMENSION;
+                    float approx = "int8".equals(mode)
+                            ? EmbeddingQuantizer.dotInt8(query, int8Codes, offset, DIMENSION) * int8Scales[truth[q]]
+                            : EmbeddingQuantizer.dotFloat16(query, fp16Codes, offset, DIMENSION);
+                    errorSum += Math.abs(approx - EmbeddingMath.dot(query, 0, vectors, offset, DIMENSION));
+                }
+            }
+            printRow(mode, nanos, (double) rawHits / QUERIES, (double) rerankHits / QUERIES, errorSum / QUERIES);
+        }
+        System.out.println();
+    }
+
+    private static int[] topInt8(float[] query, byte[] codes, float[] scales, int rows) {
+        TopK top = new TopK(RERANK_SIZE);
+        for (int row = 0; row < rows; row++) {
+            top.offer(row, EmbeddingQuantizer.dotInt8(query, codes, row * DIMENSION, DIMENSION) * scales[row]);
+        }
+        return top.rows();
+    }
+
+    private static int[] topFloat16(float[] query, short[] codes, int rows) {
+        TopK top = new TopK(RERANK_SIZE);
+        for (int row = 0; row < rows; row++) {
+            top.offer(row, EmbeddingQuantizer.dotFloat16(query, codes, row * DIMENSION, DIMENSION));
+        }
+        return top.rows();
+    }
+
+    private static int rerank(float[] query, float[] vectors, int[] candidates) {
+        int best = -1;
+        float bestDot = -Float.MAX_VALUE;
+        for (int row : candidates) {
+            float dot = EmbeddingMath.dot(query, 0, vectors, row * DIMENSION, DIMENSION);
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    private static void printRow(String label, long[] nanos, double rawTop1, double rerankTop1, double meanError) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0) / 1_000_000.0;
+        double p99 = sorted[(int) (sorted.length * 0.99)] / 1_000_000.0;
+        System.out.printf("  %-8s mean=%7.2f ms  p99=%7.2f ms  top1=%.3f  top1+rerank=%.3f  |score err|=%.5f%n",
+                label, mean, p99, rawTop1, rerankTop1, meanError);
+    }
+
+    /**
+     * Small sorted top-k buffer, best score first.
+     */
+    private static class TopK {
+        private final int[] rows;
+        private final float[] scores;
+        private int count;
+
+        TopK(int k) {
+            rows = new int[k];
+            scores = new float[k];
+        }
+
+        void offer(int row, float score) {
+            if (count == rows.length && score <= scores[count - 1]) {
+                return;
+            }
+            int i = count < rows.length ? count++ : count - 1;
+            while (i > 0 && scores[i - 1] < score) {
+                rows[i] = rows[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            rows[i] = row;
+            scores[i] = score;
+        }
+
+        int[] rows() {
+            return Arrays.copyOf(rows, count);
+        }
+    }
+}
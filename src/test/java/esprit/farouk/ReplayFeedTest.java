@@ -0,0 +1,123 @@
+package esprit.farouk;
+
+import esprit.farouk.config.FaceRecognitionConfig;
+import esprit.farouk.utils.CameraFeed;
+import esprit.farouk.utils.ReplayFrameGrabber;
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imwrite;
+
+/**
+ * Replay Feed Test
+ * Writes a short numbered image sequence and replays it through
+ * ReplayFrameGrabber and CameraFeed in place of a webcam: frame order,
+ * looping, end of replay, and pacing at real and unthrottled speed.
+ *
+ * No database, camera or models needed.
+ */
+public class ReplayFeedTest {
+
+    private static final int FRAMES = 10;
+
+    private static int testsRun = 0;
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("========================================");
+        System.out.println("  REPLAY FEED TEST");
+        System.out.println("========================================\n");
+
+        Path directory = Files.createTempDirectory("replay-test");
+        for (int i = 0; i < FRAMES; i++) {
+            // Each image is filled with its own index so frames can be told apart
+            try (Scalar value = new Scalar(i * 20.0, i * 20.0, i * 20.0, 0.0);
+                 Mat image = new Mat(48, 64, CV_8UC3, value)) {
+                imwrite(directory.resolve(String.format("frame_%03d.png", i)).toString(), image);
+            }
+        }
+
+        // Grabber: name order, end of replay without looping, start over with looping
+        ReplayFrameGrabber once = new ReplayFrameGrabber(directory, 0, false);
+        once.start();
+        boolean ordered = true;
+        for (int i = 0; i < FRAMES; i++) {
+            Frame frame = once.grab();
+            ordered &= frame != null && frame.imageWidth == 64;
+        }
+        assertTest("All frames replayed", ordered, true);
+        assertTest("Replay ends without looping", once.grab() == null, true);
+        once.stop();
+
+        ReplayFrameGrabber looping = new ReplayFrameGrabber(directory, 0, true);
+        looping.start();
+        for (int i = 0; i < FRAMES * 2 + 3; i++) {
+            looping.grab();
+        }
+        assertTest("Looping replay keeps going", looping.getFramesReplayed() == FRAMES * 2 + 3, true);
+        looping.stop();
+
+        // CameraFeed, unthrottled: frames arrive in order
+        System.setProperty(FaceRecognitionConfig.CAMERA_REPLAY_SPEED, "0");
+        CameraFeed feed = new CameraFeed(directory.toString());
+        feed.start(null, Throwable::printStackTrace);
+        int first;
+        try (CameraFeed.CapturedFrame frame = feed.acquireNext(0, 2000)) {
+            assertTest("Feed delivers replayed frames", frame != null, true);
+            first = frame != null ? pixel(frame.getMat()) : -1;
+        }
+        assertTest("Frames carry the image contents", first >= 0 && first % 20 == 0 && first < FRAMES * 20, true);
+        long sequence = feed.lastSequence();
+        Thread.sleep(200);
+        assertTest("Unthrottled replay runs ahead", feed.lastSequence() - sequence > FRAMES, true);
+        feed.stop();
+
+        // CameraFeed at real speed: 50 fps for one second
+        System.setProperty(FaceRecognitionConfig.CAMERA_REPLAY_SPEED, "1");
+        System.setProperty(FaceRecognitionConfig.CAMERA_REPLAY_FPS, "50");
+        CameraFeed paced = new CameraFeed(directory.toString());
+        paced.start(null, Throwable::printStackTrace);
+        long start = System.nanoTime();
+        Thread.sleep(1000);
+        long frames = paced.lastSequence();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        paced.stop();
+        System.out.printf("Real-speed replay: %d frames in %.2f s%n", frames, seconds);
+        assertTest("Real-speed replay keeps the frame rate", frames >= 40 && frames <= 60 * seconds, true);
+
+        for (int i = 0; i < FRAMES; i++) {
+            Files.deleteIfExists(directory.resolve(String.format("frame_%03d.png", i)));
+        }
+        Files.deleteIfExists(directory);
+
+        System.out.println();
+        System.out.println("Tests run: " + testsRun + ", passed: " + testsPassed + ", failed: " + testsFailed);
+        if (testsFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int pixel(Mat mat) {
+        try (UByteIndexer indexer = mat.createIndexer()) {
+            return indexer.get(0, 0, 0);
+        }
+    }
+
+    private static void assertTest(String testName, boolean actual, boolean expected) {
+        testsRun++;
+        if (actual == expected) {
+            testsPassed++;
+            System.out.println("✓ PASS: " + testName);
+        } else {
+            testsFailed++;
+            System.err.println("✗ FAIL: " + testName + " (expected: " + expected + ", got: " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package esprit.farouk;
+
+import esprit.farouk.utils.EmbeddingMath;
+
+import java.util.Random;
+
+/**
+ * Synthetic face gallery shaped like SFace data, shared by the matching benchmarks:
+ * one random identity direction per user and noisy captures around it, all L2-normalized.
+ * With the default noise, genuine pairs score a cosine of about 0.65 and impostors about 0.
+ */
+public class SyntheticGallery {
+
+    public static final int DIMENSION = 128;
+    public static final int CAPTURES_PER_USER = 5;
+    public static final double CAPTURE_NOISE = 0.7;
+
+    public final int users;
+    public final int templates;
+    public final float[][] centers;
+    public final float[] vectors;     // templates x DIMENSION, user u owns rows [u*5, u*5+5)
+    private final Random random;
+
+    public SyntheticGallery(int templateCount, long seed) {
+        this.random = new Random(seed);
+        this.users = templateCount / CAPTURES_PER_USER;
+        this.templates = users * CAPTURES_PER_USER;
+        this.centers = new float[users][];
+        this.vectors = new float[templates * DIMENSION];
+
+        for (int u = 0; u < users; u++) {
+            centers[u] = randomUnitVector();
+            for (int c = 0; c < CAPTURES_PER_USER; c++) {
+                System.arraycopy(captureOf(u), 0, vectors, (u * CAPTURES_PER_USER + c) * DIMENSION, DIMENSION);
+            }
+        }
+    }
+
+    /** A fresh noisy capture of the given user, as a login attempt would produce. */
+    public float[] captureOf(int user) {
+        float[] v = new float[DIMENSION];
+        double scale = CAPTURE_NOISE / Math.sqrt(DIMENSION);
+        for (int i = 0; i < DIMENSION; i++) {
+            v[i] = centers[user][i] + (float) (random.nextGaussian() * scale);
+        }
+        EmbeddingMath.normalizeInPlace(v, 0, DIMENSION);
+        return v;
+    }
+
+    /** A capture of a random enrolled user. */
+    public float[] randomGenuineQuery() {
+        return captureOf(random.nextInt(users));
+    }
+
+    /** Index of the user owning a template row. */
+    public static int userOf(int row) {
+        return row / CAPTURES_PER_USER;
+    }
+
+    /** Row with the highest dot product against the query (exact brute force). */
+    public int bruteForce(float[] query) {
+        int best = -1;
+        float bestDot = -Float.MAX_VALUE;
+        for (int row = 0; row < templates; row++) {
+            float dot = EmbeddingMath.dot(query, 0, vectors, row * DIMENSION, DIMENSION);
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    private float[] randomUnitVector() {
+        float[] v = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        EmbeddingMath.normalizeInPlace(v, 0, DIMENSION);
+        return v;
+    }
+}